@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.cache;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread-safe LRU cache bounded by number of entries and total weight, with an optional time-to-live.
+ *
+ * Every invalidation increments a generation. Callers that load a value outside of the cache should read the
+ * generation before loading and pass it to put, so a value loaded before an invalidation is never cached after it.
+ *
+ * @author bbende
+ * @param <K> the type of key
+ * @param <V> the type of value
+ */
+public class BoundedCache<K,V> {
+
+    private final int maxSize;
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final Weigher<? super K, ? super V> weigher;
+
+    private final LinkedHashMap<K,Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long generation;
+    private long totalWeight;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expirationCount;
+    private long invalidationCount;
+
+    protected BoundedCache(final Builder<K,V> builder) {
+        this.maxSize = builder.maxSize;
+        this.maxWeight = builder.maxWeight;
+        this.ttlNanos = builder.ttlNanos;
+        this.weigher = builder.weigher;
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, or null if not present or expired
+     */
+    public synchronized V get(final K key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        if (isExpired(entry)) {
+            remove(key, entry);
+            expirationCount++;
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * @return the current generation, to be passed to put after loading a value
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches the value unconditionally.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(final K key, final V value) {
+        put(key, value, generation);
+    }
+
+    /**
+     * Caches the value only if the cache has not been invalidated since the given generation.
+     *
+     * @param key the key
+     * @param value the value
+     * @param loadGeneration the generation read before the value was loaded
+     * @return true if the value was cached
+     */
+    public synchronized boolean put(final K key, final V value, final long loadGeneration) {
+        Validate.notNull(key);
+        Validate.notNull(value);
+
+        if (loadGeneration != generation) {
+            return false;
+        }
+
+        final int weight = weigher.weigh(key, value);
+        if (weight > maxWeight) {
+            return false;
+        }
+
+        final Entry<V> previous = entries.put(key, new Entry<>(value, weight, System.nanoTime()));
+        if (previous != null) {
+            totalWeight -= previous.weight;
+        }
+        totalWeight += weight;
+
+        evict();
+        return true;
+    }
+
+    /**
+     * Removes the entry for the given key.
+     *
+     * @param key the key
+     */
+    public synchronized void invalidate(final K key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            remove(key, entry);
+            invalidationCount++;
+        }
+        generation++;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void invalidateAll() {
+        invalidationCount += entries.size();
+        entries.clear();
+        totalWeight = 0;
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return totalWeight;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hitCount, missCount, evictionCount, expirationCount, invalidationCount,
+                entries.size(), totalWeight);
+    }
+
+    private boolean isExpired(final Entry<V> entry) {
+        return ttlNanos > 0 && System.nanoTime() - entry.writeNanos >= ttlNanos;
+    }
+
+    private void remove(final K key, final Entry<V> entry) {
+        entries.remove(key);
+        totalWeight -= entry.weight;
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<K,Entry<V>>> iter = entries.entrySet().iterator();
+        while ((entries.size() > maxSize || totalWeight > maxWeight) && iter.hasNext()) {
+            final Entry<V> eldest = iter.next().getValue();
+            iter.remove();
+            totalWeight -= eldest.weight;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * A cached value.
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final int weight;
+        private final long writeNanos;
+
+        Entry(final V value, final int weight, final long writeNanos) {
+            this.value = value;
+            this.weight = weight;
+            this.writeNanos = writeNanos;
+        }
+    }
+
+    /**
+     * Builder for BoundedCache.
+     *
+     * @param <K> the type of key
+     * @param <V> the type of value
+     */
+    public static class Builder<K,V> {
+        private int maxSize = 1000;
+        private long maxWeight = Long.MAX_VALUE;
+        private long ttlNanos = 0;
+        private Weigher<? super K, ? super V> weigher = (k, v) -> 1;
+
+        public Builder<K,V> maxSize(int maxSize) {
+            Validate.isTrue(maxSize > 0);
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public Builder<K,V> maxWeight(long maxWeight, Weigher<? super K, ? super V> weigher) {
+            Validate.isTrue(maxWeight > 0);
+            Validate.notNull(weigher);
+            this.maxWeight = maxWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * @param ttl the time after being written that an entry expires, or 0 for no expiration
+         * @param unit the unit of the ttl
+         * @return this builder
+         */
+        public Builder<K,V> ttl(long ttl, TimeUnit unit) {
+            Validate.isTrue(ttl >= 0);
+            Validate.notNull(unit);
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        public BoundedCache<K,V> build() {
+            return new BoundedCache<>(this);
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.cache;
+
+/**
+ * Computes the weight of a cache entry, used to bound a cache by something other than its number of entries.
+ *
+ * @author bbende
+ * @param <K> the type of key
+ * @param <V> the type of value
+ */
+public interface Weigher<K,V> {
+
+    /**
+     * @param key the key of the entry
+     * @param value the value of the entry
+     * @return the weight of the entry, must not be negative
+     */
+    int weigh(K key, V value);
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.index;
+
+import com.bbende.tripod.api.Field;
+
+/**
+ * Receives notifications about changes made through an Indexer.
+ *
+ * @author bbende
+ */
+public interface IndexListener {
+
+    /**
+     * Called after the entity with the given id has been indexed, updated, or deleted. The change may not be
+     * visible to searches until the next call to onCommit.
+     *
+     * @param idField the id field of the entity
+     * @param id the id of the entity
+     */
+    default void onEntityChanged(Field idField, String id) {
+
+    }
+
+    /**
+     * Called before a commit or refresh begins, changes made before this call are visible after the following
+     * onCommit, while changes made after it may not be.
+     */
+    default void beforeCommit() {
+
+    }
+
+    /**
+     * Called after changes to the index have been committed and are visible to searches.
+     */
+    default void onCommit() {
+
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.index;
+
+import com.bbende.tripod.api.Field;
+import com.bbende.tripod.api.entity.Entity;
+import org.apache.commons.lang.Validate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An Indexer that delegates to another Indexer and notifies IndexListeners of the changes it makes.
+ *
+ * Listeners are notified of commits only when notifyOnCommit is true, which should be the case when a commit
+ * makes changes visible to searches, as with Solr. With Lucene, changes become visible when the SearcherManager
+ * refreshes, so commit notifications should be disabled and a refresh listener used instead.
+ *
+ * @author bbende
+ */
+public class NotifyingIndexer<E extends Entity> implements Indexer<E> {
+
+    private final Indexer<E> indexer;
+    private final boolean notifyOnCommit;
+    private final List<IndexListener> listeners = new CopyOnWriteArrayList<>();
+
+    public NotifyingIndexer(final Indexer<E> indexer) {
+        this(indexer, true);
+    }
+
+    public NotifyingIndexer(final Indexer<E> indexer, final boolean notifyOnCommit) {
+        this.indexer = indexer;
+        this.notifyOnCommit = notifyOnCommit;
+        Validate.notNull(this.indexer);
+    }
+
+    public void addListener(final IndexListener listener) {
+        Validate.notNull(listener);
+        listeners.add(listener);
+    }
+
+    public void removeListener(final IndexListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void index(final E entity) throws IndexException {
+        indexer.index(entity);
+        notifyEntityChanged(entity);
+    }
+
+    @Override
+    public void update(final E entity) throws IndexException {
+        indexer.update(entity);
+        notifyEntityChanged(entity);
+    }
+
+    @Override
+    public void delete(final E entity) throws IndexException {
+        indexer.delete(entity);
+        notifyEntityChanged(entity);
+    }
+
+    @Override
+    public void delete(final Field idField, final String id) throws IndexException {
+        indexer.delete(idField, id);
+        for (IndexListener listener : listeners) {
+            listener.onEntityChanged(idField, id);
+        }
+    }
+
+    @Override
+    public void commit() throws IndexException {
+        if (notifyOnCommit) {
+            for (IndexListener listener : listeners) {
+                listener.beforeCommit();
+            }
+        }
+
+        indexer.commit();
+        if (notifyOnCommit) {
+            for (IndexListener listener : listeners) {
+                listener.onCommit();
+            }
+        }
+    }
+
+    private void notifyEntityChanged(final E entity) {
+        if (entity == null) {
+            return;
+        }
+
+        for (IndexListener listener : listeners) {
+            listener.onEntityChanged(entity.getIdField(), entity.getId());
+        }
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.limit;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent requests, with a bounded queue of callers waiting for a permit.
+ *
+ * The limit adapts to the latency gradient. Latencies are averaged over a window of samples and compared to a
+ * long-term average: while the recent latency stays within the tolerance of the long-term latency the limit grows
+ * by roughly its square root, and as recent latency rises above it the limit shrinks, down to half per window.
+ * Requests released as dropped, such as those that ran out of time, shrink the limit immediately.
+ *
+ * A permit is granted right away when nobody is queued and fewer than limit requests are in flight. Otherwise the
+ * caller waits in the queue for up to the queue timeout, or is rejected immediately when the queue is full.
+ * Every successful acquire must be followed by exactly one release.
+ *
+ * @author bbende
+ */
+public class ConcurrencyLimiter {
+
+    static final double DROP_BACKOFF_RATIO = 0.9;
+    static final double RECOVERY_RATIO = 2.0;
+    static final double RECOVERY_DECAY = 0.95;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final long queueTimeoutNanos;
+    private final double tolerance;
+    private final double smoothing;
+    private final int sampleWindow;
+    private final double longRttAlpha;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+
+    private double estimatedLimit;
+    private int limit;
+    private int inFlight;
+    private int queued;
+
+    private long windowNanos;
+    private int windowCount;
+    private int windowMaxInFlight;
+    private double longRttNanos;
+
+    private long acceptedCount;
+    private long rejectedCount;
+    private long timeoutCount;
+    private long droppedCount;
+
+    private ConcurrencyLimiter(final Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.queueTimeoutNanos = builder.queueTimeoutNanos;
+        this.tolerance = builder.tolerance;
+        this.smoothing = builder.smoothing;
+        this.sampleWindow = builder.sampleWindow;
+        this.longRttAlpha = 2.0 / (builder.longWindow + 1);
+        this.estimatedLimit = builder.initialLimit;
+        this.limit = builder.initialLimit;
+
+        Validate.isTrue(minLimit <= maxLimit, "minLimit must be less than or equal to maxLimit");
+        Validate.isTrue(limit >= minLimit && limit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+    }
+
+    /**
+     * Acquires a permit, waiting in the queue if the limit has been reached.
+     *
+     * @return true if a permit was acquired, false if the queue was full or the queue timeout elapsed
+     * @throws InterruptedException if interrupted while waiting in the queue
+     */
+    public boolean acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < limit) {
+                grant();
+                return true;
+            }
+
+            if (queued >= maxQueueSize) {
+                rejectedCount++;
+                return false;
+            }
+
+            queued++;
+            try {
+                long remainingNanos = queueTimeoutNanos;
+                while (inFlight >= limit) {
+                    if (remainingNanos <= 0) {
+                        timeoutCount++;
+                        return false;
+                    }
+                    remainingNanos = available.awaitNanos(remainingNanos);
+                }
+                grant();
+                return true;
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a permit for a request that completed normally, sampling its latency.
+     *
+     * @param latencyNanos the latency of the request
+     */
+    public void release(final long latencyNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            sample(latencyNanos);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a permit for a request that was dropped because of overload, such as one that ran out of time,
+     * reducing the limit.
+     */
+    public void releaseDropped() {
+        lock.lock();
+        try {
+            inFlight--;
+            droppedCount++;
+            updateLimit(estimatedLimit * DROP_BACKOFF_RATIO);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a permit for a request that failed for reasons unrelated to load, without sampling its latency.
+     */
+    public void releaseIgnored() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LimiterStats getStats() {
+        lock.lock();
+        try {
+            return new LimiterStats(limit, inFlight, queued, acceptedCount, rejectedCount, timeoutCount, droppedCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void grant() {
+        inFlight++;
+        acceptedCount++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+    }
+
+    private void sample(final long latencyNanos) {
+        windowNanos += latencyNanos;
+        windowCount++;
+        if (windowCount < sampleWindow) {
+            return;
+        }
+
+        final double shortRttNanos = Math.max(1.0, (double) windowNanos / windowCount);
+        final int maxInFlight = windowMaxInFlight;
+        windowNanos = 0;
+        windowCount = 0;
+        windowMaxInFlight = inFlight;
+
+        if (longRttNanos == 0) {
+            longRttNanos = shortRttNanos;
+        } else {
+            longRttNanos = longRttNanos * (1 - longRttAlpha) + shortRttNanos * longRttAlpha;
+        }
+
+        // latency dropped well below the long-term average, so let the long-term average catch up faster
+        if (longRttNanos / shortRttNanos > RECOVERY_RATIO) {
+            longRttNanos *= RECOVERY_DECAY;
+        }
+
+        // don't grow the limit when the requests aren't using it, since latency says nothing about a higher limit
+        if (maxInFlight < estimatedLimit / 2) {
+            return;
+        }
+
+        final double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+        final double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        updateLimit(estimatedLimit * (1 - smoothing) + newLimit * smoothing);
+    }
+
+    private void updateLimit(final double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    /**
+     * Builder for ConcurrencyLimiter.
+     */
+    public static class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private int maxQueueSize = 50;
+        private long queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private double tolerance = 1.5;
+        private double smoothing = 0.2;
+        private int sampleWindow = 10;
+        private int longWindow = 100;
+
+        public Builder initialLimit(int initialLimit) {
+            Validate.isTrue(initialLimit > 0);
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public Builder minLimit(int minLimit) {
+            Validate.isTrue(minLimit > 0);
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public Builder maxLimit(int maxLimit) {
+            Validate.isTrue(maxLimit > 0);
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Disables adaptation so the limit always stays at the given value.
+         *
+         * @param limit the limit
+         * @return this builder
+         */
+        public Builder fixedLimit(int limit) {
+            Validate.isTrue(limit > 0);
+            this.initialLimit = limit;
+            this.minLimit = limit;
+            this.maxLimit = limit;
+            return this;
+        }
+
+        /**
+         * @param maxQueueSize the maximum number of callers waiting for a permit, or 0 to reject as soon as the
+         *                     limit is reached
+         * @return this builder
+         */
+        public Builder maxQueueSize(int maxQueueSize) {
+            Validate.isTrue(maxQueueSize >= 0);
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * @param queueTimeout the maximum time a caller waits in the queue before being rejected
+         * @param unit the unit of the timeout
+         * @return this builder
+         */
+        public Builder queueTimeout(long queueTimeout, TimeUnit unit) {
+            Validate.isTrue(queueTimeout >= 0);
+            Validate.notNull(unit);
+            this.queueTimeoutNanos = unit.toNanos(queueTimeout);
+            return this;
+        }
+
+        /**
+         * @param tolerance how far recent latency may rise above the long-term latency before the limit shrinks
+         * @return this builder
+         */
+        public Builder tolerance(double tolerance) {
+            Validate.isTrue(tolerance >= 1.0);
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * @param smoothing the weight given to each new limit, between 0 exclusive and 1 inclusive
+         * @return this builder
+         */
+        public Builder smoothing(double smoothing) {
+            Validate.isTrue(smoothing > 0 && smoothing <= 1.0);
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        /**
+         * @param sampleWindow the number of latency samples averaged before each limit update
+         * @return this builder
+         */
+        public Builder sampleWindow(int sampleWindow) {
+            Validate.isTrue(sampleWindow > 0);
+            this.sampleWindow = sampleWindow;
+            return this;
+        }
+
+        /**
+         * @param longWindow the number of sample windows the long-term latency is averaged over
+         * @return this builder
+         */
+        public Builder longWindow(int longWindow) {
+            Validate.isTrue(longWindow > 0);
+            this.longWindow = longWindow;
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(this);
+        }
+    }
+
+}
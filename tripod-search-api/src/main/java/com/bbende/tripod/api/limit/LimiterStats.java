@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.limit;
+
+/**
+ * A point-in-time snapshot of the statistics of a ConcurrencyLimiter.
+ *
+ * @author bbende
+ */
+public class LimiterStats {
+
+    private final int limit;
+    private final int inFlight;
+    private final int queued;
+    private final long acceptedCount;
+    private final long rejectedCount;
+    private final long timeoutCount;
+    private final long droppedCount;
+
+    public LimiterStats(final int limit, final int inFlight, final int queued, final long acceptedCount,
+                        final long rejectedCount, final long timeoutCount, final long droppedCount) {
+        this.limit = limit;
+        this.inFlight = inFlight;
+        this.queued = queued;
+        this.acceptedCount = acceptedCount;
+        this.rejectedCount = rejectedCount;
+        this.timeoutCount = timeoutCount;
+        this.droppedCount = droppedCount;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of callers waiting for a permit
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * @return the number of callers rejected because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return the number of callers rejected because they waited in the queue past the queue timeout
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return the number of requests released as dropped
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "LimiterStats[limit=" + limit + ", inFlight=" + inFlight + ", queued=" + queued
+                + ", accepted=" + acceptedCount + ", rejected=" + rejectedCount + ", timeouts=" + timeoutCount
+                + ", dropped=" + droppedCount + "]";
+    }
+
+}
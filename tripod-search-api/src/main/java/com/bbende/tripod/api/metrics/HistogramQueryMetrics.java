@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.metrics;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * QueryMetrics that keeps a lock-free Histogram of nanosecond timings for each Phase.
+ *
+ * A single instance can be shared by several services to report their combined latencies.
+ *
+ * @author bbende
+ */
+public class HistogramQueryMetrics implements QueryMetrics {
+
+    private final Map<Phase,Histogram> histograms;
+
+    public HistogramQueryMetrics() {
+        final Map<Phase,Histogram> phaseHistograms = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            phaseHistograms.put(phase, new Histogram());
+        }
+        this.histograms = Collections.unmodifiableMap(phaseHistograms);
+    }
+
+    @Override
+    public void record(final Phase phase, final long nanos) {
+        histograms.get(phase).record(nanos);
+    }
+
+    /**
+     * @param phase the phase
+     * @return the histogram of nanosecond timings for the given phase
+     */
+    public Histogram getHistogram(final Phase phase) {
+        Validate.notNull(phase);
+        return histograms.get(phase);
+    }
+
+    /**
+     * @return a snapshot of each phase that has been recorded at least once
+     */
+    public Map<Phase,Histogram.Snapshot> getSnapshots() {
+        final Map<Phase,Histogram.Snapshot> snapshots = new EnumMap<>(Phase.class);
+        for (Map.Entry<Phase,Histogram> entry : histograms.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                snapshots.put(entry.getKey(), entry.getValue().getSnapshot());
+            }
+        }
+        return snapshots;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (Map.Entry<Phase,Histogram.Snapshot> entry : getSnapshots().entrySet()) {
+            builder.append(entry.getKey().name()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.metrics;
+
+/**
+ * The phases of performing a query or retrieval that are timed by QueryMetrics.
+ *
+ * Not every backend performs every phase, for example Solr has no searcher to acquire and fetches stored fields
+ * as part of the search.
+ *
+ * @author bbende
+ */
+public enum Phase {
+
+    /**
+     * Transforming the Tripod query to a backend query.
+     */
+    TRANSFORM,
+
+    /**
+     * Acquiring a searcher.
+     */
+    ACQUIRE,
+
+    /**
+     * Executing the search and collecting the matching documents.
+     */
+    SEARCH,
+
+    /**
+     * Loading the stored fields of the matching documents.
+     */
+    FETCH,
+
+    /**
+     * Transforming the backend documents to results or entities.
+     */
+    DOCUMENT_TRANSFORM,
+
+    /**
+     * Highlighting the results.
+     */
+    HIGHLIGHT,
+
+    /**
+     * Counting facets.
+     */
+    FACET,
+
+    /**
+     * The whole query or retrieval.
+     */
+    TOTAL
+
+}
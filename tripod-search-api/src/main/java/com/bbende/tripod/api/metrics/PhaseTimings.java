@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.metrics;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Accumulates the time spent in each phase of a single query or retrieval.
+ *
+ * Phases that happen once per result, such as fetching stored fields, are added up across all results and
+ * reported once. Instances are not thread-safe and are meant to be used by the thread performing the query.
+ *
+ * @author bbende
+ */
+public class PhaseTimings {
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long[] nanos = new long[PHASES.length];
+    private final boolean[] timed = new boolean[PHASES.length];
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Adds time to the given phase.
+     *
+     * @param phase the phase
+     * @param nanos the time in nanoseconds
+     */
+    public void add(final Phase phase, final long nanos) {
+        Validate.notNull(phase);
+        this.nanos[phase.ordinal()] += nanos;
+        this.timed[phase.ordinal()] = true;
+    }
+
+    /**
+     * Adds the time since the given System.nanoTime() to the given phase.
+     *
+     * @param phase the phase
+     * @param startNanos the start of the phase from System.nanoTime()
+     * @return the current System.nanoTime(), so it can be used to start the next phase
+     */
+    public long addSince(final Phase phase, final long startNanos) {
+        final long now = System.nanoTime();
+        add(phase, now - startNanos);
+        return now;
+    }
+
+    /**
+     * Sets the TOTAL phase to the time since these timings were created.
+     */
+    public void stop() {
+        nanos[Phase.TOTAL.ordinal()] = System.nanoTime() - startNanos;
+        timed[Phase.TOTAL.ordinal()] = true;
+    }
+
+    /**
+     * @param phase the phase
+     * @return the time spent in the given phase in nanoseconds, or 0 if it was not timed
+     */
+    public long getNanos(final Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @param phase the phase
+     * @return true if time was added to the given phase
+     */
+    public boolean isTimed(final Phase phase) {
+        return timed[phase.ordinal()];
+    }
+
+    /**
+     * @return the time spent in each timed phase in nanoseconds
+     */
+    public Map<Phase,Long> toMap() {
+        final Map<Phase,Long> map = new EnumMap<>(Phase.class);
+        for (Phase phase : PHASES) {
+            if (timed[phase.ordinal()]) {
+                map.put(phase, nanos[phase.ordinal()]);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Records each timed phase to the given QueryMetrics.
+     *
+     * @param queryMetrics the metrics to record to
+     */
+    public void recordTo(final QueryMetrics queryMetrics) {
+        if (queryMetrics == null || queryMetrics == QueryMetrics.NOOP) {
+            return;
+        }
+
+        for (Phase phase : PHASES) {
+            if (timed[phase.ordinal()]) {
+                queryMetrics.record(phase, nanos[phase.ordinal()]);
+            }
+        }
+    }
+
+}
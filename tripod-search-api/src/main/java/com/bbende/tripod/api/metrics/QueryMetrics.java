@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.metrics;
+
+/**
+ * Receives the time spent in each phase of a query or retrieval.
+ *
+ * Implementations are called from every query thread and must be thread-safe and cheap to call.
+ *
+ * @author bbende
+ */
+public interface QueryMetrics {
+
+    /**
+     * QueryMetrics that discards all timings.
+     */
+    QueryMetrics NOOP = (phase, nanos) -> { };
+
+    /**
+     * Records the time spent in the given phase of a single query or retrieval.
+     *
+     * @param phase the phase
+     * @param nanos the time spent in nanoseconds
+     */
+    void record(Phase phase, long nanos);
+
+}
@@ -19,6 +19,8 @@ package com.bbende.tripod.api.query;
 import com.bbende.tripod.api.Field;
 import org.apache.commons.lang.Validate;
 
+import java.util.Objects;
+
 /**
  * A standard filter query consisting of a field to filter on and a value.
  *
@@ -45,4 +47,30 @@ public class FilterQuery {
         return value;
     }
 
+    /**
+     * FilterQueries are equal when they filter fields with the same name on the same value.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final FilterQuery other = (FilterQuery) o;
+        return field.getName().equals(other.field.getName()) && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field.getName(), value);
+    }
+
+    @Override
+    public String toString() {
+        return field.getName() + ":" + value;
+    }
+
 }
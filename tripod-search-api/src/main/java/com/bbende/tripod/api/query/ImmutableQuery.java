@@ -0,0 +1,710 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query;
+
+import com.bbende.tripod.api.Field;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * An immutable Query in canonical form, created with ImmutableQuery.Builder or copied from a Query.
+ *
+ * Return fields, highlight fields, and facet fields are de-duplicated by name and sorted, range facets are
+ * de-duplicated and sorted by name, filter queries are de-duplicated and sorted by field name and value, and params
+ * are sorted by name. Sorts keep their order since
+ * it changes the results.
+ *
+ * A 64-bit fingerprint of the canonical form is computed once when the query is built. Two ImmutableQueries are
+ * equal when they would produce the same results, so the request method is excluded from equality and the
+ * fingerprint. This makes an ImmutableQuery a cheap key for caching and request coalescing.
+ *
+ * ImmutableQuery is a Query, so it can be passed to any QueryService or QueryTransformer. As with a Query, the list
+ * getters return null rather than an empty list when there are no values. All setters throw
+ * UnsupportedOperationException.
+ *
+ * @author bbende
+ */
+public final class ImmutableQuery extends Query {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final Comparator<Field> FIELD_COMPARATOR = Comparator.comparing(Field::getName);
+
+    private static final Comparator<FilterQuery> FILTER_QUERY_COMPARATOR =
+            Comparator.comparing((FilterQuery fq) -> fq.getField().getName()).thenComparing(FilterQuery::getValue);
+
+    private static final Comparator<RangeFacet> RANGE_FACET_COMPARATOR = Comparator.comparing(RangeFacet::getName);
+
+    private final List<Field> returnFields;
+    private final List<Field> highlightFields;
+    private final List<Field> facetFields;
+    private final List<RangeFacet> rangeFacets;
+    private final List<FilterQuery> filterQueries;
+    private final List<Sort> sorts;
+    private final Map<String,String> params;
+    private final Operator defaultOperator;
+    private final RequestMethod requestMethod;
+    private final boolean profile;
+    private final Long timeAllowed;
+    private final ResultMode resultMode;
+    private final Integer facetSampleSize;
+    private final boolean multiSelectFacets;
+    private final long fingerprint;
+
+    private ImmutableQuery(final Builder builder) {
+        super(builder.query, builder.offset, builder.cursorMark, builder.rows);
+        this.returnFields = canonicalFields(builder.returnFields);
+        this.highlightFields = canonicalFields(builder.highlightFields);
+        this.facetFields = canonicalFields(builder.facetFields);
+        this.rangeFacets = canonicalRangeFacets(builder.rangeFacets);
+        this.filterQueries = canonicalFilterQueries(builder.filterQueries);
+        this.sorts = Collections.unmodifiableList(new ArrayList<>(builder.sorts));
+        this.params = Collections.unmodifiableMap(new TreeMap<>(builder.params));
+        this.defaultOperator = builder.defaultOperator;
+        this.requestMethod = builder.requestMethod;
+        this.profile = builder.profile;
+        this.timeAllowed = builder.timeAllowed;
+        this.resultMode = builder.resultMode;
+        this.facetSampleSize = builder.facetSampleSize;
+        this.multiSelectFacets = builder.multiSelectFacets;
+        this.fingerprint = computeFingerprint();
+    }
+
+    /**
+     * @param query the query to copy
+     * @return the given query if it is already an ImmutableQuery, otherwise a canonical copy of it
+     */
+    public static ImmutableQuery copyOf(final Query query) {
+        Validate.notNull(query);
+        if (query instanceof ImmutableQuery) {
+            return (ImmutableQuery) query;
+        }
+        return new Builder(query).build();
+    }
+
+    /**
+     * @return a 64-bit fingerprint of the canonical form of this query
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public List<Field> getReturnFields() {
+        return nullIfEmpty(returnFields);
+    }
+
+    @Override
+    public List<Field> getHighlightFields() {
+        return nullIfEmpty(highlightFields);
+    }
+
+    @Override
+    public List<Field> getFacetFields() {
+        return nullIfEmpty(facetFields);
+    }
+
+    @Override
+    public List<RangeFacet> getRangeFacets() {
+        return nullIfEmpty(rangeFacets);
+    }
+
+    @Override
+    public List<FilterQuery> getFilterQueries() {
+        return nullIfEmpty(filterQueries);
+    }
+
+    @Override
+    public List<Sort> getSorts() {
+        return nullIfEmpty(sorts);
+    }
+
+    @Override
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    @Override
+    public Operator getDefaultOperator() {
+        return defaultOperator;
+    }
+
+    @Override
+    public RequestMethod getRequestMethod() {
+        return requestMethod;
+    }
+
+    @Override
+    public boolean isProfile() {
+        return profile;
+    }
+
+    @Override
+    public Long getTimeAllowed() {
+        return timeAllowed;
+    }
+
+    @Override
+    public ResultMode getResultMode() {
+        return resultMode;
+    }
+
+    @Override
+    public Integer getFacetSampleSize() {
+        return facetSampleSize;
+    }
+
+    @Override
+    public boolean isMultiSelectFacets() {
+        return multiSelectFacets;
+    }
+
+    @Override
+    public void setReturnFields(List<Field> returnFields) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setHighlightFields(List<Field> highlightFields) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setFacetFields(List<Field> facetFields) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addFacetField(Field field) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setRangeFacets(List<RangeFacet> rangeFacets) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addRangeFacet(RangeFacet rangeFacet) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setFilterQueries(List<FilterQuery> filterQueries) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addFilterQuery(FilterQuery fq) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setSorts(List<Sort> sorts) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addSort(Sort sort) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addSort(Field sortField, SortOrder order) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setDefaultOperator(Operator defaultOperator) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setParams(Map<String, String> params) {
+        throw unsupported();
+    }
+
+    @Override
+    public void addParam(String name, String value) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setRequestMethod(RequestMethod requestMethod) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setProfile(boolean profile) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setTimeAllowed(Long timeAllowed) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setResultMode(ResultMode resultMode) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setFacetSampleSize(Integer facetSampleSize) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setMultiSelectFacets(boolean multiSelectFacets) {
+        throw unsupported();
+    }
+
+    private static <T> List<T> nullIfEmpty(final List<T> list) {
+        return list.isEmpty() ? null : list;
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("ImmutableQuery cannot be modified");
+    }
+
+    private static List<Field> canonicalFields(final List<Field> fields) {
+        if (fields.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final TreeMap<String,Field> fieldsByName = new TreeMap<>();
+        for (Field field : fields) {
+            fieldsByName.putIfAbsent(field.getName(), field);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(fieldsByName.values()));
+    }
+
+    private static List<RangeFacet> canonicalRangeFacets(final List<RangeFacet> rangeFacets) {
+        if (rangeFacets.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<RangeFacet> sorted = new ArrayList<>();
+        for (RangeFacet rangeFacet : rangeFacets) {
+            if (!sorted.contains(rangeFacet)) {
+                sorted.add(rangeFacet);
+            }
+        }
+        sorted.sort(RANGE_FACET_COMPARATOR);
+        return Collections.unmodifiableList(sorted);
+    }
+
+    private static List<FilterQuery> canonicalFilterQueries(final List<FilterQuery> filterQueries) {
+        if (filterQueries.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<FilterQuery> sorted = new ArrayList<>();
+        for (FilterQuery fq : filterQueries) {
+            if (!sorted.contains(fq)) {
+                sorted.add(fq);
+            }
+        }
+        sorted.sort(FILTER_QUERY_COMPARATOR);
+        return Collections.unmodifiableList(sorted);
+    }
+
+    private long computeFingerprint() {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hash(hash, getQuery());
+        hash = hash(hash, String.valueOf(getOffset()));
+        hash = hash(hash, String.valueOf(getRows()));
+        hash = hash(hash, getCursorMark());
+
+        hash = hash(hash, returnFields.size());
+        for (Field field : returnFields) {
+            hash = hash(hash, field.getName());
+        }
+
+        hash = hash(hash, highlightFields.size());
+        for (Field field : highlightFields) {
+            hash = hash(hash, field.getName());
+        }
+
+        hash = hash(hash, facetFields.size());
+        for (Field field : facetFields) {
+            hash = hash(hash, field.getName());
+        }
+
+        hash = hash(hash, rangeFacets.size());
+        for (RangeFacet rangeFacet : rangeFacets) {
+            hash = hash(hash, rangeFacet.getName());
+            hash = hash(hash, rangeFacet.getField().getName());
+            hash = hash(hash, rangeFacet.isDate() ? 1 : 0);
+            hash = hash(hash, rangeFacet.getRanges().size());
+            for (RangeFacet.Range range : rangeFacet.getRanges()) {
+                hash = hash(hash, range.toString());
+            }
+        }
+
+        hash = hash(hash, filterQueries.size());
+        for (FilterQuery fq : filterQueries) {
+            hash = hash(hash, fq.getField().getName());
+            hash = hash(hash, fq.getValue());
+        }
+
+        hash = hash(hash, sorts.size());
+        for (Sort sort : sorts) {
+            hash = hash(hash, sort.getField().getName());
+            hash = hash(hash, sort.getSortOrder().name());
+        }
+
+        hash = hash(hash, params.size());
+        for (Map.Entry<String,String> param : params.entrySet()) {
+            hash = hash(hash, param.getKey());
+            hash = hash(hash, param.getValue());
+        }
+
+        hash = hash(hash, defaultOperator.name());
+        hash = hash(hash, profile ? 1 : 0);
+        hash = hash(hash, timeAllowed == null ? null : timeAllowed.toString());
+        hash = hash(hash, resultMode.name());
+        hash = hash(hash, facetSampleSize == null ? null : facetSampleSize.toString());
+        hash = hash(hash, multiSelectFacets ? 1 : 0);
+
+        // final avalanche so that similar queries spread across all 64 bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long hash(long hash, final int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, final String value) {
+        // length prefix keeps adjacent values from running together, -1 distinguishes null from empty
+        if (value == null) {
+            return hash(hash, -1);
+        }
+
+        hash = hash(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final ImmutableQuery other = (ImmutableQuery) o;
+        return fingerprint == other.fingerprint
+                && getQuery().equals(other.getQuery())
+                && getOffset().equals(other.getOffset())
+                && getRows().equals(other.getRows())
+                && Objects.equals(getCursorMark(), other.getCursorMark())
+                && sameNames(returnFields, other.returnFields)
+                && sameNames(highlightFields, other.highlightFields)
+                && sameNames(facetFields, other.facetFields)
+                && rangeFacets.equals(other.rangeFacets)
+                && filterQueries.equals(other.filterQueries)
+                && sorts.equals(other.sorts)
+                && params.equals(other.params)
+                && defaultOperator == other.defaultOperator
+                && profile == other.profile
+                && Objects.equals(timeAllowed, other.timeAllowed)
+                && resultMode == other.resultMode
+                && Objects.equals(facetSampleSize, other.facetSampleSize)
+                && multiSelectFacets == other.multiSelectFacets;
+    }
+
+    private static boolean sameNames(final List<Field> fields, final List<Field> otherFields) {
+        if (fields.size() != otherFields.size()) {
+            return false;
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            if (!fields.get(i).getName().equals(otherFields.get(i).getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "ImmutableQuery[query=" + getQuery() + ", offset=" + getOffset() + ", rows=" + getRows()
+                + ", cursorMark=" + getCursorMark() + ", returnFields=" + names(returnFields)
+                + ", highlightFields=" + names(highlightFields) + ", facetFields=" + names(facetFields)
+                + ", rangeFacets=" + rangeFacets + ", filterQueries=" + filterQueries + ", sorts=" + sorts + ", params=" + params
+                + ", defaultOperator=" + defaultOperator + ", profile=" + profile
+                + ", timeAllowed=" + timeAllowed + ", resultMode=" + resultMode + ", facetSampleSize=" + facetSampleSize
+                + ", multiSelectFacets=" + multiSelectFacets + "]";
+    }
+
+    private static List<String> names(final List<Field> fields) {
+        final List<String> names = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            names.add(field.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Builder for ImmutableQuery.
+     */
+    public static class Builder {
+
+        private final String query;
+        private Integer offset = DEFAULT_OFFSET;
+        private Integer rows = DEFAULT_PAGE_SIZE;
+        private String cursorMark;
+
+        private final List<Field> returnFields = new ArrayList<>();
+        private final List<Field> highlightFields = new ArrayList<>();
+        private final List<Field> facetFields = new ArrayList<>();
+        private final List<RangeFacet> rangeFacets = new ArrayList<>();
+        private final List<FilterQuery> filterQueries = new ArrayList<>();
+        private final List<Sort> sorts = new ArrayList<>();
+        private final Map<String,String> params = new TreeMap<>();
+
+        private Operator defaultOperator = Operator.AND;
+        private RequestMethod requestMethod = RequestMethod.GET;
+        private boolean profile;
+        private Long timeAllowed;
+        private ResultMode resultMode = ResultMode.DOCUMENTS;
+        private Integer facetSampleSize;
+        private boolean multiSelectFacets;
+
+        /**
+         * @param query the query string
+         */
+        public Builder(final String query) {
+            this.query = query;
+        }
+
+        /**
+         * Starts a Builder from the state of an existing Query.
+         *
+         * @param query the query to copy
+         */
+        public Builder(final Query query) {
+            this.query = query.getQuery();
+            this.offset = query.getOffset();
+            this.rows = query.getRows();
+            this.cursorMark = query.getCursorMark();
+            addAll(returnFields, query.getReturnFields());
+            addAll(highlightFields, query.getHighlightFields());
+            addAll(facetFields, query.getFacetFields());
+            addAll(rangeFacets, query.getRangeFacets());
+            addAll(filterQueries, query.getFilterQueries());
+            addAll(sorts, query.getSorts());
+            if (query.getParams() != null) {
+                params.putAll(query.getParams());
+            }
+            if (query.getDefaultOperator() != null) {
+                this.defaultOperator = query.getDefaultOperator();
+            }
+            if (query.getRequestMethod() != null) {
+                this.requestMethod = query.getRequestMethod();
+            }
+            this.profile = query.isProfile();
+            this.timeAllowed = query.getTimeAllowed();
+            if (query.getResultMode() != null) {
+                this.resultMode = query.getResultMode();
+            }
+            this.facetSampleSize = query.getFacetSampleSize();
+            this.multiSelectFacets = query.isMultiSelectFacets();
+        }
+
+        private static <T> void addAll(final List<T> list, final Collection<T> values) {
+            if (values != null) {
+                for (T value : values) {
+                    Validate.notNull(value);
+                    list.add(value);
+                }
+            }
+        }
+
+        public Builder offset(Integer offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        public Builder rows(Integer rows) {
+            this.rows = rows;
+            return this;
+        }
+
+        public Builder cursorMark(String cursorMark) {
+            this.cursorMark = cursorMark;
+            return this;
+        }
+
+        public Builder returnField(Field field) {
+            Validate.notNull(field);
+            this.returnFields.add(field);
+            return this;
+        }
+
+        public Builder returnFields(Collection<Field> fields) {
+            addAll(this.returnFields, fields);
+            return this;
+        }
+
+        public Builder highlightField(Field field) {
+            Validate.notNull(field);
+            this.highlightFields.add(field);
+            return this;
+        }
+
+        public Builder highlightFields(Collection<Field> fields) {
+            addAll(this.highlightFields, fields);
+            return this;
+        }
+
+        public Builder facetField(Field field) {
+            Validate.notNull(field);
+            this.facetFields.add(field);
+            return this;
+        }
+
+        public Builder facetFields(Collection<Field> fields) {
+            addAll(this.facetFields, fields);
+            return this;
+        }
+
+        public Builder clearFacetFields() {
+            this.facetFields.clear();
+            return this;
+        }
+
+        public Builder rangeFacet(RangeFacet rangeFacet) {
+            Validate.notNull(rangeFacet);
+            this.rangeFacets.add(rangeFacet);
+            return this;
+        }
+
+        public Builder rangeFacets(Collection<RangeFacet> rangeFacets) {
+            addAll(this.rangeFacets, rangeFacets);
+            return this;
+        }
+
+        public Builder clearRangeFacets() {
+            this.rangeFacets.clear();
+            return this;
+        }
+
+        public Builder filterQuery(FilterQuery filterQuery) {
+            Validate.notNull(filterQuery);
+            this.filterQueries.add(filterQuery);
+            return this;
+        }
+
+        public Builder filterQuery(Field field, String value) {
+            return filterQuery(new FilterQuery(field, value));
+        }
+
+        public Builder sort(Sort sort) {
+            Validate.notNull(sort);
+            this.sorts.add(sort);
+            return this;
+        }
+
+        public Builder sort(Field field, SortOrder order) {
+            return sort(new Sort(field, order));
+        }
+
+        public Builder param(String name, String value) {
+            Validate.notNull(name);
+            Validate.notNull(value);
+            this.params.put(name, value);
+            return this;
+        }
+
+        public Builder defaultOperator(Operator defaultOperator) {
+            Validate.notNull(defaultOperator);
+            this.defaultOperator = defaultOperator;
+            return this;
+        }
+
+        public Builder requestMethod(RequestMethod requestMethod) {
+            Validate.notNull(requestMethod);
+            this.requestMethod = requestMethod;
+            return this;
+        }
+
+        public Builder profile(boolean profile) {
+            this.profile = profile;
+            return this;
+        }
+
+        public Builder timeAllowed(Long timeAllowed) {
+            Validate.isTrue(timeAllowed == null || timeAllowed > 0, "Time allowed must be greater than 0");
+            this.timeAllowed = timeAllowed;
+            return this;
+        }
+
+        public Builder resultMode(ResultMode resultMode) {
+            Validate.notNull(resultMode);
+            this.resultMode = resultMode;
+            return this;
+        }
+
+        public Builder facetSampleSize(Integer facetSampleSize) {
+            Validate.isTrue(facetSampleSize == null || facetSampleSize > 0, "Facet sample size must be greater than 0");
+            this.facetSampleSize = facetSampleSize;
+            return this;
+        }
+
+        public Builder multiSelectFacets(boolean multiSelectFacets) {
+            this.multiSelectFacets = multiSelectFacets;
+            return this;
+        }
+
+        public ImmutableQuery build() {
+            return new ImmutableQuery(this);
+        }
+    }
+
+}
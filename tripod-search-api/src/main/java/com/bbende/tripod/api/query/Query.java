@@ -33,6 +33,11 @@ public class Query {
 
     public static final String QUERY_ALL = "*:*";
 
+    /**
+     * The cursorMark to pass to start paging from the first result.
+     */
+    public static final String CURSOR_MARK_START = "*";
+
     public static final int DEFAULT_PAGE_SIZE = 10;
     public static final int DEFAULT_OFFSET = 0;
 
@@ -44,6 +49,7 @@ public class Query {
     private List<Field> returnFields;
     private List<Field> highlightFields;
     private List<Field> facetFields;
+    private List<RangeFacet> rangeFacets;
 
     private List<FilterQuery> filterQueries;
     private List<Sort> sorts;
@@ -53,6 +59,16 @@ public class Query {
     private Operator defaultOperator = Operator.AND;
     private RequestMethod requestMethod = RequestMethod.GET;
 
+    private boolean profile;
+
+    private Long timeAllowed;
+
+    private ResultMode resultMode = ResultMode.DOCUMENTS;
+
+    private Integer facetSampleSize;
+
+    private boolean multiSelectFacets;
+
     /**
      * Constructs a Query with offset 0 and page size of 10.
      *
@@ -101,6 +117,28 @@ public class Query {
         Validate.isTrue(rows > 0);
     }
 
+    /**
+     * Constructs a query starting from the given cursorMark if it is not null, otherwise from the given offset.
+     *
+     * @param query the query string
+     * @param offset the offset to start at when cursorMark is null
+     * @param cursorMark the cursorMark to start at, or null
+     * @param rows the number of rows to retrieve
+     */
+    protected Query(final String query, final Integer offset, final String cursorMark, final Integer rows) {
+        this.query = query;
+        this.offset = (cursorMark == null ? offset : Integer.valueOf(0));
+        this.rows = rows;
+        this.cursorMark = cursorMark;
+
+        Validate.notEmpty(query);
+        Validate.notNull(this.offset);
+        Validate.isTrue(this.offset >= 0);
+        Validate.isTrue(cursorMark == null || cursorMark.length() > 0);
+        Validate.notNull(rows);
+        Validate.isTrue(rows > 0);
+    }
+
 
     public String getQuery() {
         return query;
@@ -149,6 +187,21 @@ public class Query {
         this.facetFields.add(field);
     }
 
+    public List<RangeFacet> getRangeFacets() {
+        return rangeFacets;
+    }
+
+    public void setRangeFacets(List<RangeFacet> rangeFacets) {
+        this.rangeFacets = rangeFacets;
+    }
+
+    public void addRangeFacet(RangeFacet rangeFacet) {
+        if (this.rangeFacets == null) {
+            this.rangeFacets = new ArrayList<>();
+        }
+        this.rangeFacets.add(rangeFacet);
+    }
+
     public List<FilterQuery> getFilterQueries() {
         return filterQueries;
     }
@@ -217,4 +270,69 @@ public class Query {
         this.requestMethod = requestMethod;
     }
 
+    public boolean isProfile() {
+        return profile;
+    }
+
+    /**
+     * @param profile true to return a QueryProfile with the results of this query
+     */
+    public void setProfile(boolean profile) {
+        this.profile = profile;
+    }
+
+    public Long getTimeAllowed() {
+        return timeAllowed;
+    }
+
+    /**
+     * @param timeAllowed the time in milliseconds the query may take before the results gathered so far are
+     *                    returned as partial results, or null for no limit
+     */
+    public void setTimeAllowed(Long timeAllowed) {
+        Validate.isTrue(timeAllowed == null || timeAllowed > 0, "Time allowed must be greater than 0");
+        this.timeAllowed = timeAllowed;
+    }
+
+    public ResultMode getResultMode() {
+        return resultMode;
+    }
+
+    /**
+     * @param resultMode what the query returns, where COUNT and FACETS return no results regardless of the rows
+     */
+    public void setResultMode(ResultMode resultMode) {
+        Validate.notNull(resultMode);
+        this.resultMode = resultMode;
+    }
+
+    public Integer getFacetSampleSize() {
+        return facetSampleSize;
+    }
+
+    /**
+     * @param facetSampleSize when the query matches more documents than this, facets are counted over a random
+     *                        sample of about this many matches and the counts are scaled up to estimates, or null to
+     *                        always count facets exactly. Multi-select facets are always counted exactly, since the
+     *                        drill-sideways counts are collected in the same pass as the hits and can't be sampled.
+     */
+    public void setFacetSampleSize(Integer facetSampleSize) {
+        Validate.isTrue(facetSampleSize == null || facetSampleSize > 0, "Facet sample size must be greater than 0");
+        this.facetSampleSize = facetSampleSize;
+    }
+
+    public boolean isMultiSelectFacets() {
+        return multiSelectFacets;
+    }
+
+    /**
+     * @param multiSelectFacets true to count each facet field as if the filter queries on that field weren't
+     *                          applied, so every value of a field stays selectable, while the results and the counts
+     *                          of other fields are still filtered by it. Filter queries on the same field match any
+     *                          of their values.
+     */
+    public void setMultiSelectFacets(boolean multiSelectFacets) {
+        this.multiSelectFacets = multiSelectFacets;
+    }
+
 }
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query;
+
+import com.bbende.tripod.api.Field;
+import org.apache.commons.lang.Validate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A request to count the matches of a query falling in each of a list of ranges of a numeric field, computed in the
+ * same pass as the query.
+ *
+ * Date fields are faceted on their value in epoch milliseconds. The ranges of a histogram are consecutive, each
+ * including its lower bound and excluding its upper bound, and are labeled with their lower bound, which is
+ * formatted as an ISO-8601 instant for date fields. Calendar intervals such as months are not supported since
+ * they vary in length.
+ *
+ * @author bbende
+ */
+public class RangeFacet {
+
+    /**
+     * The most ranges a histogram may have.
+     */
+    public static final int MAX_RANGES = 10000;
+
+    private final String name;
+    private final Field field;
+    private final boolean date;
+    private final List<Range> ranges;
+
+    private RangeFacet(final Builder builder) {
+        this.name = builder.name == null ? builder.field.getName() : builder.name;
+        this.field = builder.field;
+        this.date = builder.date;
+        this.ranges = Collections.unmodifiableList(new ArrayList<>(builder.ranges));
+        Validate.notEmpty(ranges, "At least one range is required");
+    }
+
+    /**
+     * @param field a numeric field
+     * @param start the lower bound of the first range
+     * @param end the upper bound of the last range, which is shorter than the gap when end - start isn't a multiple
+     *            of the gap
+     * @param gap the size of each range
+     * @return a histogram of the field from start to end
+     */
+    public static RangeFacet histogram(final Field field, final long start, final long end, final long gap) {
+        return histogram(new Builder(field), start, end, gap);
+    }
+
+    /**
+     * @param field a date field
+     * @param start the lower bound of the first range
+     * @param end the upper bound of the last range
+     * @param interval the length of each range
+     * @return a histogram of the field from start to end
+     */
+    public static RangeFacet dateHistogram(final Field field, final Instant start, final Instant end,
+                                           final Duration interval) {
+        Validate.notNull(start);
+        Validate.notNull(end);
+        Validate.notNull(interval);
+        return histogram(new Builder(field).date(true), start.toEpochMilli(), end.toEpochMilli(), interval.toMillis());
+    }
+
+    private static RangeFacet histogram(final Builder builder, final long start, final long end, final long gap) {
+        Validate.isTrue(start < end, "Start must be less than end");
+        Validate.isTrue(gap > 0, "Gap must be greater than 0");
+        Validate.isTrue((end - start - 1) / gap < MAX_RANGES, "Histogram can't have more than " + MAX_RANGES + " ranges");
+
+        for (long lower = start; lower < end; lower += gap) {
+            final long upper = end - lower > gap ? lower + gap : end;
+            builder.range(builder.date ? Instant.ofEpochMilli(lower).toString() : String.valueOf(lower), lower, upper);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the name of the FacetResult of this facet, which defaults to the name of the field
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @return true if the field is a date field whose values are epoch milliseconds
+     */
+    public boolean isDate() {
+        return date;
+    }
+
+    public List<Range> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * RangeFacets are equal when they have the same name and the same ranges of fields with the same name.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final RangeFacet other = (RangeFacet) o;
+        return name.equals(other.name) && field.getName().equals(other.field.getName()) && date == other.date
+                && ranges.equals(other.ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, field.getName(), date, ranges);
+    }
+
+    @Override
+    public String toString() {
+        return "RangeFacet[name=" + name + ", field=" + field.getName() + ", date=" + date + ", ranges=" + ranges + "]";
+    }
+
+    /**
+     * A labeled range of values, where a null bound is unbounded.
+     */
+    public static class Range {
+
+        private final String label;
+        private final Long min;
+        private final boolean minInclusive;
+        private final Long max;
+        private final boolean maxInclusive;
+
+        public Range(final String label, final Long min, final boolean minInclusive,
+                     final Long max, final boolean maxInclusive) {
+            this.label = label;
+            this.min = min;
+            this.minInclusive = minInclusive;
+            this.max = max;
+            this.maxInclusive = maxInclusive;
+            Validate.notEmpty(label);
+            Validate.isTrue(min == null || max == null || min <= max, "Min must not be greater than max");
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Long getMin() {
+            return min;
+        }
+
+        public boolean isMinInclusive() {
+            return minInclusive;
+        }
+
+        public Long getMax() {
+            return max;
+        }
+
+        public boolean isMaxInclusive() {
+            return maxInclusive;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final Range other = (Range) o;
+            return label.equals(other.label) && Objects.equals(min, other.min) && minInclusive == other.minInclusive
+                    && Objects.equals(max, other.max) && maxInclusive == other.maxInclusive;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(label, min, minInclusive, max, maxInclusive);
+        }
+
+        @Override
+        public String toString() {
+            return label + "=" + (minInclusive ? "[" : "{") + (min == null ? "*" : min) + " TO "
+                    + (max == null ? "*" : max) + (maxInclusive ? "]" : "}");
+        }
+    }
+
+    /**
+     * Builder for a RangeFacet with arbitrary ranges.
+     */
+    public static class Builder {
+        private final Field field;
+        private String name;
+        private boolean date;
+        private final List<Range> ranges = new ArrayList<>();
+
+        /**
+         * @param field a numeric field
+         */
+        public Builder(final Field field) {
+            Validate.notNull(field);
+            this.field = field;
+        }
+
+        /**
+         * @param name the name of the FacetResult, to facet on the same field more than once
+         * @return this builder
+         */
+        public Builder name(String name) {
+            Validate.notEmpty(name);
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * @param date true if the field is a date field whose values are epoch milliseconds
+         * @return this builder
+         */
+        public Builder date(boolean date) {
+            this.date = date;
+            return this;
+        }
+
+        /**
+         * Adds a range including min and excluding max.
+         *
+         * @param label the label of the range
+         * @param min the lower bound, or null for unbounded
+         * @param max the upper bound, or null for unbounded
+         * @return this builder
+         */
+        public Builder range(String label, Long min, Long max) {
+            return range(new Range(label, min, true, max, false));
+        }
+
+        public Builder range(Range range) {
+            Validate.notNull(range);
+            this.ranges.add(range);
+            return this;
+        }
+
+        public RangeFacet build() {
+            return new RangeFacet(this);
+        }
+    }
+
+}
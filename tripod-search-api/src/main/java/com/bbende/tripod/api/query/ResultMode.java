@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query;
+
+/**
+ * What a query returns, so that callers that only need counts don't pay for retrieving documents.
+ *
+ * @author bbende
+ */
+public enum ResultMode {
+
+    /**
+     * The page of results along with the total count and any facet counts.
+     */
+    DOCUMENTS,
+
+    /**
+     * Only the total count, ignoring facet and highlight fields.
+     */
+    COUNT,
+
+    /**
+     * Only the total count and the facet counts, ignoring highlight fields.
+     */
+    FACETS;
+
+}
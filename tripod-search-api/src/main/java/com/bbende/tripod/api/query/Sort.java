@@ -19,6 +19,8 @@ package com.bbende.tripod.api.query;
 import com.bbende.tripod.api.Field;
 import org.apache.commons.lang.Validate;
 
+import java.util.Objects;
+
 /**
  * A sort clause for a query.
  *
@@ -52,4 +54,30 @@ public class Sort {
     public static Sort desc(Field field) {
         return new Sort(field, SortOrder.DESC);
     }
+
+    /**
+     * Sorts are equal when they sort on fields with the same name in the same order.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final Sort other = (Sort) o;
+        return field.getName().equals(other.field.getName()) && sortOrder == other.sortOrder;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field.getName(), sortOrder);
+    }
+
+    @Override
+    public String toString() {
+        return field.getName() + " " + sortOrder.name();
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.result;
+
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.service.QueryException;
+import org.apache.commons.lang.Validate;
+
+/**
+ * The outcome of one query in a batch, holding either the results of the query or the exception it failed with.
+ *
+ * @author bbende
+ */
+public class BatchResult<QR extends QueryResult> {
+
+    private final Query query;
+    private final QueryResults<QR> results;
+    private final QueryException exception;
+
+    private BatchResult(final Query query, final QueryResults<QR> results, final QueryException exception) {
+        this.query = query;
+        this.results = results;
+        this.exception = exception;
+        Validate.notNull(query);
+    }
+
+    public static <QR extends QueryResult> BatchResult<QR> success(final Query query, final QueryResults<QR> results) {
+        Validate.notNull(results);
+        return new BatchResult<>(query, results, null);
+    }
+
+    public static <QR extends QueryResult> BatchResult<QR> failure(final Query query, final QueryException exception) {
+        Validate.notNull(exception);
+        return new BatchResult<>(query, null, exception);
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * @return the results of the query, or null if it failed
+     */
+    public QueryResults<QR> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the exception the query failed with, or null if it succeeded
+     */
+    public QueryException getException() {
+        return exception;
+    }
+
+    /**
+     * @return the results of the query
+     * @throws QueryException the exception the query failed with
+     */
+    public QueryResults<QR> getResultsOrThrow() throws QueryException {
+        if (exception != null) {
+            throw exception;
+        }
+        return results;
+    }
+
+}
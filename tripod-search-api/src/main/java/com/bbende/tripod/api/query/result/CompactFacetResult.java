@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.result;
+
+import org.apache.commons.lang.Validate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A FacetResult that holds its values in parallel primitive arrays instead of a FacetCount per value, for fields
+ * with many values.
+ *
+ * The labels are kept as UTF-8 bytes in a single array and only decoded to a String when accessed. getFacetCounts
+ * returns a view that creates each FacetCount on access, so callers of FacetResult keep working, while callers that
+ * know about the compact form can use size, getLabel, getCount and getErrorBound instead.
+ *
+ * @author bbende
+ */
+public class CompactFacetResult extends FacetResult {
+
+    private final byte[] labelBytes;
+    private final int[] labelOffsets;
+    private final long[] counts;
+    private final long[] errorBounds;
+    private final int size;
+
+    private final List<FacetCount> facetCountsView = new FacetCountsView();
+
+    private CompactFacetResult(final Builder builder) {
+        super(builder.field, builder.samplingRate);
+        this.size = builder.size;
+        this.labelBytes = Arrays.copyOf(builder.labelBytes, builder.labelOffsets[size]);
+        this.labelOffsets = Arrays.copyOf(builder.labelOffsets, size + 1);
+        this.counts = Arrays.copyOf(builder.counts, size);
+        this.errorBounds = builder.errorBounds == null ? null : Arrays.copyOf(builder.errorBounds, size);
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of a value
+     * @return the label of the value, decoded on each call
+     */
+    public String getLabel(final int index) {
+        checkIndex(index);
+        final int offset = labelOffsets[index];
+        return new String(labelBytes, offset, labelOffsets[index + 1] - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param index the index of a value
+     * @return the count of the value, or an estimate of it
+     */
+    public long getCount(final int index) {
+        checkIndex(index);
+        return counts[index];
+    }
+
+    /**
+     * @param index the index of a value
+     * @return the distance from the count that the exact count is within with 95% confidence, or 0 if exact
+     */
+    public long getErrorBound(final int index) {
+        checkIndex(index);
+        return errorBounds == null ? 0 : errorBounds[index];
+    }
+
+    /**
+     * @return a view of the values that creates a FacetCount for each value as it is accessed
+     */
+    @Override
+    public List<FacetCount> getFacetCounts() {
+        return facetCountsView;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Read-only FacetCount view of the arrays.
+     */
+    private class FacetCountsView extends AbstractList<FacetCount> implements RandomAccess {
+
+        @Override
+        public FacetCount get(final int index) {
+            return new FacetCount(getLabel(index), getCount(index), getErrorBound(index));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Builder for CompactFacetResult, which grows its arrays as values are added.
+     */
+    public static class Builder {
+        private final String field;
+        private final double samplingRate;
+
+        private byte[] labelBytes;
+        private int[] labelOffsets;
+        private long[] counts;
+        private long[] errorBounds;
+        private int size;
+
+        /**
+         * @param field the field
+         * @param expectedSize the expected number of values
+         * @param samplingRate the fraction of the matching documents the counts are computed over
+         */
+        public Builder(final String field, final int expectedSize, final double samplingRate) {
+            Validate.notNull(field);
+            Validate.isTrue(expectedSize >= 0);
+            Validate.isTrue(samplingRate > 0 && samplingRate <= 1, "Sampling rate must be greater than 0 and at most 1");
+            this.field = field;
+            this.samplingRate = samplingRate;
+            this.labelBytes = new byte[expectedSize * 8];
+            this.labelOffsets = new int[expectedSize + 1];
+            this.counts = new long[expectedSize];
+            this.errorBounds = samplingRate < 1 ? new long[expectedSize] : null;
+        }
+
+        /**
+         * @param label the label of the value
+         * @param sampleCount the count of the value over the sample, which is the exact count with a sampling rate of 1
+         * @return this builder
+         */
+        public Builder add(final String label, final long sampleCount) {
+            Validate.notEmpty(label);
+            final byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+            return add(bytes, 0, bytes.length, sampleCount);
+        }
+
+        /**
+         * @param bytes the bytes holding the UTF-8 label of the value, which are copied
+         * @param offset the offset of the label in the bytes
+         * @param length the length of the label
+         * @param sampleCount the count of the value over the sample, which is the exact count with a sampling rate of 1
+         * @return this builder
+         */
+        public Builder add(final byte[] bytes, final int offset, final int length, final long sampleCount) {
+            Validate.notNull(bytes);
+            Validate.isTrue(length > 0 && offset >= 0 && offset + length <= bytes.length);
+            Validate.isTrue(sampleCount >= 0);
+
+            if (size == counts.length) {
+                final int capacity = Math.max(8, size * 2);
+                labelOffsets = Arrays.copyOf(labelOffsets, capacity + 1);
+                counts = Arrays.copyOf(counts, capacity);
+                if (errorBounds != null) {
+                    errorBounds = Arrays.copyOf(errorBounds, capacity);
+                }
+            }
+
+            final int labelStart = labelOffsets[size];
+            if (labelStart + length > labelBytes.length) {
+                labelBytes = Arrays.copyOf(labelBytes, Math.max(labelStart + length, labelBytes.length * 2));
+            }
+            System.arraycopy(bytes, offset, labelBytes, labelStart, length);
+            labelOffsets[size + 1] = labelStart + length;
+
+            counts[size] = FacetCount.estimateCount(sampleCount, samplingRate);
+            if (errorBounds != null) {
+                errorBounds[size] = FacetCount.estimateErrorBound(sampleCount, samplingRate);
+            }
+            size++;
+            return this;
+        }
+
+        public CompactFacetResult build() {
+            return new CompactFacetResult(this);
+        }
+    }
+
+}
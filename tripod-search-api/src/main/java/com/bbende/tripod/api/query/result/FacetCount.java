@@ -25,23 +25,75 @@ import org.apache.commons.lang.Validate;
  */
 public class FacetCount {
 
+    /**
+     * The z-score of the 95% confidence interval of an estimated count.
+     */
+    static final double Z_95 = 1.96;
+
     private final String value;
 
-    private final Long count;
+    private final long count;
+
+    private final long errorBound;
+
+    public FacetCount(final String value, final long count) {
+        this(value, count, 0);
+    }
 
-    public FacetCount(final String value, final Long count) {
+    /**
+     * @param value the value
+     * @param count the count, or an estimate of it
+     * @param errorBound the count is within this distance of the exact count with 95% confidence, or 0 if exact
+     */
+    public FacetCount(final String value, final long count, final long errorBound) {
         this.value = value;
         this.count = count;
+        this.errorBound = errorBound;
         Validate.notEmpty(value);
-        Validate.notNull(count);
+        Validate.isTrue(errorBound >= 0);
+    }
+
+    /**
+     * Estimates the count of a value from its count over a random sample of the matching documents, where each match
+     * was sampled with probability samplingRate.
+     *
+     * @param value the value
+     * @param sampleCount the count over the sample
+     * @param samplingRate the fraction of matching documents in the sample, greater than 0 and at most 1
+     * @return the scaled up count, with the error bound of a binomial sample
+     */
+    public static FacetCount estimate(final String value, final long sampleCount, final double samplingRate) {
+        Validate.isTrue(samplingRate > 0 && samplingRate <= 1, "Sampling rate must be greater than 0 and at most 1");
+        if (samplingRate == 1) {
+            return new FacetCount(value, sampleCount);
+        }
+        return new FacetCount(value, estimateCount(sampleCount, samplingRate),
+                estimateErrorBound(sampleCount, samplingRate));
+    }
+
+    static long estimateCount(final long sampleCount, final double samplingRate) {
+        return samplingRate == 1 ? sampleCount : Math.round(sampleCount / samplingRate);
+    }
+
+    static long estimateErrorBound(final long sampleCount, final double samplingRate) {
+        return samplingRate == 1
+                ? 0 : (long) Math.ceil(Z_95 * Math.sqrt(sampleCount * (1 - samplingRate)) / samplingRate);
     }
 
     public String getValue() {
         return value;
     }
 
-    public Long getCount() {
+    public long getCount() {
         return count;
     }
 
+    /**
+     * @return the distance from the count that the exact count is within with 95% confidence, or 0 if the count
+     *         is exact
+     */
+    public long getErrorBound() {
+        return errorBound;
+    }
+
 }
@@ -18,6 +18,8 @@ package com.bbende.tripod.api.query.result;
 
 import org.apache.commons.lang.Validate;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,11 +33,38 @@ public class FacetResult {
 
     private final List<FacetCount> facetCounts;
 
+    private final double samplingRate;
+
     public FacetResult(final String field, final List<FacetCount> facetCounts) {
-        this.field = field;
-        this.facetCounts = facetCounts;
+        this(field, facetCounts, 1.0);
+    }
+
+    /**
+     * @param field the field
+     * @param facetCounts the counts, which are estimates when the sampling rate is less than 1
+     * @param samplingRate the fraction of the matching documents the counts were computed over
+     */
+    public FacetResult(final String field, final List<FacetCount> facetCounts, final double samplingRate) {
         Validate.notNull(field);
         Validate.notNull(facetCounts);
+        Validate.isTrue(samplingRate > 0 && samplingRate <= 1, "Sampling rate must be greater than 0 and at most 1");
+        this.field = field;
+        this.facetCounts = Collections.unmodifiableList(new ArrayList<>(facetCounts));
+        this.samplingRate = samplingRate;
+    }
+
+    /**
+     * For sub-classes that hold their counts in another form and override getFacetCounts.
+     *
+     * @param field the field
+     * @param samplingRate the fraction of the matching documents the counts were computed over
+     */
+    protected FacetResult(final String field, final double samplingRate) {
+        Validate.notNull(field);
+        Validate.isTrue(samplingRate > 0 && samplingRate <= 1, "Sampling rate must be greater than 0 and at most 1");
+        this.field = field;
+        this.facetCounts = null;
+        this.samplingRate = samplingRate;
     }
 
     public String getField() {
@@ -46,4 +75,19 @@ public class FacetResult {
         return facetCounts;
     }
 
+    /**
+     * @return true if the counts were estimated from a sample of the matching documents, in which case each count
+     *         has an error bound
+     */
+    public boolean isApproximate() {
+        return samplingRate < 1;
+    }
+
+    /**
+     * @return the fraction of the matching documents the counts were computed over, 1 when the counts are exact
+     */
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
 }
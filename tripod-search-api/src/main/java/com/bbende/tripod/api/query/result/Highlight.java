@@ -18,6 +18,8 @@ package com.bbende.tripod.api.query.result;
 
 import org.apache.commons.lang.Validate;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -32,10 +34,10 @@ public class Highlight {
     private final List<String> snippets;
 
     public Highlight(final String field, final List<String> snippets) {
+        Validate.notNull(field);
+        Validate.notEmpty(snippets);
         this.field = field;
-        this.snippets = snippets;
-        Validate.notNull(this.field);
-        Validate.notEmpty(this.snippets);
+        this.snippets = Collections.unmodifiableList(new ArrayList<>(snippets));
     }
 
     public String getField() {
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.result;
+
+import com.bbende.tripod.api.metrics.Phase;
+import org.apache.commons.lang.Validate;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A breakdown of where the time of a single query was spent, returned on QueryResults when Query.isProfile is set.
+ *
+ * Phase timings are measured by the client performing the query. Backends that run on a server, such as Solr, also
+ * report the server's own time and per-phase timings. Counts that a backend can't report are -1.
+ *
+ * @author bbende
+ */
+public class QueryProfile {
+
+    private final Map<Phase,Long> phaseNanos;
+    private final Map<Phase,Long> serverPhaseNanos;
+    private final long serverTimeMillis;
+    private final int segmentsSearched;
+    private final long hitsCollected;
+    private final long storedFieldBytes;
+    private final int facetDimensions;
+    private final String rewrittenQuery;
+
+    protected QueryProfile(final Builder builder) {
+        this.phaseNanos = Collections.unmodifiableMap(new EnumMap<>(builder.phaseNanos));
+        this.serverPhaseNanos = Collections.unmodifiableMap(new EnumMap<>(builder.serverPhaseNanos));
+        this.serverTimeMillis = builder.serverTimeMillis;
+        this.segmentsSearched = builder.segmentsSearched;
+        this.hitsCollected = builder.hitsCollected;
+        this.storedFieldBytes = builder.storedFieldBytes;
+        this.facetDimensions = builder.facetDimensions;
+        this.rewrittenQuery = builder.rewrittenQuery;
+    }
+
+    /**
+     * @return the time in nanoseconds of each phase measured by the client
+     */
+    public Map<Phase,Long> getPhaseNanos() {
+        return phaseNanos;
+    }
+
+    /**
+     * @return the time in nanoseconds of each phase reported by the server, empty when not applicable
+     */
+    public Map<Phase,Long> getServerPhaseNanos() {
+        return serverPhaseNanos;
+    }
+
+    /**
+     * @return the time reported by the server for the whole query, or -1 when not applicable
+     */
+    public long getServerTimeMillis() {
+        return serverTimeMillis;
+    }
+
+    /**
+     * @return the number of index segments searched, or -1 if unknown
+     */
+    public int getSegmentsSearched() {
+        return segmentsSearched;
+    }
+
+    /**
+     * @return the number of documents matched and collected
+     */
+    public long getHitsCollected() {
+        return hitsCollected;
+    }
+
+    /**
+     * @return the approximate number of bytes of stored fields loaded for the results, or -1 if unknown
+     */
+    public long getStoredFieldBytes() {
+        return storedFieldBytes;
+    }
+
+    /**
+     * @return the number of facet dimensions counted
+     */
+    public int getFacetDimensions() {
+        return facetDimensions;
+    }
+
+    /**
+     * @return the query that was executed after parsing and rewriting, or null if unknown
+     */
+    public String getRewrittenQuery() {
+        return rewrittenQuery;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryProfile[phaseNanos=" + phaseNanos + ", serverPhaseNanos=" + serverPhaseNanos
+                + ", serverTimeMillis=" + serverTimeMillis + ", segmentsSearched=" + segmentsSearched
+                + ", hitsCollected=" + hitsCollected + ", storedFieldBytes=" + storedFieldBytes
+                + ", facetDimensions=" + facetDimensions + ", rewrittenQuery=" + rewrittenQuery + "]";
+    }
+
+    /**
+     * Builder for QueryProfile.
+     */
+    public static class Builder {
+        private EnumMap<Phase,Long> phaseNanos = new EnumMap<>(Phase.class);
+        private EnumMap<Phase,Long> serverPhaseNanos = new EnumMap<>(Phase.class);
+        private long serverTimeMillis = -1;
+        private int segmentsSearched = -1;
+        private long hitsCollected;
+        private long storedFieldBytes = -1;
+        private int facetDimensions;
+        private String rewrittenQuery;
+
+        public Builder phaseNanos(Map<Phase,Long> phaseNanos) {
+            Validate.notNull(phaseNanos);
+            this.phaseNanos.clear();
+            this.phaseNanos.putAll(phaseNanos);
+            return this;
+        }
+
+        public Builder serverPhaseNanos(Map<Phase,Long> serverPhaseNanos) {
+            Validate.notNull(serverPhaseNanos);
+            this.serverPhaseNanos.clear();
+            this.serverPhaseNanos.putAll(serverPhaseNanos);
+            return this;
+        }
+
+        public Builder serverTimeMillis(long serverTimeMillis) {
+            this.serverTimeMillis = serverTimeMillis;
+            return this;
+        }
+
+        public Builder segmentsSearched(int segmentsSearched) {
+            this.segmentsSearched = segmentsSearched;
+            return this;
+        }
+
+        public Builder hitsCollected(long hitsCollected) {
+            this.hitsCollected = hitsCollected;
+            return this;
+        }
+
+        public Builder storedFieldBytes(long storedFieldBytes) {
+            this.storedFieldBytes = storedFieldBytes;
+            return this;
+        }
+
+        public Builder facetDimensions(int facetDimensions) {
+            this.facetDimensions = facetDimensions;
+            return this;
+        }
+
+        public Builder rewrittenQuery(String rewrittenQuery) {
+            this.rewrittenQuery = rewrittenQuery;
+            return this;
+        }
+
+        public QueryProfile build() {
+            return new QueryProfile(this);
+        }
+    }
+
+}
@@ -35,13 +35,24 @@ public class QueryResults<QR extends QueryResult> {
     private final List<QR> results;
     private final List<FacetResult> facetResults;
 
+    private final QueryProfile profile;
+
+    private final boolean partialResults;
+
     protected QueryResults(Builder<QR> builder) {
         this.offset = builder.offset;
         this.pageSize = builder.pageSize;
         this.totalResults = builder.totalResults;
         this.cursorMark = builder.cursorMark;
-        this.results = Collections.unmodifiableList(new ArrayList<QR>(builder.results));
-        this.facetResults = Collections.unmodifiableList(new ArrayList<>(builder.facetResults));
+        this.profile = builder.profile;
+        this.partialResults = builder.partialResults;
+
+        // the lists of the builder are handed over instead of copied, the builder copies them if changed afterwards
+        this.results = builder.results == null
+                ? Collections.emptyList() : Collections.unmodifiableList(builder.results);
+        this.facetResults = builder.facetResults == null
+                ? Collections.emptyList() : Collections.unmodifiableList(builder.facetResults);
+        builder.shared = true;
     }
 
     public long getOffset() {
@@ -69,7 +80,21 @@ public class QueryResults<QR extends QueryResult> {
     }
 
     /**
-     * Builder for QueryResults.
+     * @return the profile of the query if the query was performed with profiling enabled, otherwise null
+     */
+    public QueryProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return true if the time allowed for the query ran out and these are the results gathered before it did
+     */
+    public boolean isPartialResults() {
+        return partialResults;
+    }
+
+    /**
+     * Builder for QueryResults, which only creates its lists once something is added to them.
      *
      * @param <QR> the type of result
      */
@@ -78,8 +103,11 @@ public class QueryResults<QR extends QueryResult> {
         private long offset;
         private long totalResults;
         private String cursorMark;
-        private List<QR> results = new ArrayList<>();
-        private List<FacetResult> facetResults = new ArrayList<>();
+        private List<QR> results;
+        private List<FacetResult> facetResults;
+        private QueryProfile profile;
+        private boolean partialResults;
+        private boolean shared;
 
         public Builder<QR> offset(long offset) {
             this.offset = offset;
@@ -103,14 +131,18 @@ public class QueryResults<QR extends QueryResult> {
 
         public Builder<QR> results(List<QR> results) {
             if (results != null) {
-                this.results.clear();
-                this.results.addAll(results);
+                unshare();
+                this.results = new ArrayList<>(results);
             }
             return this;
         }
 
         public Builder<QR> addResult(QR result) {
             if (result != null) {
+                unshare();
+                if (this.results == null) {
+                    this.results = new ArrayList<>();
+                }
                 this.results.add(result);
             }
             return this;
@@ -118,19 +150,44 @@ public class QueryResults<QR extends QueryResult> {
 
         public Builder<QR> facetResults(List<FacetResult> facetResults) {
             if (facetResults != null) {
-                this.facetResults.clear();
-                this.facetResults.addAll(facetResults);
+                unshare();
+                this.facetResults = new ArrayList<>(facetResults);
             }
             return this;
         }
 
         public Builder<QR> addFacetResult(FacetResult facetResult) {
             if (facetResult != null) {
+                unshare();
+                if (this.facetResults == null) {
+                    this.facetResults = new ArrayList<>();
+                }
                 this.facetResults.add(facetResult);
             }
             return this;
         }
 
+        /**
+         * Copies the lists handed to a built QueryResults before changing them.
+         */
+        private void unshare() {
+            if (shared) {
+                results = results == null ? null : new ArrayList<>(results);
+                facetResults = facetResults == null ? null : new ArrayList<>(facetResults);
+                shared = false;
+            }
+        }
+
+        public Builder<QR> profile(QueryProfile profile) {
+            this.profile = profile;
+            return this;
+        }
+
+        public Builder<QR> partialResults(boolean partialResults) {
+            this.partialResults = partialResults;
+            return this;
+        }
+
         public QueryResults<QR> build() {
             return new QueryResults<>(this);
         }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A QueryService that performs queries asynchronously.
+ *
+ * @author bbende
+ */
+public interface AsyncQueryService<QR extends QueryResult> {
+
+    /**
+     * Performs the given query asynchronously.
+     *
+     * Cancelling the returned future stops the query if the backend supports it. Cancelling a future derived from the
+     * returned future does not cancel the query.
+     *
+     * @param query the query
+     * @return a future completed with the results of the query, or exceptionally with a QueryException
+     */
+    CompletableFuture<QueryResults<QR>> searchAsync(final Query query);
+
+}
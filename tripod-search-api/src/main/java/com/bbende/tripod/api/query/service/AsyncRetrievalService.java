@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.entity.Entity;
+import com.bbende.tripod.api.query.RetrievalQuery;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A RetrievalService that performs retrievals asynchronously.
+ *
+ * Each future is completed exceptionally with a QueryException if the retrieval fails.
+ *
+ * @author bbende
+ */
+public interface AsyncRetrievalService<E extends Entity> {
+
+    /**
+     * @param query the query to execute
+     * @return a future completed with the single result of the query
+     * @see RetrievalService#find(RetrievalQuery)
+     */
+    CompletableFuture<E> findAsync(final RetrievalQuery query);
+
+    /**
+     * @param id the id of the entity
+     * @return a future completed with the entity with the given id, or null if none exists
+     * @see RetrievalService#findById(String)
+     */
+    CompletableFuture<E> findByIdAsync(final String id);
+
+    /**
+     * @param ids the ids of the entities to retrieve
+     * @return a future completed with a map from id to entity containing only the ids that were found
+     * @see RetrievalService#findAll(Collection)
+     */
+    CompletableFuture<Map<String,E>> findAllAsync(final Collection<String> ids);
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.BatchResult;
+import com.bbende.tripod.api.query.result.QueryResult;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Performs a batch of queries concurrently on an Executor.
+ *
+ * @author bbende
+ */
+public final class BatchSearch {
+
+    private BatchSearch() {
+
+    }
+
+    /**
+     * Performs each query with the given service on the given executor, and waits for all of them to complete.
+     *
+     * A query that fails, or that the executor rejects, only fails its own BatchResult. The size of the executor
+     * bounds how many of the queries run at once.
+     *
+     * @param queries the queries
+     * @param executor the executor to perform the queries on
+     * @param queryService the service to perform each query with
+     * @return the outcome of each query, in the order of the queries
+     */
+    public static <QR extends QueryResult> List<BatchResult<QR>> searchAll(final List<Query> queries,
+                                                                          final Executor executor,
+                                                                          final QueryService<QR> queryService) {
+        Validate.notNull(queries);
+        Validate.notNull(executor);
+        Validate.notNull(queryService);
+
+        final List<CompletableFuture<BatchResult<QR>>> futures = new ArrayList<>(queries.size());
+        for (final Query query : queries) {
+            CompletableFuture<BatchResult<QR>> future;
+            try {
+                future = CompletableFuture.supplyAsync(() -> search(query, queryService), executor);
+            } catch (RejectedExecutionException e) {
+                future = CompletableFuture.completedFuture(
+                        BatchResult.failure(query, new QueryException("Query was rejected by the executor", e)));
+            }
+            futures.add(future);
+        }
+
+        // search never completes exceptionally, so join only waits
+        final List<BatchResult<QR>> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<BatchResult<QR>> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private static <QR extends QueryResult> BatchResult<QR> search(final Query query,
+                                                                  final QueryService<QR> queryService) {
+        try {
+            return BatchResult.success(query, queryService.search(query));
+        } catch (QueryException e) {
+            return BatchResult.failure(query, e);
+        } catch (RuntimeException e) {
+            return BatchResult.failure(query, new QueryException("Unexpected error occurred performing query", e));
+        }
+    }
+
+}
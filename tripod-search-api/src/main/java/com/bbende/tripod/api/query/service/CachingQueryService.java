@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.cache.BoundedCache;
+import com.bbende.tripod.api.cache.CacheStats;
+import com.bbende.tripod.api.index.IndexListener;
+import com.bbende.tripod.api.query.ImmutableQuery;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.FacetResult;
+import com.bbende.tripod.api.query.result.QueryResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import org.apache.commons.lang.Validate;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * A QueryService that caches the results of another QueryService.
+ *
+ * Results are keyed by the canonical ImmutableQuery copy of each query and held in a BoundedCache. The cache is
+ * cleared on every commit when registered as an IndexListener, and can be cleared on searcher refresh by the backend.
+ * Profiled queries always go to the wrapped service, since their QueryProfile describes that one execution.
+ *
+ * QueryResults are immutable but the results they hold may not be, so every result is copied with the given copy
+ * function when put in the cache and again on every hit. Changes a caller makes to the results it gets back never
+ * reach the cache or other callers. The copy function must return a new result, and should copy any mutable state
+ * the result holds, such as its highlights.
+ *
+ * @author bbende
+ */
+public class CachingQueryService<QR extends QueryResult> implements QueryService<QR>, IndexListener {
+
+    private final QueryService<QR> queryService;
+    private final BoundedCache<ImmutableQuery,QueryResults<QR>> cache;
+    private final UnaryOperator<QR> copier;
+
+    /**
+     * Creates a CachingQueryService holding up to the given number of results.
+     *
+     * @param queryService the service to cache
+     * @param maxSize the maximum number of cached query results
+     * @param copier returns a copy of a result that shares no mutable state with it
+     */
+    public CachingQueryService(final QueryService<QR> queryService, final int maxSize, final UnaryOperator<QR> copier) {
+        this(queryService, new BoundedCache.Builder<ImmutableQuery,QueryResults<QR>>().maxSize(maxSize).build(), copier);
+    }
+
+    /**
+     * @param queryService the service to cache
+     * @param cache the cache to use
+     * @param copier returns a copy of a result that shares no mutable state with it
+     */
+    public CachingQueryService(final QueryService<QR> queryService, final BoundedCache<ImmutableQuery,QueryResults<QR>> cache,
+                               final UnaryOperator<QR> copier) {
+        this.queryService = queryService;
+        this.cache = cache;
+        this.copier = copier;
+        Validate.notNull(this.queryService);
+        Validate.notNull(this.cache);
+        Validate.notNull(this.copier);
+    }
+
+    @Override
+    public QueryResults<QR> search(final Query query) throws QueryException {
+        if (query.isProfile()) {
+            return queryService.search(query);
+        }
+
+        final ImmutableQuery key = ImmutableQuery.copyOf(query);
+
+        final QueryResults<QR> cached = cache.get(key);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        final long generation = cache.getGeneration();
+        final QueryResults<QR> results = queryService.search(query);
+
+        // partial results depend on how long this particular search took, so they are never cached
+        if (!results.isPartialResults()) {
+            cache.put(key, copy(results), generation);
+        }
+        return results;
+    }
+
+    /**
+     * @return a QueryResults holding a copy of each of the given results
+     */
+    private QueryResults<QR> copy(final QueryResults<QR> results) {
+        final QueryResults.Builder<QR> builder = new QueryResults.Builder<QR>()
+                .offset(results.getOffset())
+                .pageSize(results.getPageSize())
+                .totalResults(results.getTotalResults())
+                .cursorMark(results.getCursorMark())
+                .facetResults(results.getFacetResults())
+                .profile(results.getProfile())
+                .partialResults(results.isPartialResults());
+
+        for (QR result : results.getResults()) {
+            builder.addResult(copier.apply(result));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void onCommit() {
+        invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * A weight for QueryResults based on the number of results and facet counts they hold, for use with
+     * BoundedCache.Builder.maxWeight.
+     *
+     * @param key the key of the results
+     * @param results the results
+     * @return the weight of the results
+     */
+    public static int weigh(final ImmutableQuery key, final QueryResults<?> results) {
+        int weight = 1 + results.getResults().size();
+        for (FacetResult facetResult : results.getFacetResults()) {
+            weight += facetResult.getFacetCounts().size();
+        }
+        return weight;
+    }
+
+}
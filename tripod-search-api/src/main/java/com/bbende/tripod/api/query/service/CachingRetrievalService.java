@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.Field;
+import com.bbende.tripod.api.cache.BoundedCache;
+import com.bbende.tripod.api.cache.CacheStats;
+import com.bbende.tripod.api.entity.Entity;
+import com.bbende.tripod.api.index.IndexListener;
+import com.bbende.tripod.api.query.RetrievalQuery;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A RetrievalService that caches entities retrieved by id from another RetrievalService.
+ *
+ * Ids that do not exist can be cached as misses so repeated lookups of unknown ids do not reach the index. Entries
+ * older than refreshAfter are still returned, and are reloaded in the background on the refresh executor.
+ *
+ * When registered as an IndexListener, only the ids that pass through the Indexer are invalidated. A changed id is
+ * not cached again until an onCommit that covers the change, since a lookup before then may still see the previous
+ * version. A commit covers the ids changed before its beforeCommit, or all changed ids when beforeCommit was not
+ * called, so an id changed while a commit or refresh is in progress stays uncached until the next one.
+ *
+ * Retrievals by RetrievalQuery are not cached and always go to the underlying service.
+ *
+ * @author bbende
+ */
+public class CachingRetrievalService<E extends Entity> implements RetrievalService<E>, IndexListener {
+
+    private final RetrievalService<E> retrievalService;
+    private final BoundedCache<String,CachedEntity<E>> cache;
+    private final boolean cacheMisses;
+    private final long refreshAfterNanos;
+    private final Executor refreshExecutor;
+
+    private final AtomicLong changeSequence = new AtomicLong();
+    private final ConcurrentMap<String,Long> pendingIds = new ConcurrentHashMap<>();
+    private final Set<String> refreshingIds = ConcurrentHashMap.newKeySet();
+
+    // the change sequence when the current commit or refresh began, or -1 when beforeCommit was not called
+    private volatile long committingSequence = -1;
+
+    private CachingRetrievalService(final Builder<E> builder) {
+        this.retrievalService = builder.retrievalService;
+        this.cacheMisses = builder.cacheMisses;
+        this.refreshAfterNanos = builder.refreshAfterNanos;
+        this.refreshExecutor = builder.refreshExecutor;
+
+        final BoundedCache.Builder<String,CachedEntity<E>> cacheBuilder =
+                new BoundedCache.Builder<String,CachedEntity<E>>().maxSize(builder.maxSize);
+        if (builder.ttlNanos > 0) {
+            cacheBuilder.ttl(builder.ttlNanos, TimeUnit.NANOSECONDS);
+        }
+        this.cache = cacheBuilder.build();
+    }
+
+    @Override
+    public E find(final RetrievalQuery query) throws QueryException {
+        return retrievalService.find(query);
+    }
+
+    @Override
+    public E findById(final String id) throws QueryException {
+        if (id == null) {
+            return null;
+        }
+
+        final CachedEntity<E> cached = cache.get(id);
+        if (cached != null) {
+            if (isStale(cached)) {
+                refresh(id);
+            }
+            return cached.entity;
+        }
+
+        final long generation = cache.getGeneration();
+        final E entity = retrievalService.findById(id);
+        put(id, entity, generation);
+        return entity;
+    }
+
+    @Override
+    public Map<String,E> findAll(final Collection<String> ids) throws QueryException {
+        final Map<String,E> results = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return results;
+        }
+
+        final Map<String,CachedEntity<E>> cachedEntities = new HashMap<>();
+        final List<String> missingIds = new ArrayList<>();
+        for (String id : ids) {
+            final CachedEntity<E> cached = cache.get(id);
+            if (cached == null) {
+                missingIds.add(id);
+            } else {
+                cachedEntities.put(id, cached);
+                if (isStale(cached)) {
+                    refresh(id);
+                }
+            }
+        }
+
+        Map<String,E> loaded = Collections.emptyMap();
+        if (!missingIds.isEmpty()) {
+            final long generation = cache.getGeneration();
+            loaded = retrievalService.findAll(missingIds);
+            for (String id : missingIds) {
+                put(id, loaded.get(id), generation);
+            }
+        }
+
+        // Return the results in the order the ids were requested
+        for (String id : ids) {
+            final CachedEntity<E> cached = cachedEntities.get(id);
+            final E entity = (cached == null ? loaded.get(id) : cached.entity);
+            if (entity != null) {
+                results.put(id, entity);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Removes the cached entity with the given id.
+     *
+     * @param id the id of the entity
+     */
+    public void invalidate(final String id) {
+        cache.invalidate(id);
+    }
+
+    @Override
+    public void onEntityChanged(final Field idField, final String id) {
+        if (id == null) {
+            return;
+        }
+        pendingIds.put(id, changeSequence.incrementAndGet());
+        cache.invalidate(id);
+    }
+
+    @Override
+    public void beforeCommit() {
+        committingSequence = changeSequence.get();
+    }
+
+    @Override
+    public void onCommit() {
+        final long committed = committingSequence;
+        final long covered = (committed < 0 ? changeSequence.get() : committed);
+        committingSequence = -1;
+
+        for (Map.Entry<String,Long> pending : pendingIds.entrySet()) {
+            final String id = pending.getKey();
+            final Long sequence = pending.getValue();
+            if (sequence <= covered && pendingIds.remove(id, sequence)) {
+                cache.invalidate(id);
+            }
+        }
+    }
+
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    private boolean isStale(final CachedEntity<E> cached) {
+        return refreshAfterNanos > 0 && System.nanoTime() - cached.loadedNanos > refreshAfterNanos;
+    }
+
+    private void put(final String id, final E entity, final long generation) {
+        if (pendingIds.containsKey(id) || (entity == null && !cacheMisses)) {
+            return;
+        }
+        cache.put(id, new CachedEntity<>(entity), generation);
+    }
+
+    private void refresh(final String id) {
+        if (!refreshingIds.add(id)) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    final long generation = cache.getGeneration();
+                    final E entity = retrievalService.findById(id);
+                    put(id, entity, generation);
+                } catch (QueryException e) {
+                    // keep serving the stale entity until it expires
+                } finally {
+                    refreshingIds.remove(id);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingIds.remove(id);
+        }
+    }
+
+    /**
+     * A cached entity, or a cached miss when the entity is null.
+     */
+    private static class CachedEntity<E> {
+
+        private final E entity;
+        private final long loadedNanos;
+
+        CachedEntity(final E entity) {
+            this.entity = entity;
+            this.loadedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Builder for CachingRetrievalService.
+     */
+    public static class Builder<E extends Entity> {
+
+        private RetrievalService<E> retrievalService;
+        private int maxSize = 1000;
+        private long ttlNanos;
+        private long refreshAfterNanos;
+        private boolean cacheMisses = true;
+        private Executor refreshExecutor = ForkJoinPool.commonPool();
+
+        public Builder<E> retrievalService(RetrievalService<E> retrievalService) {
+            this.retrievalService = retrievalService;
+            return this;
+        }
+
+        public Builder<E> maxSize(int maxSize) {
+            Validate.isTrue(maxSize > 0, "Max size must be greater than 0");
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param ttl how long an entity is cached before it must be loaded again, or 0 to cache until evicted
+         * @param unit the unit of ttl
+         */
+        public Builder<E> ttl(long ttl, TimeUnit unit) {
+            Validate.isTrue(ttl >= 0, "TTL must be greater than or equal to 0");
+            Validate.notNull(unit);
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * @param refreshAfter how long an entity is cached before it is reloaded in the background, or 0 to disable
+         * @param unit the unit of refreshAfter
+         */
+        public Builder<E> refreshAfter(long refreshAfter, TimeUnit unit) {
+            Validate.isTrue(refreshAfter >= 0, "Refresh after must be greater than or equal to 0");
+            Validate.notNull(unit);
+            this.refreshAfterNanos = unit.toNanos(refreshAfter);
+            return this;
+        }
+
+        public Builder<E> cacheMisses(boolean cacheMisses) {
+            this.cacheMisses = cacheMisses;
+            return this;
+        }
+
+        public Builder<E> refreshExecutor(Executor refreshExecutor) {
+            this.refreshExecutor = refreshExecutor;
+            return this;
+        }
+
+        public CachingRetrievalService<E> build() {
+            Validate.notNull(retrievalService);
+            Validate.notNull(refreshExecutor);
+            return new CachingRetrievalService<>(this);
+        }
+    }
+
+}
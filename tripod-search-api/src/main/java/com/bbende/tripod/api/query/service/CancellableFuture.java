@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A CompletableFuture that runs a blocking task, and signals the task through its QueryCancellation when cancelled.
+ *
+ * A task that is cancelled before it starts never runs. A running task is never interrupted, whether or not
+ * mayInterruptIfRunning is set, since an interrupt during index IO can close files shared with other searches. The
+ * task stops at the next point where its service checks QueryCancellation, or runs to completion if it doesn't.
+ *
+ * @author bbende
+ */
+final class CancellableFuture<T> extends CompletableFuture<T> implements Runnable {
+
+    private final Task<T> task;
+    private final QueryCancellation cancellation = new QueryCancellation();
+
+    private CancellableFuture(final Task<T> task) {
+        this.task = task;
+    }
+
+    /**
+     * @param task the task to run
+     * @param executor the executor to run the task on
+     * @return a future completed with the result of the task, or exceptionally if the task fails or the
+     *          executor rejects it
+     */
+    static <T> CompletableFuture<T> submit(final Task<T> task, final Executor executor) {
+        final CancellableFuture<T> future = new CancellableFuture<>(task);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void run() {
+        if (isDone()) {
+            return;
+        }
+
+        // restore the previous signal in case the executor runs tasks on the calling thread
+        final QueryCancellation previous = QueryCancellation.current();
+        QueryCancellation.set(cancellation);
+        try {
+            complete(task.call());
+        } catch (Throwable t) {
+            completeExceptionally(t);
+        } finally {
+            QueryCancellation.set(previous);
+        }
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        final boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            cancellation.cancel();
+        }
+        return cancelled;
+    }
+
+    /**
+     * A blocking task against a query or retrieval service.
+     */
+    interface Task<T> {
+        T call() throws QueryException;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.query.ImmutableQuery;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import org.apache.commons.lang.Validate;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * An Iterator over all results of a Query that pages through them with a cursorMark.
+ *
+ * While the results of one page are consumed, the next page is fetched on the prefetch executor, so at most two
+ * pages are held in memory regardless of the total number of results. Paging starts from the cursorMark of the
+ * query, or from the first result if it has none, and uses the rows of the query as the page size.
+ *
+ * The query must sort on the unique key field for cursor paging to be stable. Facet fields and range facets are
+ * ignored since only the results are returned. Errors performing a query are thrown as UncheckedQueryException.
+ *
+ * @author bbende
+ */
+public class CursorIterator<QR extends QueryResult> implements Iterator<QR>, AutoCloseable {
+
+    private final QueryService<QR> queryService;
+    private final ImmutableQuery query;
+    private final Executor prefetchExecutor;
+
+    private Iterator<QR> current = Collections.emptyIterator();
+    private CompletableFuture<QueryResults<QR>> prefetched;
+    private String cursorMark;
+    private boolean exhausted;
+    private boolean closed;
+
+    public CursorIterator(final QueryService<QR> queryService, final Query query, final Executor prefetchExecutor) {
+        this.queryService = queryService;
+        this.prefetchExecutor = prefetchExecutor;
+        Validate.notNull(this.queryService);
+        Validate.notNull(query);
+        Validate.notNull(this.prefetchExecutor);
+
+        this.query = ImmutableQuery.copyOf(query);
+        this.cursorMark = query.getCursorMark() == null ? Query.CURSOR_MARK_START : query.getCursorMark();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (exhausted || closed) {
+                return false;
+            }
+            nextPage();
+        }
+        return true;
+    }
+
+    @Override
+    public QR next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Stops paging and discards any prefetched page.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        current = Collections.emptyIterator();
+        if (prefetched != null) {
+            prefetched.cancel(false);
+            prefetched = null;
+        }
+    }
+
+    private void nextPage() {
+        final QueryResults<QR> page;
+        if (prefetched == null) {
+            page = search(cursorMark);
+        } else {
+            page = join(prefetched);
+            prefetched = null;
+        }
+
+        // a short page or an unchanged cursorMark means there are no more results
+        final String nextCursorMark = page.getCursorMark();
+        if (page.getResults().size() < query.getRows()
+                || nextCursorMark == null || nextCursorMark.equals(cursorMark)) {
+            exhausted = true;
+        } else {
+            cursorMark = nextCursorMark;
+            prefetched = CompletableFuture.supplyAsync(() -> search(nextCursorMark), prefetchExecutor);
+        }
+
+        current = page.getResults().iterator();
+    }
+
+    private QueryResults<QR> search(final String pageCursorMark) {
+        final ImmutableQuery pageQuery = new ImmutableQuery.Builder(query)
+                .cursorMark(pageCursorMark)
+                .clearFacetFields()
+                .clearRangeFacets()
+                .build();
+
+        try {
+            return queryService.search(pageQuery);
+        } catch (QueryException e) {
+            throw new UncheckedQueryException(e);
+        }
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
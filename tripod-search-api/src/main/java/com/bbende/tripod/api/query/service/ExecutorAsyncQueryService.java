@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import org.apache.commons.lang.Validate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * An AsyncQueryService that performs the queries of a blocking QueryService on an Executor.
+ *
+ * Since each query blocks a thread of the executor while it runs, the executor should not be the common
+ * ForkJoinPool. AsyncExecutors.newVirtualThreadExecutor() provides an executor that uses a virtual thread per
+ * query when available.
+ *
+ * Cancelling a returned future signals the query through QueryCancellation rather than interrupting its thread.
+ * LuceneService stops collecting at the next check, and SolrService stops before sending the request, but can't
+ * abort a request that was already sent.
+ *
+ * @author bbende
+ */
+public class ExecutorAsyncQueryService<QR extends QueryResult> implements AsyncQueryService<QR> {
+
+    private final QueryService<QR> queryService;
+    private final Executor executor;
+
+    /**
+     * @param queryService the service to perform queries with
+     * @param executor the executor to perform queries on
+     */
+    public ExecutorAsyncQueryService(final QueryService<QR> queryService, final Executor executor) {
+        this.queryService = queryService;
+        this.executor = executor;
+        Validate.notNull(this.queryService);
+        Validate.notNull(this.executor);
+    }
+
+    @Override
+    public CompletableFuture<QueryResults<QR>> searchAsync(final Query query) {
+        return CancellableFuture.submit(() -> queryService.search(query), executor);
+    }
+
+}
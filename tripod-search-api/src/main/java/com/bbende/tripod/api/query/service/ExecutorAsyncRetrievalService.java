@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.entity.Entity;
+import com.bbende.tripod.api.query.RetrievalQuery;
+import org.apache.commons.lang.Validate;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * An AsyncRetrievalService that performs the retrievals of a blocking RetrievalService on an Executor.
+ *
+ * @author bbende
+ * @see ExecutorAsyncQueryService
+ */
+public class ExecutorAsyncRetrievalService<E extends Entity> implements AsyncRetrievalService<E> {
+
+    private final RetrievalService<E> retrievalService;
+    private final Executor executor;
+
+    /**
+     * @param retrievalService the service to perform retrievals with
+     * @param executor the executor to perform retrievals on
+     */
+    public ExecutorAsyncRetrievalService(final RetrievalService<E> retrievalService, final Executor executor) {
+        this.retrievalService = retrievalService;
+        this.executor = executor;
+        Validate.notNull(this.retrievalService);
+        Validate.notNull(this.executor);
+    }
+
+    @Override
+    public CompletableFuture<E> findAsync(final RetrievalQuery query) {
+        return CancellableFuture.submit(() -> retrievalService.find(query), executor);
+    }
+
+    @Override
+    public CompletableFuture<E> findByIdAsync(final String id) {
+        return CancellableFuture.submit(() -> retrievalService.findById(id), executor);
+    }
+
+    @Override
+    public CompletableFuture<Map<String,E>> findAllAsync(final Collection<String> ids) {
+        return CancellableFuture.submit(() -> retrievalService.findAll(ids), executor);
+    }
+
+}
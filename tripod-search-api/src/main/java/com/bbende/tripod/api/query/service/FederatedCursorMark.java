@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The composite cursorMark of a FederatedQueryService, tracking the position in each child service.
+ *
+ * The position in a child is the cursorMark of the last page requested from it plus the number of results of that
+ * page that were already returned, since a child only returns a cursorMark for the end of a full page.
+ *
+ * @author bbende
+ */
+final class FederatedCursorMark {
+
+    private static final String SEPARATOR = ",";
+    private static final String SKIP_SEPARATOR = ".";
+    private static final String EXHAUSTED = "-";
+
+    private FederatedCursorMark() {
+
+    }
+
+    /**
+     * @param cursorMark the composite cursorMark
+     * @param numChildren the number of child services
+     * @return the position in each child service
+     * @throws IllegalArgumentException if the cursorMark is not a valid composite cursorMark for the children
+     */
+    static List<Position> decode(final String cursorMark, final int numChildren) {
+        if (Query.CURSOR_MARK_START.equals(cursorMark)) {
+            return Collections.nCopies(numChildren, new Position(Query.CURSOR_MARK_START, 0));
+        }
+
+        final String[] entries = cursorMark.split(SEPARATOR, -1);
+        if (entries.length != numChildren) {
+            throw new IllegalArgumentException("CursorMark has " + entries.length
+                    + " positions but there are " + numChildren + " services");
+        }
+
+        final List<Position> positions = new ArrayList<>(numChildren);
+        for (String entry : entries) {
+            if (EXHAUSTED.equals(entry)) {
+                positions.add(Position.EXHAUSTED);
+                continue;
+            }
+
+            final int separator = entry.indexOf(SKIP_SEPARATOR);
+            if (separator < 1) {
+                throw new IllegalArgumentException("Invalid cursorMark position: " + entry);
+            }
+
+            final int skip = Integer.parseInt(entry.substring(0, separator));
+            final String childCursorMark = new String(
+                    Base64.getUrlDecoder().decode(entry.substring(separator + 1)), StandardCharsets.UTF_8);
+            positions.add(new Position(childCursorMark, skip));
+        }
+        return positions;
+    }
+
+    /**
+     * @param positions the position in each child service
+     * @return the composite cursorMark
+     */
+    static String encode(final List<Position> positions) {
+        final StringBuilder builder = new StringBuilder();
+        for (Position position : positions) {
+            if (builder.length() > 0) {
+                builder.append(SEPARATOR);
+            }
+
+            if (position.isExhausted()) {
+                builder.append(EXHAUSTED);
+            } else {
+                builder.append(position.getSkip())
+                        .append(SKIP_SEPARATOR)
+                        .append(Base64.getUrlEncoder().withoutPadding().encodeToString(
+                                position.getCursorMark().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The position in one child service.
+     */
+    static final class Position {
+
+        static final Position EXHAUSTED = new Position(null, 0);
+
+        private final String cursorMark;
+        private final int skip;
+
+        Position(final String cursorMark, final int skip) {
+            this.cursorMark = cursorMark;
+            this.skip = skip;
+        }
+
+        /**
+         * @return the cursorMark of the page to request from the child
+         */
+        String getCursorMark() {
+            return cursorMark;
+        }
+
+        /**
+         * @return the number of results at the start of the page that were already returned
+         */
+        int getSkip() {
+            return skip;
+        }
+
+        /**
+         * @return true if all results of the child were returned
+         */
+        boolean isExhausted() {
+            return cursorMark == null;
+        }
+    }
+
+}
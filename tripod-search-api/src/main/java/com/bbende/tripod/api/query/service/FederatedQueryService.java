@@ -0,0 +1,463 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.query.ImmutableQuery;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.ResultMode;
+import com.bbende.tripod.api.query.Sort;
+import com.bbende.tripod.api.query.SortOrder;
+import com.bbende.tripod.api.query.result.FacetCount;
+import com.bbende.tripod.api.query.result.FacetResult;
+import com.bbende.tripod.api.query.result.QueryResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A QueryService that performs each query against several QueryServices in parallel and merges their results.
+ *
+ * Results are merged in the order of the query's sorts, using the SortValueProvider to get the sort values of each
+ * result. Without sorts, results are interleaved by their rank in each service. Total results and facet counts are
+ * summed across services.
+ *
+ * Each service only returns the top values of a facet field, so a value missing from a service that returned a full
+ * list may still have been counted by it, up to the smallest count that service returned. That amount is added to
+ * the error bound of the merged count, which makes the merged count a lower bound of the exact count. When the facet
+ * limit of the services is set, a service that returned fewer values than the limit returned all of them, and the
+ * merged values are trimmed to the limit. Otherwise every service's list is assumed to be truncated, and no values
+ * are trimmed. Range facets are complete in every service, so their counts are exact.
+ *
+ * With an offset, each service is asked for offset + rows results so the requested page of the merged results can be
+ * returned. With a cursorMark, each service is paged through with its own cursorMark, and the returned cursorMark is
+ * a composite of the position in every service, so it can only be passed back to the same FederatedQueryService.
+ * The services must sort on their unique key when paging with a cursorMark.
+ *
+ * A service that doesn't respond within the child timeout is cancelled through QueryCancellation and the results of
+ * the other services are returned as partial results. When paging with a cursorMark, the position in a service that
+ * timed out is unchanged, so its results are returned on a later page, out of sort order with the results already
+ * returned.
+ *
+ * @author bbende
+ */
+public class FederatedQueryService<QR extends QueryResult> implements QueryService<QR> {
+
+    private final List<QueryService<QR>> queryServices;
+    private final SortValueProvider<QR> sortValueProvider;
+    private final Executor executor;
+    private final long childTimeoutNanos;
+    private final boolean failOnChildError;
+    private final int facetLimit;
+
+    private FederatedQueryService(final Builder<QR> builder) {
+        this.queryServices = Collections.unmodifiableList(new ArrayList<>(builder.queryServices));
+        this.sortValueProvider = builder.sortValueProvider;
+        this.executor = builder.executor;
+        this.childTimeoutNanos = builder.childTimeoutNanos;
+        this.failOnChildError = builder.failOnChildError;
+        this.facetLimit = builder.facetLimit;
+        Validate.notEmpty(this.queryServices);
+        Validate.notNull(this.sortValueProvider);
+        Validate.notNull(this.executor);
+    }
+
+    @Override
+    public QueryResults<QR> search(final Query query) throws QueryException {
+        final boolean usingCursorMark = query.getCursorMark() != null;
+        final int numChildren = queryServices.size();
+
+        final List<FederatedCursorMark.Position> positions;
+        try {
+            positions = usingCursorMark ? FederatedCursorMark.decode(query.getCursorMark(), numChildren) : null;
+        } catch (IllegalArgumentException e) {
+            throw new QueryException("Invalid cursorMark for federated query: " + e.getMessage(), e);
+        }
+
+        // Fan out to every service that still has results
+        final List<CompletableFuture<QueryResults<QR>>> futures = new ArrayList<>(numChildren);
+        for (int i=0; i < numChildren; i++) {
+            final Query childQuery;
+            if (!usingCursorMark) {
+                childQuery = new ImmutableQuery.Builder(query)
+                        .offset(0)
+                        .rows(query.getOffset() + query.getRows())
+                        .build();
+            } else if (positions.get(i).isExhausted()) {
+                futures.add(null);
+                continue;
+            } else {
+                childQuery = new ImmutableQuery.Builder(query)
+                        .cursorMark(positions.get(i).getCursorMark())
+                        .rows(positions.get(i).getSkip() + query.getRows())
+                        .build();
+            }
+
+            final QueryService<QR> queryService = queryServices.get(i);
+            futures.add(CancellableFuture.submit(() -> queryService.search(childQuery), executor));
+        }
+
+        // Gather the results of each service, within the child timeout
+        final List<QueryResults<QR>> childResults = new ArrayList<>(numChildren);
+        boolean partialResults = false;
+
+        final long deadlineNanos = System.nanoTime() + childTimeoutNanos;
+        for (int i=0; i < numChildren; i++) {
+            final CompletableFuture<QueryResults<QR>> future = futures.get(i);
+            if (future == null) {
+                childResults.add(null);
+                continue;
+            }
+
+            QueryResults<QR> results = null;
+            try {
+                results = childTimeoutNanos > 0
+                        ? future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)
+                        : future.get();
+                partialResults |= results.isPartialResults();
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                partialResults = true;
+            } catch (ExecutionException e) {
+                if (failOnChildError) {
+                    cancelAll(futures);
+                    throw new QueryException("Error performing query against service " + i, e.getCause());
+                }
+                partialResults = true;
+            } catch (InterruptedException e) {
+                cancelAll(futures);
+                Thread.currentThread().interrupt();
+                throw new QueryException("Interrupted while performing federated query", e);
+            }
+            childResults.add(results);
+        }
+
+        // Merge the results of all services in sort order
+        final int[] skipped = new int[numChildren];
+        final int[] consumed = new int[numChildren];
+
+        final PriorityQueue<Head<QR>> heads = new PriorityQueue<>(numChildren, getComparator(query.getSorts()));
+        long totalResults = 0;
+        for (int i=0; i < numChildren; i++) {
+            final QueryResults<QR> results = childResults.get(i);
+            if (results == null) {
+                continue;
+            }
+
+            totalResults += results.getTotalResults();
+            skipped[i] = usingCursorMark ? Math.min(positions.get(i).getSkip(), results.getResults().size()) : 0;
+            if (skipped[i] < results.getResults().size()) {
+                heads.add(new Head<>(i, skipped[i], results.getResults().get(skipped[i])));
+            }
+        }
+
+        final int numResults = usingCursorMark ? query.getRows() : query.getOffset() + query.getRows();
+        final List<QR> merged = new ArrayList<>(numResults);
+        while (merged.size() < numResults && !heads.isEmpty()) {
+            final Head<QR> head = heads.poll();
+            merged.add(head.result);
+            consumed[head.child]++;
+
+            final List<QR> results = childResults.get(head.child).getResults();
+            final int next = head.position + 1;
+            if (next < results.size()) {
+                heads.add(new Head<>(head.child, next, results.get(next)));
+            }
+        }
+
+        final QueryResults.Builder<QR> resultsBuilder = new QueryResults.Builder<QR>()
+                .offset(query.getOffset())
+                .pageSize(query.getRows())
+                .totalResults(totalResults)
+                .partialResults(partialResults)
+                .facetResults(mergeFacetResults(query, childResults));
+
+        if (usingCursorMark) {
+            resultsBuilder.results(merged);
+
+            // count-only and facet-only queries don't move the cursor
+            resultsBuilder.cursorMark(query.getResultMode() == ResultMode.DOCUMENTS
+                    ? getNextCursorMark(positions, childResults, skipped, consumed) : query.getCursorMark());
+        } else {
+            resultsBuilder.results(merged.subList(Math.min(query.getOffset(), merged.size()), merged.size()));
+        }
+
+        return resultsBuilder.build();
+    }
+
+    /**
+     * @return the composite cursorMark after the results that were consumed from each service
+     */
+    private String getNextCursorMark(final List<FederatedCursorMark.Position> positions,
+                                     final List<QueryResults<QR>> childResults,
+                                     final int[] skipped, final int[] consumed) {
+        final List<FederatedCursorMark.Position> nextPositions = new ArrayList<>(positions.size());
+        for (int i=0; i < positions.size(); i++) {
+            final FederatedCursorMark.Position position = positions.get(i);
+            final QueryResults<QR> results = childResults.get(i);
+
+            // the service was exhausted already, or didn't respond and has to be asked for the same page again
+            if (results == null) {
+                nextPositions.add(position);
+                continue;
+            }
+
+            final int returned = results.getResults().size();
+            final int used = skipped[i] + consumed[i];
+            final String nextCursorMark = results.getCursorMark();
+
+            if (used < returned) {
+                nextPositions.add(new FederatedCursorMark.Position(position.getCursorMark(), used));
+            } else if (returned < results.getPageSize() || nextCursorMark == null
+                    || nextCursorMark.equals(position.getCursorMark())) {
+                nextPositions.add(FederatedCursorMark.Position.EXHAUSTED);
+            } else {
+                nextPositions.add(new FederatedCursorMark.Position(nextCursorMark, 0));
+            }
+        }
+        return FederatedCursorMark.encode(nextPositions);
+    }
+
+    private Comparator<Head<QR>> getComparator(final List<Sort> sorts) {
+        Comparator<Head<QR>> comparator = null;
+        if (sorts != null) {
+            for (final Sort sort : sorts) {
+                final Comparator<Head<QR>> sortComparator = (h1, h2) -> compareValues(
+                        sortValueProvider.getSortValue(h1.result, sort.getField()),
+                        sortValueProvider.getSortValue(h2.result, sort.getField()),
+                        sort.getSortOrder());
+                comparator = comparator == null ? sortComparator : comparator.thenComparing(sortComparator);
+            }
+        }
+
+        // ties, and results without sorts, are ordered by rank and then by service
+        final Comparator<Head<QR>> rankComparator = Comparator.<Head<QR>>comparingInt(h -> h.position)
+                .thenComparingInt(h -> h.child);
+        return comparator == null ? rankComparator : comparator.thenComparing(rankComparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(final Comparable<?> value1, final Comparable<?> value2, final SortOrder order) {
+        // nulls sort last regardless of the order
+        if (value1 == null || value2 == null) {
+            return value1 == value2 ? 0 : (value1 == null ? 1 : -1);
+        }
+
+        final int result = ((Comparable<Object>) value1).compareTo(value2);
+        return order == SortOrder.DESC ? -result : result;
+    }
+
+    private List<FacetResult> mergeFacetResults(final Query query, final List<? extends QueryResults<?>> childResults) {
+        // range facets keep the order of their ranges rather than being sorted by count
+        final Set<String> rangeFacetNames = new HashSet<>();
+        if (query.getRangeFacets() != null) {
+            query.getRangeFacets().forEach(rf -> rangeFacetNames.add(rf.getName()));
+        }
+
+        final Map<String,List<FacetResult>> childFacetResults = new LinkedHashMap<>();
+        for (QueryResults<?> results : childResults) {
+            if (results == null) {
+                continue;
+            }
+            for (FacetResult facetResult : results.getFacetResults()) {
+                childFacetResults.computeIfAbsent(facetResult.getField(), f -> new ArrayList<>()).add(facetResult);
+            }
+        }
+
+        final List<FacetResult> facetResults = new ArrayList<>(childFacetResults.size());
+        for (Map.Entry<String,List<FacetResult>> fieldResults : childFacetResults.entrySet()) {
+            final boolean rangeFacet = rangeFacetNames.contains(fieldResults.getKey());
+
+            // the most each service could have counted for a value it didn't return, summed over every service
+            long missingBound = 0;
+            double samplingRate = 1.0;
+
+            final Map<String,FacetCount> counts = new LinkedHashMap<>();
+            final Map<String,Long> returnedBounds = new HashMap<>();
+            for (FacetResult facetResult : fieldResults.getValue()) {
+                final List<FacetCount> facetCounts = facetResult.getFacetCounts();
+                final long childBound = rangeFacet ? 0 : getMissingBound(facetCounts);
+                missingBound += childBound;
+                samplingRate = Math.min(samplingRate, facetResult.getSamplingRate());
+
+                for (FacetCount facetCount : facetCounts) {
+                    counts.merge(facetCount.getValue(), facetCount, FederatedQueryService::sum);
+                    returnedBounds.merge(facetCount.getValue(), childBound, Long::sum);
+                }
+            }
+
+            final List<FacetCount> facetCounts = new ArrayList<>(counts.size());
+            for (FacetCount facetCount : counts.values()) {
+                final long bound = missingBound - returnedBounds.get(facetCount.getValue());
+                facetCounts.add(bound == 0 ? facetCount : new FacetCount(
+                        facetCount.getValue(), facetCount.getCount(), facetCount.getErrorBound() + bound));
+            }
+
+            if (!rangeFacet) {
+                facetCounts.sort(Comparator.comparing(FacetCount::getCount).reversed()
+                        .thenComparing(FacetCount::getValue));
+                if (facetLimit > 0 && facetCounts.size() > facetLimit) {
+                    facetCounts.subList(facetLimit, facetCounts.size()).clear();
+                }
+            }
+            facetResults.add(new FacetResult(fieldResults.getKey(), facetCounts, samplingRate));
+        }
+        return facetResults;
+    }
+
+    /**
+     * @param facetCounts the counts one service returned for a field
+     * @return the most the service could have counted for a value it didn't return, which is 0 when it returned
+     *          fewer values than the facet limit, and otherwise its smallest count
+     */
+    private long getMissingBound(final List<FacetCount> facetCounts) {
+        if (facetCounts.isEmpty() || (facetLimit > 0 && facetCounts.size() < facetLimit)) {
+            return 0;
+        }
+
+        long min = Long.MAX_VALUE;
+        for (FacetCount facetCount : facetCounts) {
+            min = Math.min(min, facetCount.getCount());
+        }
+        return min;
+    }
+
+    /**
+     * The errors of estimates from independent samples add in quadrature.
+     */
+    private static FacetCount sum(final FacetCount count1, final FacetCount count2) {
+        final double errorBound = Math.sqrt((double) count1.getErrorBound() * count1.getErrorBound()
+                + (double) count2.getErrorBound() * count2.getErrorBound());
+        return new FacetCount(count1.getValue(), count1.getCount() + count2.getCount(), (long) Math.ceil(errorBound));
+    }
+
+    private static void cancelAll(final List<? extends CompletableFuture<?>> futures) {
+        for (CompletableFuture<?> future : futures) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The next result of one service during the merge.
+     */
+    private static final class Head<QR> {
+        private final int child;
+        private final int position;
+        private final QR result;
+
+        Head(final int child, final int position, final QR result) {
+            this.child = child;
+            this.position = position;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Builder for FederatedQueryService.
+     *
+     * @param <QR> the type of result
+     */
+    public static class Builder<QR extends QueryResult> {
+        private final List<QueryService<QR>> queryServices = new ArrayList<>();
+        private SortValueProvider<QR> sortValueProvider;
+        private Executor executor;
+        private long childTimeoutNanos = 0;
+        private boolean failOnChildError = true;
+        private int facetLimit = 0;
+
+        /**
+         * @param queryService a service to query, where the order services are added in breaks ties between results
+         * @return this builder
+         */
+        public Builder<QR> queryService(QueryService<QR> queryService) {
+            Validate.notNull(queryService);
+            this.queryServices.add(queryService);
+            return this;
+        }
+
+        public Builder<QR> sortValueProvider(SortValueProvider<QR> sortValueProvider) {
+            Validate.notNull(sortValueProvider);
+            this.sortValueProvider = sortValueProvider;
+            return this;
+        }
+
+        /**
+         * @param executor the executor to query the services on, which needs a thread per service to query them
+         *                 all in parallel
+         * @return this builder
+         */
+        public Builder<QR> executor(Executor executor) {
+            Validate.notNull(executor);
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param childTimeout the time to wait for all services to respond, or 0 to wait indefinitely
+         * @param unit the unit of the timeout
+         * @return this builder
+         */
+        public Builder<QR> childTimeout(long childTimeout, TimeUnit unit) {
+            Validate.isTrue(childTimeout >= 0);
+            Validate.notNull(unit);
+            this.childTimeoutNanos = unit.toNanos(childTimeout);
+            return this;
+        }
+
+        /**
+         * @param failOnChildError true to fail the query when any service fails, false to return the results of
+         *                         the other services as partial results
+         * @return this builder
+         */
+        public Builder<QR> failOnChildError(boolean failOnChildError) {
+            this.failOnChildError = failOnChildError;
+            return this;
+        }
+
+        /**
+         * @param facetLimit the maximum number of values each service returns for a facet field, which the merged
+         *                   values are trimmed to, or 0 if unknown
+         * @return this builder
+         */
+        public Builder<QR> facetLimit(int facetLimit) {
+            Validate.isTrue(facetLimit >= 0);
+            this.facetLimit = facetLimit;
+            return this;
+        }
+
+        public FederatedQueryService<QR> build() {
+            return new FederatedQueryService<>(this);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.limit.ConcurrencyLimiter;
+import com.bbende.tripod.api.limit.LimiterStats;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import org.apache.commons.lang.Validate;
+
+/**
+ * A QueryService that limits the number of concurrent searches against another QueryService.
+ *
+ * Searches beyond the limit of the ConcurrencyLimiter wait in its queue, and a QueryRejectedException is thrown
+ * once the queue is full or the queue timeout elapses. Partial results are treated as a sign of overload and
+ * reduce the limit.
+ *
+ * Retrievals should use a LimitingRetrievalService with a separate ConcurrencyLimiter, so that cheap lookups by
+ * id are not queued behind expensive searches.
+ *
+ * @author bbende
+ */
+public class LimitingQueryService<QR extends QueryResult> implements QueryService<QR> {
+
+    private final QueryService<QR> queryService;
+    private final ConcurrencyLimiter limiter;
+
+    /**
+     * @param queryService the service to limit
+     * @param limiter the limiter to use
+     */
+    public LimitingQueryService(final QueryService<QR> queryService, final ConcurrencyLimiter limiter) {
+        this.queryService = queryService;
+        this.limiter = limiter;
+        Validate.notNull(this.queryService);
+        Validate.notNull(this.limiter);
+    }
+
+    @Override
+    public QueryResults<QR> search(final Query query) throws QueryException {
+        acquire();
+
+        final long startNanos = System.nanoTime();
+        boolean completed = false;
+        try {
+            final QueryResults<QR> results = queryService.search(query);
+            completed = true;
+
+            if (results.isPartialResults()) {
+                limiter.releaseDropped();
+            } else {
+                limiter.release(System.nanoTime() - startNanos);
+            }
+            return results;
+        } finally {
+            if (!completed) {
+                limiter.releaseIgnored();
+            }
+        }
+    }
+
+    private void acquire() throws QueryException {
+        final boolean acquired;
+        try {
+            acquired = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryException("Interrupted while waiting to perform query", e);
+        }
+
+        if (!acquired) {
+            throw new QueryRejectedException("Query rejected", limiter.getStats());
+        }
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    public LimiterStats getStats() {
+        return limiter.getStats();
+    }
+
+}
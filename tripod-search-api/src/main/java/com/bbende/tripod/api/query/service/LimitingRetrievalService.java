@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.entity.Entity;
+import com.bbende.tripod.api.limit.ConcurrencyLimiter;
+import com.bbende.tripod.api.limit.LimiterStats;
+import com.bbende.tripod.api.query.RetrievalQuery;
+import org.apache.commons.lang.Validate;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A RetrievalService that limits the number of concurrent retrievals against another RetrievalService.
+ *
+ * Retrievals beyond the limit of the ConcurrencyLimiter wait in its queue, and a QueryRejectedException is thrown
+ * once the queue is full or the queue timeout elapses.
+ *
+ * @author bbende
+ */
+public class LimitingRetrievalService<E extends Entity> implements RetrievalService<E> {
+
+    private final RetrievalService<E> retrievalService;
+    private final ConcurrencyLimiter limiter;
+
+    /**
+     * @param retrievalService the service to limit
+     * @param limiter the limiter to use, which should not be shared with a LimitingQueryService
+     */
+    public LimitingRetrievalService(final RetrievalService<E> retrievalService, final ConcurrencyLimiter limiter) {
+        this.retrievalService = retrievalService;
+        this.limiter = limiter;
+        Validate.notNull(this.retrievalService);
+        Validate.notNull(this.limiter);
+    }
+
+    @Override
+    public E find(final RetrievalQuery query) throws QueryException {
+        return limit(() -> retrievalService.find(query));
+    }
+
+    @Override
+    public E findById(final String id) throws QueryException {
+        return limit(() -> retrievalService.findById(id));
+    }
+
+    @Override
+    public Map<String,E> findAll(final Collection<String> ids) throws QueryException {
+        return limit(() -> retrievalService.findAll(ids));
+    }
+
+    private <T> T limit(final Retrieval<T> retrieval) throws QueryException {
+        final boolean acquired;
+        try {
+            acquired = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryException("Interrupted while waiting to perform retrieval", e);
+        }
+
+        if (!acquired) {
+            throw new QueryRejectedException("Retrieval rejected", limiter.getStats());
+        }
+
+        final long startNanos = System.nanoTime();
+        boolean completed = false;
+        try {
+            final T result = retrieval.retrieve();
+            completed = true;
+            limiter.release(System.nanoTime() - startNanos);
+            return result;
+        } finally {
+            if (!completed) {
+                limiter.releaseIgnored();
+            }
+        }
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    public LimiterStats getStats() {
+        return limiter.getStats();
+    }
+
+    /**
+     * A retrieval against the underlying service.
+     */
+    private interface Retrieval<T> {
+        T retrieve() throws QueryException;
+    }
+
+}
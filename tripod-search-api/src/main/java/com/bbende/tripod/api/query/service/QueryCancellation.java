@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+/**
+ * The cancellation signal of the query or retrieval running on the current thread.
+ *
+ * The async services set a signal on the thread running each task, and cancelling the task's future sets the signal
+ * rather than interrupting the thread. Interrupting a thread that is reading an index through Lucene's NIOFSDirectory
+ * closes the FileChannel that every search of the index shares, so services check the signal where they can stop
+ * safely instead. LuceneService checks it while collecting, and SolrService checks it before sending the request.
+ *
+ * @author bbende
+ */
+public final class QueryCancellation {
+
+    private static final ThreadLocal<QueryCancellation> CURRENT = new ThreadLocal<>();
+
+    private volatile boolean cancelled;
+
+    QueryCancellation() {
+
+    }
+
+    /**
+     * @return the signal of the task running on the current thread, or null if the thread is not running a task of
+     *          an async service
+     */
+    public static QueryCancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return true if the task running on the current thread was cancelled
+     */
+    public static boolean isCurrentCancelled() {
+        final QueryCancellation cancellation = CURRENT.get();
+        return cancellation != null && cancellation.isCancelled();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    static void set(final QueryCancellation cancellation) {
+        if (cancellation == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(cancellation);
+        }
+    }
+
+}
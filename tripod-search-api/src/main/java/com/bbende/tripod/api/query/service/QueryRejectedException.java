@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.limit.LimiterStats;
+
+/**
+ * Thrown when a query is rejected without being performed because the service is saturated.
+ *
+ * Callers can treat this differently from other failures, such as by retrying later against another replica.
+ *
+ * @author bbende
+ */
+public class QueryRejectedException extends QueryException {
+
+    private final LimiterStats limiterStats;
+
+    public QueryRejectedException(final String message, final LimiterStats limiterStats) {
+        super(message + ", " + limiterStats);
+        this.limiterStats = limiterStats;
+    }
+
+    /**
+     * @return the statistics of the limiter at the time of the rejection
+     */
+    public LimiterStats getLimiterStats() {
+        return limiterStats;
+    }
+
+}
@@ -17,9 +17,18 @@
 package com.bbende.tripod.api.query.service;
 
 import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.BatchResult;
 import com.bbende.tripod.api.query.result.QueryResult;
 import com.bbende.tripod.api.query.result.QueryResults;
 
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * A service for performing queries.
  *
@@ -36,4 +45,46 @@ public interface QueryService<QR extends QueryResult> {
      */
     QueryResults<QR> search(final Query query) throws QueryException;
 
+    /**
+     * Performs the given queries concurrently on the given executor.
+     *
+     * A failure of one query is returned in its BatchResult and does not fail the others.
+     *
+     * @param queries the queries
+     * @param executor the executor to perform the queries on, whose size bounds how many run at once
+     * @return the outcome of each query, in the order of the queries
+     * @see BatchSearch
+     */
+    default List<BatchResult<QR>> searchAll(final List<Query> queries, final Executor executor) {
+        return BatchSearch.searchAll(queries, executor, this);
+    }
+
+    /**
+     * Lazily streams all results of the given query, paging through them with a cursorMark and prefetching the
+     * next page on the common ForkJoinPool.
+     *
+     * @param query the query, which must sort on the unique key field
+     * @return a Stream of all results, which should be closed if not fully consumed
+     * @see CursorIterator
+     */
+    default Stream<QR> stream(final Query query) {
+        return stream(query, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lazily streams all results of the given query, paging through them with a cursorMark and prefetching the
+     * next page on the given executor.
+     *
+     * @param query the query, which must sort on the unique key field
+     * @param prefetchExecutor the executor to fetch the next page on
+     * @return a Stream of all results, which should be closed if not fully consumed
+     * @see CursorIterator
+     */
+    default Stream<QR> stream(final Query query, final Executor prefetchExecutor) {
+        final CursorIterator<QR> iterator = new CursorIterator<>(this, query, prefetchExecutor);
+        final Spliterator<QR> spliterator = Spliterators.spliteratorUnknownSize(
+                iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
+
 }
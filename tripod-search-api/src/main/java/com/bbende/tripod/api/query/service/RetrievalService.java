@@ -16,11 +16,16 @@
  */
 package com.bbende.tripod.api.query.service;
 
+import com.bbende.tripod.api.Field;
 import com.bbende.tripod.api.entity.Entity;
 import com.bbende.tripod.api.query.RetrievalQuery;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
- * A service used to retrieve a single entity.
+ * A service used to retrieve entities.
  *
  * @author bbende
  */
@@ -35,4 +40,48 @@ public interface RetrievalService<E extends Entity> {
      */
     E find(final RetrievalQuery query) throws QueryException;
 
+    /**
+     * Retrieves the entity with the given id.
+     *
+     * The default implementation performs a RetrievalQuery for the id as a phrase on the standard id field,
+     * implementations that can look up an id directly, or that use a different id field, should override it.
+     *
+     * @param id the id of the entity
+     * @return the entity with the given id, or null if none exists
+     * @throws QueryException if an error occurs performing the retrieval
+     */
+    default E findById(final String id) throws QueryException {
+        if (id == null) {
+            return null;
+        }
+
+        final String phrase = id.replace("\\", "\\\\").replace("\"", "\\\"");
+        return find(new RetrievalQuery(Field.ID.getName() + ":\"" + phrase + "\""));
+    }
+
+    /**
+     * Retrieves the entities with the given ids.
+     *
+     * The default implementation calls findById once per id, implementations that can retrieve many ids in a single
+     * operation should override it.
+     *
+     * @param ids the ids of the entities to retrieve
+     * @return a map from id to entity containing only the ids that were found, in the iteration order of the given ids
+     * @throws QueryException if an error occurs performing the retrieval
+     */
+    default Map<String,E> findAll(final Collection<String> ids) throws QueryException {
+        final Map<String,E> results = new LinkedHashMap<>();
+        if (ids == null) {
+            return results;
+        }
+
+        for (String id : ids) {
+            final E entity = findById(id);
+            if (entity != null) {
+                results.put(id, entity);
+            }
+        }
+        return results;
+    }
+
 }
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import com.bbende.tripod.api.Field;
+import com.bbende.tripod.api.query.result.QueryResult;
+
+/**
+ * Provides the value a QueryResult was sorted on, so results from several services can be merged in sort order.
+ *
+ * @author bbende
+ */
+public interface SortValueProvider<QR extends QueryResult> {
+
+    /**
+     * @param result the result
+     * @param field the sort field
+     * @return the value of the field for the result, or null if it has none, which sorts after all other values
+     */
+    Comparable<?> getSortValue(QR result, Field field);
+
+}
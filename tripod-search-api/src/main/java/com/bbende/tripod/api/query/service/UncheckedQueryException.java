@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.api.query.service;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Wraps a QueryException where a checked exception can't be thrown, such as from an Iterator or Stream.
+ *
+ * @author bbende
+ */
+public class UncheckedQueryException extends RuntimeException {
+
+    public UncheckedQueryException(final QueryException cause) {
+        super(cause);
+        Validate.notNull(cause);
+    }
+
+    public UncheckedQueryException(final String message, final QueryException cause) {
+        super(message, cause);
+        Validate.notNull(cause);
+    }
+
+    @Override
+    public synchronized QueryException getCause() {
+        return (QueryException) super.getCause();
+    }
+
+}
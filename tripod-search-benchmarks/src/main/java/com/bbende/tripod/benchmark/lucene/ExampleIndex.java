@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.benchmark.lucene;
+
+import com.bbende.tripod.api.index.IndexException;
+import com.bbende.tripod.lucene.example.Example;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.index.ExampleIndexer;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * An in-memory index of Example entities shared by the Lucene benchmarks.
+ *
+ * @author bbende
+ */
+public class ExampleIndex implements Closeable {
+
+    static final String[] COLORS = {"BLUE", "RED", "GREEN", "YELLOW", "ORANGE"};
+
+    private final Analyzer analyzer;
+    private final Directory directory;
+    private final FacetsConfig facetsConfig;
+    private final SearcherManager searcherManager;
+
+    /**
+     * Creates an index containing the given number of Examples with ids 0 to numDocs - 1.
+     *
+     * @param numDocs the number of documents to index
+     * @param docsPerCommit the number of documents to add between commits, controls the number of segments
+     * @throws IOException if an error occurs creating the index
+     * @throws IndexException if an error occurs indexing the documents
+     */
+    public ExampleIndex(final int numDocs, final int docsPerCommit) throws IOException, IndexException {
+        this.analyzer = new StandardAnalyzer();
+        this.directory = new RAMDirectory();
+
+        this.facetsConfig = new FacetsConfig();
+        this.facetsConfig.setIndexFieldName(ExampleField.COLOR.getName(), ExampleField.COLOR.getName());
+
+        final IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            final ExampleIndexer indexer = new ExampleIndexer(writer, facetsConfig);
+            for (int i = 0; i < numDocs; i++) {
+                final Example example = new Example(String.valueOf(i));
+                example.setTitle("Title " + i);
+                example.setBody("Body " + i + " Lucene is cool");
+                example.setColor(COLORS[i % COLORS.length]);
+                example.setCreateDate(new Date(i * 1000L));
+                indexer.index(example);
+
+                if ((i + 1) % docsPerCommit == 0) {
+                    indexer.commit();
+                }
+            }
+            indexer.commit();
+        }
+
+        this.searcherManager = new SearcherManager(directory, null);
+    }
+
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    public Directory getDirectory() {
+        return directory;
+    }
+
+    public FacetsConfig getFacetsConfig() {
+        return facetsConfig;
+    }
+
+    public SearcherManager getSearcherManager() {
+        return searcherManager;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOUtils.close(searcherManager, directory);
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.benchmark.lucene;
+
+import com.bbende.tripod.api.index.IndexException;
+import com.bbende.tripod.api.query.RetrievalQuery;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.Example;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.query.ExampleRetrievalService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares retrieving a batch of entities with findAll against issuing one find per id.
+ *
+ * Run with: java -jar tripod-search-benchmarks/target/benchmarks.jar RetrievalBenchmark
+ *
+ * @author bbende
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RetrievalBenchmark {
+
+    @Param({"100000"})
+    private int numDocs;
+
+    @Param({"50"})
+    private int batchSize;
+
+    private ExampleIndex index;
+    private ExampleRetrievalService retrievalService;
+    private List<String> ids;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, IndexException {
+        index = new ExampleIndex(numDocs, 10000);
+        retrievalService = new ExampleRetrievalService(
+                index.getSearcherManager(), ExampleField.BODY.getName(), index.getAnalyzer());
+
+        final Random random = new Random(42);
+        ids = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ids.add(String.valueOf(random.nextInt(numDocs)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public Map<String,Example> findAll() throws QueryException {
+        return retrievalService.findAll(ids);
+    }
+
+    @Benchmark
+    public Map<String,Example> findLoop() throws QueryException {
+        final Map<String,Example> results = new HashMap<>();
+        for (String id : ids) {
+            final Example example = retrievalService.find(new RetrievalQuery(ExampleField.ID.getName() + ":" + id));
+            if (example != null) {
+                results.put(id, example);
+            }
+        }
+        return results;
+    }
+
+}
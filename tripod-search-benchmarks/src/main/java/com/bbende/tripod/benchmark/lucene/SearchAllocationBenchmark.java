@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.benchmark.lucene;
+
+import com.bbende.tripod.api.index.IndexException;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.ResultMode;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import com.bbende.tripod.lucene.query.service.FacetStateCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bytes allocated per search by LuceneService.performSearch for count, facet and document queries,
+ * once the searcher, facet states and per-thread structures are warm.
+ *
+ * The budget check runs in the verify phase of the benchmarks profile and fails the build if any benchmark allocates
+ * more than its budget (skip it with -Dexec.skip):
+ *     mvn -Pbenchmarks -DskipTests verify
+ *
+ * Or run it directly:
+ *     java -cp tripod-search-benchmarks/target/benchmarks.jar com.bbende.tripod.benchmark.lucene.SearchAllocationBenchmark
+ *
+ * Or without it: java -jar tripod-search-benchmarks/target/benchmarks.jar SearchAllocationBenchmark -prof gc
+ *
+ * Baseline gc.alloc.rate.norm on JDK 17.0.9 with JMH 1.19 and 100000 docs, mean of two runs:
+ *     count       14214 bytes/op
+ *     documents   26302 bytes/op
+ *     facets      26623 bytes/op
+ *
+ * Each budget is its baseline plus 10%, rounded up to the next 100 bytes. Allocation differs between JVMs, so
+ * re-measure the baselines when changing the JDK the check runs on.
+ *
+ * @author bbende
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchAllocationBenchmark {
+
+    /**
+     * The most bytes each benchmark may allocate per search, as reported by gc.alloc.rate.norm. These are the
+     * baselines above plus 10%, update both when the hot path allocates less.
+     */
+    static final Map<String,Long> BUDGETS = new HashMap<>();
+    static {
+        BUDGETS.put("count", 15700L);
+        BUDGETS.put("facets", 29300L);
+        BUDGETS.put("documents", 29000L);
+    }
+
+    static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+
+    @Param({"100000"})
+    private int numDocs;
+
+    private ExampleIndex index;
+    private ExampleSummaryQueryService queryService;
+
+    private Query countQuery;
+    private Query facetQuery;
+    private Query documentQuery;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, IndexException {
+        index = new ExampleIndex(numDocs, 10000);
+        queryService = new ExampleSummaryQueryService(index.getSearcherManager(), ExampleField.BODY.getName(),
+                index.getAnalyzer(), index.getFacetsConfig());
+        queryService.setFacetStateCache(new FacetStateCache());
+
+        countQuery = new Query("body:lucene");
+        countQuery.setResultMode(ResultMode.COUNT);
+
+        facetQuery = new Query("*:*");
+        facetQuery.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        facetQuery.setResultMode(ResultMode.FACETS);
+
+        documentQuery = new Query("body:lucene");
+        documentQuery.setReturnFields(Arrays.asList(ExampleField.ID, ExampleField.TITLE));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public QueryResults<ExampleSummary> count() throws QueryException {
+        return queryService.search(countQuery);
+    }
+
+    @Benchmark
+    public QueryResults<ExampleSummary> facets() throws QueryException {
+        return queryService.search(facetQuery);
+    }
+
+    @Benchmark
+    public QueryResults<ExampleSummary> documents() throws QueryException {
+        return queryService.search(documentQuery);
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler and exits with a non-zero status if any of them is over its budget.
+     */
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(SearchAllocationBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        final Collection<RunResult> runResults = new Runner(options).run();
+
+        boolean overBudget = false;
+        for (RunResult runResult : runResults) {
+            final String benchmark = runResult.getParams().getBenchmark();
+            final String method = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+            final Long budget = BUDGETS.get(method);
+            final Double allocated = getAllocatedBytes(runResult);
+
+            if (budget == null || allocated == null) {
+                System.err.println(method + ": no allocation budget or measurement");
+                overBudget = true;
+            } else if (allocated > budget) {
+                System.err.println(method + ": allocated " + allocated.longValue() + " bytes/op, budget is " + budget);
+                overBudget = true;
+            } else {
+                System.out.println(method + ": allocated " + allocated.longValue() + " bytes/op, budget is " + budget);
+            }
+        }
+
+        if (overBudget) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the bytes allocated per operation, or null if the GC profiler didn't report them
+     */
+    private static Double getAllocatedBytes(final RunResult runResult) {
+        // the profiler prefixes its result labels with a marker character in some versions of JMH
+        for (Map.Entry<String,Result> secondary : runResult.getSecondaryResults().entrySet()) {
+            if (secondary.getKey().endsWith(ALLOC_RATE_NORM)) {
+                return secondary.getValue().getScore();
+            }
+        }
+        return null;
+    }
+
+}
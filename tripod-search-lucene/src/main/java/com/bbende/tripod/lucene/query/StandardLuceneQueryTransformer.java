@@ -16,6 +16,7 @@
  */
 package com.bbende.tripod.lucene.query;
 
+import com.bbende.tripod.api.query.FilterQuery;
 import com.bbende.tripod.api.query.Query;
 import com.bbende.tripod.api.query.QueryTransformException;
 import org.apache.lucene.analysis.Analyzer;
@@ -58,7 +59,9 @@ public class StandardLuceneQueryTransformer implements LuceneQueryTransformer {
             DrillDownQuery drillDownQuery = new DrillDownQuery(facetsConfig, luceneQuery);
 
             // add all the filter queries to the DrillDownQuery
-            input.getFilterQueries().stream().forEach(fq -> drillDownQuery.add(fq.getField().getName(), fq.getValue()));
+            for (FilterQuery fq : input.getFilterQueries()) {
+                drillDownQuery.add(fq.getField().getName(), fq.getValue());
+            }
             return drillDownQuery;
 
         } catch (ParseException e) {
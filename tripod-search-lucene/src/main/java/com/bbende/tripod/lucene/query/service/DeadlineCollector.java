@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import com.bbende.tripod.api.query.service.QueryCancellation;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps a Collector and stops collecting once a deadline passes or the collector is cancelled. The collector is also
+ * cancelled when the QueryCancellation of the thread that created it is signalled, which is how cancelling the
+ * future of an async query stops the search, or when the collecting thread is interrupted, in which case the
+ * interrupt status is left set.
+ *
+ * Collection is stopped by throwing CollectionTerminatedException, which IndexSearcher handles by moving on to the
+ * next segment, where collection stops again immediately. The documents collected before the deadline stay in the
+ * wrapped Collector, so they can be returned as partial results.
+ *
+ * The deadline and cancellation are checked at the start of each segment and every 256 documents, so a deadline far in the future
+ * adds almost nothing to the cost of collecting. This must be the outermost Collector, since MultiCollector
+ * swallows CollectionTerminatedException from the collectors it wraps.
+ *
+ * @author bbende
+ */
+public class DeadlineCollector extends FilterCollector {
+
+    private static final int CHECK_INTERVAL_MASK = 255;
+
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private final QueryCancellation cancellation = QueryCancellation.current();
+
+    private volatile boolean cancelled;
+    private volatile boolean terminated;
+
+    /**
+     * Creates a DeadlineCollector without a deadline, which only stops collecting when cancelled.
+     *
+     * @param in the collector to wrap
+     */
+    public DeadlineCollector(final Collector in) {
+        super(in);
+        this.hasDeadline = false;
+        this.deadlineNanos = 0;
+    }
+
+    /**
+     * @param in the collector to wrap
+     * @param deadlineNanos the System.nanoTime() after which to stop collecting
+     */
+    public DeadlineCollector(final Collector in, final long deadlineNanos) {
+        super(in);
+        this.hasDeadline = true;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param in the collector to wrap
+     * @param timeAllowedMillis the time from now after which to stop collecting
+     * @return a DeadlineCollector wrapping the given collector
+     */
+    public static DeadlineCollector withTimeAllowed(final Collector in, final long timeAllowedMillis) {
+        return new DeadlineCollector(in, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeAllowedMillis));
+    }
+
+    /**
+     * Stops collection at the next check, from any thread.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if there is a deadline and it passed, whether or not collection was stopped because of it
+     */
+    public boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadlineNanos > 0;
+    }
+
+    /**
+     * @return true if collection was stopped before all matching documents were collected
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    @Override
+    public LeafCollector getLeafCollector(final LeafReaderContext context) throws IOException {
+        checkDeadline();
+
+        return new FilterLeafCollector(super.getLeafCollector(context)) {
+            private int count;
+
+            @Override
+            public void collect(final int doc) throws IOException {
+                if ((++count & CHECK_INTERVAL_MASK) == 0) {
+                    checkDeadline();
+                }
+                in.collect(doc);
+            }
+        };
+    }
+
+    private void checkDeadline() {
+        if (!cancelled && ((cancellation != null && cancellation.isCancelled()) || Thread.currentThread().isInterrupted())) {
+            cancelled = true;
+        }
+
+        if (cancelled || isExpired()) {
+            terminated = true;
+            throw new CollectionTerminatedException();
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.SimpleCollector;
+
+import java.util.Arrays;
+
+/**
+ * Collects the global doc ids of all matching documents, without scoring.
+ *
+ * @author bbende
+ */
+public class DocIdCollector extends SimpleCollector {
+
+    private int docBase;
+    private int[] docIds;
+    private int count;
+
+    public DocIdCollector(final int expectedSize) {
+        this.docIds = new int[Math.max(1, expectedSize)];
+    }
+
+    @Override
+    protected void doSetNextReader(final LeafReaderContext context) {
+        this.docBase = context.docBase;
+    }
+
+    @Override
+    public void collect(final int doc) {
+        if (count == docIds.length) {
+            docIds = Arrays.copyOf(docIds, count * 2);
+        }
+        docIds[count++] = docBase + doc;
+    }
+
+    @Override
+    public boolean needsScores() {
+        return false;
+    }
+
+    /**
+     * @return the collected doc ids in ascending order, so stored fields can be read sequentially
+     */
+    public int[] getDocIds() {
+        final int[] sorted = Arrays.copyOf(docIds, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.IndexReader;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the SortedSetDocValuesReaderState of each facet field for each IndexReader.
+ *
+ * Building the state creates the ordinal map across all segments of the reader, which is expensive for large
+ * indexes, but it stays valid for as long as the reader is open. The states of a reader are removed when it closes.
+ *
+ * @author bbende
+ */
+public class FacetStateCache {
+
+    private final ConcurrentMap<IndexReader,ConcurrentMap<String,SortedSetDocValuesReaderState>> states =
+            new ConcurrentHashMap<>();
+
+    /**
+     * @param reader the top-level reader
+     * @param field the facet field, which must be indexed with SortedSetDocValuesFacetField
+     * @return the state of the field for the reader
+     * @throws IOException if the state can't be built
+     * @throws IllegalArgumentException if the field wasn't indexed with sorted set doc values
+     */
+    public SortedSetDocValuesReaderState get(final IndexReader reader, final String field) throws IOException {
+        Validate.notNull(reader);
+        Validate.notNull(field);
+
+        ConcurrentMap<String,SortedSetDocValuesReaderState> readerStates = states.get(reader);
+        if (readerStates == null) {
+            final ConcurrentMap<String,SortedSetDocValuesReaderState> newStates = new ConcurrentHashMap<>();
+            readerStates = states.putIfAbsent(reader, newStates);
+            if (readerStates == null) {
+                readerStates = newStates;
+                reader.addReaderClosedListener(closedReader -> states.remove(closedReader));
+            }
+        }
+
+        // two searches may both build a missing state, but only one is kept
+        SortedSetDocValuesReaderState state = readerStates.get(field);
+        if (state == null) {
+            state = new DefaultSortedSetDocValuesReaderState(reader, field);
+            final SortedSetDocValuesReaderState previous = readerStates.putIfAbsent(field, state);
+            if (previous != null) {
+                state = previous;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return the number of readers with cached states
+     */
+    public int size() {
+        return states.size();
+    }
+
+}
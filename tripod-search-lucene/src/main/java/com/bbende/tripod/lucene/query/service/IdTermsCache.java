@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the postings of id terms per segment so that repeated id lookups can skip seeking the terms dictionary.
+ *
+ * Segments are immutable, so the doc ids for a term in a given segment never change; callers must still check the
+ * live docs of the current reader since documents may have been deleted after the entry was cached. Entries for a
+ * segment are dropped when the segment is closed.
+ *
+ * An IdTermsCache should only be used for lookups on a single id field.
+ *
+ * @author bbende
+ */
+public class IdTermsCache {
+
+    static final int DEFAULT_MAX_ENTRIES_PER_SEGMENT = 10000;
+
+    private final int maxEntriesPerSegment;
+    private final ConcurrentMap<Object,Map<BytesRef,int[]>> segmentCaches = new ConcurrentHashMap<>();
+
+    public IdTermsCache() {
+        this(DEFAULT_MAX_ENTRIES_PER_SEGMENT);
+    }
+
+    public IdTermsCache(final int maxEntriesPerSegment) {
+        this.maxEntriesPerSegment = maxEntriesPerSegment;
+        Validate.isTrue(maxEntriesPerSegment > 0);
+    }
+
+    /**
+     * @param reader the segment reader
+     * @param field the id field
+     * @param id the id to look up
+     * @return the doc ids within the segment having the given id, including deleted docs, or an empty array
+     * @throws IOException if an error occurs seeking the id
+     */
+    public int[] getDocs(final LeafReader reader, final String field, final BytesRef id) throws IOException {
+        final Map<BytesRef,int[]> segmentCache = getSegmentCache(reader);
+
+        int[] docs;
+        synchronized (segmentCache) {
+            docs = segmentCache.get(id);
+        }
+
+        if (docs == null) {
+            docs = LuceneServiceUtil.getDocs(reader, field, id);
+            synchronized (segmentCache) {
+                segmentCache.put(BytesRef.deepCopyOf(id), docs);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * @return the number of segments currently cached
+     */
+    public int getSegmentCount() {
+        return segmentCaches.size();
+    }
+
+    /**
+     * Removes all cached entries.
+     */
+    public void clear() {
+        segmentCaches.clear();
+    }
+
+    private Map<BytesRef,int[]> getSegmentCache(final LeafReader reader) {
+        final Object coreKey = reader.getCoreCacheKey();
+
+        Map<BytesRef,int[]> segmentCache = segmentCaches.get(coreKey);
+        if (segmentCache == null) {
+            final Map<BytesRef,int[]> newSegmentCache = new LinkedHashMap<BytesRef,int[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<BytesRef,int[]> eldest) {
+                    return size() > maxEntriesPerSegment;
+                }
+            };
+
+            segmentCache = segmentCaches.putIfAbsent(coreKey, newSegmentCache);
+            if (segmentCache == null) {
+                segmentCache = newSegmentCache;
+                reader.addCoreClosedListener(ownerCoreCacheKey -> segmentCaches.remove(ownerCoreCacheKey));
+            }
+        }
+        return segmentCache;
+    }
+
+}
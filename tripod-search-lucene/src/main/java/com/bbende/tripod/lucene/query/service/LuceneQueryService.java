@@ -17,6 +17,7 @@
 package com.bbende.tripod.lucene.query.service;
 
 import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.BatchResult;
 import com.bbende.tripod.api.query.result.QueryResult;
 import com.bbende.tripod.api.query.result.QueryResults;
 import com.bbende.tripod.api.query.service.QueryException;
@@ -26,10 +27,14 @@ import com.bbende.tripod.lucene.query.LuceneQueryTransformer;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.search.SearcherManager;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+
 /**
  * Lucene implementation of QueryService.
  *
- * NOTE: Clients should use SearcherManagerRefresher in order to periodically open new searchers and see new data.
+ * NOTE: Clients should use SearcherManagerRefresher or RefreshScheduler in order to periodically open new searchers
+ * and see new data.
  *
  * @author bbende
  */
@@ -57,4 +62,13 @@ public class LuceneQueryService<QR extends QueryResult> extends LuceneService<QR
         return performSearch(query);
     }
 
+    /**
+     * Performs the queries concurrently against a single IndexSearcher, so all of them see the same point-in-time
+     * view of the index.
+     */
+    @Override
+    public List<BatchResult<QR>> searchAll(final List<Query> queries, final Executor executor) {
+        return performSearchAll(queries, executor);
+    }
+
 }
@@ -16,8 +16,12 @@
  */
 package com.bbende.tripod.lucene.query.service;
 
+import com.bbende.tripod.api.Field;
 import com.bbende.tripod.api.TransformException;
 import com.bbende.tripod.api.entity.Entity;
+import com.bbende.tripod.api.metrics.Phase;
+import com.bbende.tripod.api.metrics.PhaseTimings;
+import com.bbende.tripod.api.metrics.QueryMetrics;
 import com.bbende.tripod.api.query.RetrievalQuery;
 import com.bbende.tripod.api.query.service.QueryException;
 import com.bbende.tripod.api.query.service.RetrievalService;
@@ -31,15 +35,22 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A RetrievalService for Lucene.
@@ -55,21 +66,59 @@ public class LuceneRetrievalService<E extends Entity> implements RetrievalServic
     protected final LuceneQueryTransformer queryTransformer;
     protected final LuceneDocumentTransformer<E> documentTransformer;
     protected final SortTypeFactory sortTypeFactory;
+    protected final Field idField;
+
+    private volatile IdTermsCache idTermsCache;
+    private volatile QueryMetrics queryMetrics = QueryMetrics.NOOP;
 
     public LuceneRetrievalService(final SearcherManager searcherManager,
                                   final Analyzer analyzer,
                                   final LuceneQueryTransformer queryTransformer,
                                   final LuceneDocumentTransformer<E> documentTransformer,
                                   final SortTypeFactory sortTypeFactory) {
+        this(searcherManager, analyzer, queryTransformer, documentTransformer, sortTypeFactory, Field.ID);
+    }
+
+    public LuceneRetrievalService(final SearcherManager searcherManager,
+                                  final Analyzer analyzer,
+                                  final LuceneQueryTransformer queryTransformer,
+                                  final LuceneDocumentTransformer<E> documentTransformer,
+                                  final SortTypeFactory sortTypeFactory,
+                                  final Field idField) {
         this.searcherManager = searcherManager;
         this.analyzer = analyzer;
         this.queryTransformer = queryTransformer;
         this.documentTransformer = documentTransformer;
         this.sortTypeFactory = sortTypeFactory;
+        this.idField = idField;
         Validate.notNull(this.searcherManager);
         Validate.notNull(this.queryTransformer);
         Validate.notNull(this.documentTransformer);
         Validate.notNull(this.sortTypeFactory);
+        Validate.notNull(this.idField);
+    }
+
+    public IdTermsCache getIdTermsCache() {
+        return idTermsCache;
+    }
+
+    /**
+     * @param idTermsCache an optional per-segment cache used by findById, or null to always seek the terms dictionary
+     */
+    public void setIdTermsCache(final IdTermsCache idTermsCache) {
+        this.idTermsCache = idTermsCache;
+    }
+
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    /**
+     * @param queryMetrics the metrics to record the time spent in each phase of every retrieval to
+     */
+    public void setQueryMetrics(final QueryMetrics queryMetrics) {
+        Validate.notNull(queryMetrics);
+        this.queryMetrics = queryMetrics;
     }
 
     @Override
@@ -86,14 +135,144 @@ public class LuceneRetrievalService<E extends Entity> implements RetrievalServic
         }
     }
 
+    /**
+     * Retrieves the entity with the given id by seeking the id term in each segment, without parsing a query or
+     * running a search. The id is matched exactly against the indexed value of the id field.
+     *
+     * @param id the id of the entity
+     * @return the entity with the given id, or null if none exists
+     * @throws QueryException if an error occurs performing the retrieval
+     */
+    @Override
+    public E findById(final String id) throws QueryException {
+        if (id == null) {
+            return null;
+        }
+
+        final PhaseTimings timings = new PhaseTimings();
+
+        IndexSearcher searcher = null;
+        try {
+            // Acquire an IndexSearcher
+            long phaseStart = System.nanoTime();
+            searcher = searcherManager.acquire();
+            phaseStart = timings.addSince(Phase.ACQUIRE, phaseStart);
+
+            final int docId = LuceneServiceUtil.getLiveDoc(
+                    searcher.getIndexReader(), idField.getName(), new BytesRef(id), idTermsCache);
+            phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+            LOGGER.debug("Lookup executed in " + TimeUnit.NANOSECONDS.toMillis(timings.getNanos(Phase.SEARCH)));
+
+            E result = null;
+            if (docId >= 0) {
+                final Document doc = LuceneServiceUtil.getDoc(searcher, docId, null);
+                phaseStart = timings.addSince(Phase.FETCH, phaseStart);
+
+                result = documentTransformer.transform(doc);
+                timings.addSince(Phase.DOCUMENT_TRANSFORM, phaseStart);
+            }
+
+            timings.stop();
+            timings.recordTo(queryMetrics);
+            return result;
+
+        } catch (TransformException e) {
+            throw new QueryException("A transform error occurred");
+        } catch (IOException e) {
+            throw new QueryException("Unexpected error occurred performing query", e);
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    LOGGER.warn("Error releasing IndexSearcher: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Map<String,E> findAll(final Collection<String> ids) throws QueryException {
+        final Map<String,E> results = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return results;
+        }
+
+        final PhaseTimings timings = new PhaseTimings();
+
+        IndexSearcher searcher = null;
+        try {
+            // Acquire an IndexSearcher
+            long phaseStart = System.nanoTime();
+            searcher = searcherManager.acquire();
+            phaseStart = timings.addSince(Phase.ACQUIRE, phaseStart);
+
+            // Resolve all of the ids in one pass over the id field
+            final List<BytesRef> idTerms = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                idTerms.add(new BytesRef(id));
+            }
+            final Query luceneQuery = new TermInSetQuery(idField.getName(), idTerms);
+            final DocIdCollector docIdCollector = new DocIdCollector(ids.size());
+            phaseStart = timings.addSince(Phase.TRANSFORM, phaseStart);
+
+            searcher.search(luceneQuery, docIdCollector);
+            phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+            LOGGER.debug("Query executed in " + TimeUnit.NANOSECONDS.toMillis(timings.getNanos(Phase.SEARCH)));
+
+            // Load the stored fields in doc id order and transform each Document to an Entity
+            final Map<String,E> found = new HashMap<>();
+            for (int docId : docIdCollector.getDocIds()) {
+                final Document doc = LuceneServiceUtil.getDoc(searcher, docId, null);
+                phaseStart = timings.addSince(Phase.FETCH, phaseStart);
+
+                final E result = documentTransformer.transform(doc);
+                phaseStart = timings.addSince(Phase.DOCUMENT_TRANSFORM, phaseStart);
+                if (result != null) {
+                    found.put(result.getId(), result);
+                }
+            }
+
+            // Return the results in the order the ids were requested
+            for (String id : ids) {
+                final E result = found.get(id);
+                if (result != null) {
+                    results.put(id, result);
+                }
+            }
+
+            timings.stop();
+            timings.recordTo(queryMetrics);
+            return results;
+
+        } catch (TransformException e) {
+            throw new QueryException("A transform error occurred");
+        } catch (IOException e) {
+            throw new QueryException("Unexpected error occurred performing query", e);
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    LOGGER.warn("Error releasing IndexSearcher: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
     protected List<E> performSearch(final RetrievalQuery query) throws QueryException {
+        final PhaseTimings timings = new PhaseTimings();
+
         IndexSearcher searcher = null;
         try {
             // Acquire an IndexSearcher
+            long phaseStart = System.nanoTime();
             searcher = searcherManager.acquire();
+            phaseStart = timings.addSince(Phase.ACQUIRE, phaseStart);
 
             // Create a searcher and get a Lucene query
             final Query luceneQuery = queryTransformer.transform(query);
+            timings.addSince(Phase.TRANSFORM, phaseStart);
 
             // Get the return fields
             final Set<String> fieldsToLoad = new HashSet<>();
@@ -108,17 +287,24 @@ public class LuceneRetrievalService<E extends Entity> implements RetrievalServic
                     sort, query.getRows(), null, true, false, false);
 
             // Perform the Lucene query
-            final long startTime = System.currentTimeMillis();
+            phaseStart = System.nanoTime();
             searcher.search(luceneQuery, topFieldCollector);
-            LOGGER.debug("Query executed in " + (System.currentTimeMillis() - startTime));
+            phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+            LOGGER.debug("Query executed in " + TimeUnit.NANOSECONDS.toMillis(timings.getNanos(Phase.SEARCH)));
 
             // Transform each Lucene Document to an Entity
             final List<E> results = new ArrayList<>();
             for (ScoreDoc scoreDoc : topFieldCollector.topDocs().scoreDocs) {
                 final Document doc = LuceneServiceUtil.getDoc(searcher, scoreDoc.doc, fieldsToLoad);
+                phaseStart = timings.addSince(Phase.FETCH, phaseStart);
+
                 final E result = documentTransformer.transform(doc);
+                phaseStart = timings.addSince(Phase.DOCUMENT_TRANSFORM, phaseStart);
                 results.add(result);
             }
+
+            timings.stop();
+            timings.recordTo(queryMetrics);
             return results;
 
         } catch (TransformException e) {
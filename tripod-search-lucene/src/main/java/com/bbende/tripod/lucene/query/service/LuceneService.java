@@ -18,12 +18,20 @@ package com.bbende.tripod.lucene.query.service;
 
 import com.bbende.tripod.api.Field;
 import com.bbende.tripod.api.TransformException;
+import com.bbende.tripod.api.metrics.Phase;
+import com.bbende.tripod.api.metrics.PhaseTimings;
+import com.bbende.tripod.api.metrics.QueryMetrics;
 import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.RangeFacet;
+import com.bbende.tripod.api.query.ResultMode;
+import com.bbende.tripod.api.query.result.BatchResult;
 import com.bbende.tripod.api.query.result.FacetCount;
 import com.bbende.tripod.api.query.result.FacetResult;
 import com.bbende.tripod.api.query.result.Highlight;
+import com.bbende.tripod.api.query.result.QueryProfile;
 import com.bbende.tripod.api.query.result.QueryResult;
 import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.BatchSearch;
 import com.bbende.tripod.api.query.service.QueryException;
 import com.bbende.tripod.lucene.SortTypeFactory;
 import com.bbende.tripod.lucene.query.LuceneCursorMark;
@@ -35,11 +43,12 @@ import org.apache.commons.lang.Validate;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.DrillDownQuery;
 import org.apache.lucene.facet.FacetsCollector;
-import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.RandomSamplingFacetsCollector;
+import org.apache.lucene.facet.range.LongRange;
+import org.apache.lucene.facet.range.LongRangeFacetCounts;
 import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
-import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.Fields;
 import org.apache.lucene.index.IndexableField;
@@ -51,6 +60,7 @@ import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
 import org.apache.lucene.search.highlight.QueryScorer;
@@ -64,15 +74,19 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * Base class for all Lucene services.
  *
- * NOTE: Clients should use SearcherManagerRefresher in order to periodically open new searchers and see new data.
+ * NOTE: Clients should use SearcherManagerRefresher or RefreshScheduler in order to periodically open new searchers
+ * and see new data.
  *
  * @author bbende
  */
@@ -82,6 +96,8 @@ public class LuceneService<QR extends QueryResult> {
 
     static final Integer DEFAULT_MAX_SEARCH_RESULTS = new Integer(10000);
 
+    static final int DEFAULT_FACET_LIMIT = 10;
+
     protected final Analyzer analyzer;
     protected final SearcherManager searcherManager;
     protected final LuceneQueryTransformer queryTransformer;
@@ -93,6 +109,14 @@ public class LuceneService<QR extends QueryResult> {
     private String highlightPreTag = "<strong>";
     private String highlightPostTag = "</strong>";
 
+    private volatile int facetLimit = DEFAULT_FACET_LIMIT;
+    private volatile boolean compactFacetResults;
+
+    private volatile QueryMetrics queryMetrics = QueryMetrics.NOOP;
+    private volatile QueryLog queryLog;
+    private volatile FacetStateCache facetStateCache;
+    private volatile MaterializedFacets materializedFacets;
+
     public LuceneService(final SearcherManager searcherManager,
                          final Analyzer analyzer,
                          final LuceneQueryTransformer queryTransformer,
@@ -141,6 +165,83 @@ public class LuceneService<QR extends QueryResult> {
         this.highlightPostTag = highlightPostTag;
     }
 
+    public int getFacetLimit() {
+        return facetLimit;
+    }
+
+    /**
+     * @param facetLimit the maximum number of values returned for each facet field
+     */
+    public void setFacetLimit(int facetLimit) {
+        Validate.isTrue(facetLimit > 0);
+        this.facetLimit = facetLimit;
+    }
+
+    public boolean isCompactFacetResults() {
+        return compactFacetResults;
+    }
+
+    /**
+     * @param compactFacetResults true to return facet fields as CompactFacetResults, which hold the values in
+     *                            primitive arrays and decode labels on access, for fields with many values
+     */
+    public void setCompactFacetResults(boolean compactFacetResults) {
+        this.compactFacetResults = compactFacetResults;
+    }
+
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    /**
+     * @param queryMetrics the metrics to record the time spent in each phase of every search to
+     */
+    public void setQueryMetrics(QueryMetrics queryMetrics) {
+        Validate.notNull(queryMetrics);
+        this.queryMetrics = queryMetrics;
+    }
+
+    public QueryLog getQueryLog() {
+        return queryLog;
+    }
+
+    /**
+     * @param queryLog the log to record every query to, for replaying when warming new searchers, or null
+     */
+    public void setQueryLog(QueryLog queryLog) {
+        this.queryLog = queryLog;
+    }
+
+    public FacetStateCache getFacetStateCache() {
+        return facetStateCache;
+    }
+
+    /**
+     * @param facetStateCache the cache of facet reader states to share across searches, or null to build the
+     *                        state of each facet field on every search
+     */
+    public void setFacetStateCache(FacetStateCache facetStateCache) {
+        this.facetStateCache = facetStateCache;
+    }
+
+    public MaterializedFacets getMaterializedFacets() {
+        return materializedFacets;
+    }
+
+    /**
+     * Serves facet counts from the given MaterializedFacets when a query matches one of its combinations, and counts
+     * the combinations for each new searcher with this service, starting with the current searcher.
+     *
+     * @param materializedFacets the materialized facets of the SearcherManager of this service, or null
+     */
+    public void setMaterializedFacets(MaterializedFacets materializedFacets) {
+        this.materializedFacets = materializedFacets;
+        if (materializedFacets != null) {
+            materializedFacets.setCounter((searcher, query) -> performSearch(query, searcher, new PhaseTimings()));
+            materializedFacets.materialize();
+        }
+    }
+
     /**
      * Common logic for sub-classes to perform searches.
      *
@@ -149,10 +250,111 @@ public class LuceneService<QR extends QueryResult> {
      * @throws QueryException if an error occurred performing the search
      */
     protected QueryResults<QR> performSearch(final Query query) throws QueryException {
+        final PhaseTimings timings = new PhaseTimings();
+        logQuery(query);
+
         IndexSearcher searcher = null;
         try {
             // Acquire an IndexSearcher
+            final long phaseStart = System.nanoTime();
             searcher = searcherManager.acquire();
+            timings.addSince(Phase.ACQUIRE, phaseStart);
+
+            final QueryResults<QR> results = performSearch(query, searcher, timings);
+            timings.recordTo(queryMetrics);
+            return results;
+
+        } catch (IOException e) {
+            throw new QueryException("Unexpected error occurred acquiring searcher", e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * Common logic for sub-classes to perform many searches concurrently against one IndexSearcher, so they all see
+     * the same point-in-time view of the index and only one acquire and release is needed.
+     *
+     * @param queries the queries
+     * @param executor the executor to perform the searches on
+     * @return the outcome of each query, in the order of the queries
+     */
+    protected List<BatchResult<QR>> performSearchAll(final List<Query> queries, final Executor executor) {
+        Validate.notNull(queries);
+        Validate.notNull(executor);
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+        } catch (IOException e) {
+            final QueryException queryException =
+                    new QueryException("Unexpected error occurred acquiring searcher", e);
+            return queries.stream().map(q -> BatchResult.<QR>failure(q, queryException)).collect(Collectors.toList());
+        }
+
+        // searchAll waits for every search to complete, so the searcher can't be released while still in use
+        final IndexSearcher sharedSearcher = searcher;
+        try {
+            return BatchSearch.searchAll(queries, executor, q -> {
+                logQuery(q);
+                final PhaseTimings timings = new PhaseTimings();
+                final QueryResults<QR> results = performSearch(q, sharedSearcher, timings);
+                timings.recordTo(queryMetrics);
+                return results;
+            });
+        } finally {
+            release(sharedSearcher);
+        }
+    }
+
+    /**
+     * Performs a query against a searcher that is not yet visible to other searches, such as from a
+     * WarmingSearcherFactory, without recording the query to the QueryMetrics or QueryLog.
+     *
+     * @param searcher the searcher to warm
+     * @param query the query to warm it with
+     * @throws QueryException if an error occurred performing the search
+     */
+    public void warm(final IndexSearcher searcher, final Query query) throws QueryException {
+        performSearch(query, searcher, new PhaseTimings());
+    }
+
+    private void logQuery(final Query query) {
+        final QueryLog log = queryLog;
+        if (log != null) {
+            log.record(query);
+        }
+    }
+
+    /**
+     * Performs a search against an IndexSearcher that was already acquired by the caller.
+     *
+     * @param query the query
+     * @param searcher the searcher, which is not released
+     * @param timings the timings of the search so far
+     * @return the QueryResults
+     * @throws QueryException if an error occurred performing the search
+     */
+    protected QueryResults<QR> performSearch(final Query query, final IndexSearcher searcher,
+                                             final PhaseTimings timings) throws QueryException {
+        final SearchScratch scratch = SearchScratch.acquire();
+        try {
+            return performSearch(query, searcher, timings, scratch);
+        } finally {
+            scratch.release();
+        }
+    }
+
+    private QueryResults<QR> performSearch(final Query query, final IndexSearcher searcher,
+                                           final PhaseTimings timings, final SearchScratch scratch)
+            throws QueryException {
+        // the time allowed covers the rest of the search, starting now
+        final Long timeAllowed = query.getTimeAllowed();
+        final long deadlineNanos = timeAllowed == null
+                ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeAllowed);
+
+        try {
+            long phaseStart = System.nanoTime();
 
             // Start the results builder with the offset and rows from the query
             final QueryResults.Builder<QR> resultsBuilder = new QueryResults.Builder<QR>()
@@ -161,24 +363,52 @@ public class LuceneService<QR extends QueryResult> {
 
             // Create a searcher and get a Lucene query
             final org.apache.lucene.search.Query luceneQuery = queryTransformer.transform(query);
+            timings.addSince(Phase.TRANSFORM, phaseStart);
 
             // Get the return fields
-            final Set<String> fieldsToLoad = new HashSet<>();
+            final Set<String> fieldsToLoad = scratch.fieldsToLoad;
             if (query.getReturnFields() != null) {
-                query.getReturnFields().stream().forEach(f -> fieldsToLoad.add(f.getName()));
+                for (Field returnField : query.getReturnFields()) {
+                    fieldsToLoad.add(returnField.getName());
+                }
             }
 
             // Get the facet fields
-            final Set<String> facetFields = new HashSet<>();
+            final Set<String> facetFields = scratch.facetFields;
             if (query.getFacetFields() != null) {
-                query.getFacetFields().stream().forEach(f -> facetFields.add(f.getName()));
+                for (Field facetField : query.getFacetFields()) {
+                    facetFields.add(facetField.getName());
+                }
+            }
+
+            // Get the range facets, which are counted from the same FacetsCollector
+            final List<RangeFacet> rangeFacets = query.getRangeFacets() == null
+                    ? Collections.emptyList() : query.getRangeFacets();
+
+            // Facet counts materialized for this searcher are served without counting the matching docs again
+            final MaterializedFacets currentMaterializedFacets = materializedFacets;
+            final MaterializedFacets.Counts materializedCounts = currentMaterializedFacets == null
+                    ? null : currentMaterializedFacets.get(searcher.getIndexReader(), query);
+            final boolean faceting = materializedCounts == null && (!facetFields.isEmpty() || !rangeFacets.isEmpty());
+
+            // Count-only and facet-only queries don't need to sort, load or transform any documents
+            if (query.getResultMode() != ResultMode.DOCUMENTS) {
+                final boolean countOnly = query.getResultMode() == ResultMode.COUNT;
+                if (materializedCounts != null) {
+                    return performMaterialized(query, searcher, luceneQuery, materializedCounts,
+                            countOnly ? Collections.emptySet() : facetFields, resultsBuilder, timings);
+                }
+                return performCount(query, searcher, luceneQuery,
+                        countOnly ? Collections.emptySet() : facetFields,
+                        countOnly ? Collections.emptyList() : rangeFacets,
+                        timeAllowed != null, deadlineNanos, resultsBuilder, timings);
             }
 
             final Sort sort = getSort(query.getSorts(), sortTypeFactory);
             final Highlighter highlighter = getHighlighter(query, luceneQuery);
 
             // Collector to use when faceting
-            final FacetsCollector facetsCollector = new FacetsCollector();
+            final FacetsCollector facetsCollector = faceting ? createFacetsCollector(query) : null;
 
             // fillFields needs to be true to get instances of FieldDoc coming back for the ScoreDoc[]
             final boolean fillFields = true;
@@ -187,9 +417,11 @@ public class LuceneService<QR extends QueryResult> {
 
             final boolean usingCursorMark = query.getCursorMark() != null;
 
-            // if using cursorMark we only need to find # of rows after the cursors, otherwise we need
-            // to find all the results up to maxSearchResults
-            final int numResults = usingCursorMark ? query.getRows() : maxSearchResults;
+            // if using cursorMark we only need to find # of rows after the cursors, otherwise we need to find the
+            // results up to the end of the page, and never more than maxSearchResults
+            final int numResults = usingCursorMark
+                    ? query.getRows()
+                    : (int) Math.max(1, Math.min(maxSearchResults, (long) query.getOffset() + query.getRows()));
 
             // if not using cursorMark this should end up being null which would be
             // the same thing as calling TopFieldCollector.create without afterDoc
@@ -198,39 +430,75 @@ public class LuceneService<QR extends QueryResult> {
             final TopFieldCollector topFieldCollector = TopFieldCollector.create(
                     sort, numResults, prevLastDoc, fillFields, trackScores, trackMaxScore);
 
+            // Multi-select faceting collects the facets of the drill-down and drill-sideways docs itself
+            final MultiSelectDrillSideways drillSideways = faceting ? getDrillSideways(query, searcher, luceneQuery) : null;
+
             // Wrapped collector depending on whether faceting or not
-            final Collector collector = facetFields.isEmpty()
-                    ? MultiCollector.wrap(topFieldCollector) : MultiCollector.wrap(topFieldCollector, facetsCollector);
+            final Collector collector = faceting && drillSideways == null
+                    ? MultiCollector.wrap(topFieldCollector, facetsCollector) : topFieldCollector;
+
+            // Stop collecting at the deadline or when cancelled, this has to wrap the MultiCollector to end
+            // collection of all segments
+            final DeadlineCollector deadlineCollector = timeAllowed == null
+                    ? new DeadlineCollector(collector) : new DeadlineCollector(collector, deadlineNanos);
 
-            // Perform the Lucene query
-            final long startTime = System.currentTimeMillis();
+            // Perform the Lucene query, the TopFieldCollector already starts after prevLastDoc when using cursorMark
+            phaseStart = System.nanoTime();
+            search(searcher, luceneQuery, drillSideways, deadlineCollector);
 
             ScoreDoc[] scoreDocs;
             if (usingCursorMark) {
-                FacetsCollector.searchAfter(searcher, prevLastDoc, luceneQuery, query.getRows(), sort, collector);
                 scoreDocs = topFieldCollector.topDocs().scoreDocs;
-                LOGGER.debug("Queried with cursorMark = " + query.getCursorMark());
             } else {
-                searcher.search(luceneQuery, collector);
                 scoreDocs = topFieldCollector.topDocs(query.getOffset(), query.getRows()).scoreDocs;
-                LOGGER.debug("Queried with offset = " + query.getOffset());
             }
 
-            LOGGER.debug("Query executed in " + (System.currentTimeMillis() - startTime));
+            boolean partialResults = deadlineCollector.isTerminated();
+
+            phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Query executed in " + TimeUnit.NANOSECONDS.toMillis(timings.getNanos(Phase.SEARCH))
+                        + " ms with " + (usingCursorMark ? "cursorMark = " + query.getCursorMark()
+                        : "offset = " + query.getOffset()));
+            }
 
             // Transform each Lucene Document to a QueryResult
             ScoreDoc lastDoc = null;
+            long storedFieldBytes = 0;
             for (ScoreDoc scoreDoc : scoreDocs) {
                 final Document doc = getDoc(searcher, scoreDoc.doc, fieldsToLoad);
+                if (query.isProfile()) {
+                    storedFieldBytes += LuceneServiceUtil.getStoredBytes(doc);
+                }
+                phaseStart = timings.addSince(Phase.FETCH, phaseStart);
+
                 final QR result = documentTransformer.transform(doc);
-                performHighlighting(searcher, query, scoreDoc, doc, highlighter, result);
+                phaseStart = timings.addSince(Phase.DOCUMENT_TRANSFORM, phaseStart);
+
+                // once the deadline passes the remaining results are returned without highlights
+                if (highlighter != null) {
+                    if (deadlineCollector.isExpired()) {
+                        partialResults = true;
+                    } else {
+                        performHighlighting(searcher, query, scoreDoc, doc, highlighter, result);
+                        phaseStart = timings.addSince(Phase.HIGHLIGHT, phaseStart);
+                    }
+                }
 
                 resultsBuilder.addResult(result);
                 lastDoc = scoreDoc;
             }
 
             // Get faceting results
-            processFacetResults(searcher, facetsCollector, facetFields, resultsBuilder);
+            if (faceting) {
+                phaseStart = System.nanoTime();
+                processFacetResults(searcher, facetsCollector, drillSideways, facetFields, rangeFacets, resultsBuilder);
+                timings.addSince(Phase.FACET, phaseStart);
+            } else if (materializedCounts != null) {
+                for (String facetField : facetFields) {
+                    resultsBuilder.addFacetResult(materializedCounts.getFacetResult(facetField));
+                }
+            }
 
             // Send back the last doc as a cursorMark so it can be passed back for the next page
             // If lastDoc is null it means there were no results, so send back the same cursorMark that was passed in
@@ -243,19 +511,244 @@ public class LuceneService<QR extends QueryResult> {
             }
 
             resultsBuilder.totalResults(topFieldCollector.getTotalHits());
+            resultsBuilder.partialResults(partialResults);
+
+            timings.stop();
+
+            if (query.isProfile()) {
+                resultsBuilder.profile(getProfile(searcher, luceneQuery, timings, topFieldCollector.getTotalHits(),
+                        storedFieldBytes, facetFields.size() + rangeFacets.size()));
+            }
+
             return resultsBuilder.build();
 
         } catch (TransformException e) {
             throw new QueryException("A transform error occurred");
         } catch (IOException | InvalidTokenOffsetsException e) {
             throw new QueryException("Unexpected error occurred performing query", e);
-        } finally {
-            if (searcher != null) {
-                try {
-                    searcherManager.release(searcher);
-                } catch (IOException e) {
-                    LOGGER.warn("Error releasing IndexSearcher: " + e.getMessage(), e);
-                }
+        }
+    }
+
+    /**
+     * Counts the matches of a query without collecting any documents, along with the facet counts when given facet
+     * fields or range facets.
+     *
+     * @param hasDeadline true if counting stops at the deadline
+     * @param deadlineNanos the System.nanoTime() after which to stop counting when there is a deadline
+     */
+    private QueryResults<QR> performCount(final Query query, final IndexSearcher searcher,
+                                          final org.apache.lucene.search.Query luceneQuery,
+                                          final Set<String> facetFields, final List<RangeFacet> rangeFacets,
+                                          final boolean hasDeadline, final long deadlineNanos,
+                                          final QueryResults.Builder<QR> resultsBuilder,
+                                          final PhaseTimings timings) throws IOException, QueryException {
+        long phaseStart = System.nanoTime();
+
+        final int totalHits;
+        boolean partialResults = false;
+        final boolean faceting = !facetFields.isEmpty() || !rangeFacets.isEmpty();
+        FacetsCollector facetsCollector = null;
+        MultiSelectDrillSideways drillSideways = null;
+
+        if (faceting) {
+            drillSideways = getDrillSideways(query, searcher, luceneQuery);
+        }
+
+        if (drillSideways != null) {
+            final TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+            final DeadlineCollector deadlineCollector = hasDeadline
+                    ? new DeadlineCollector(hitCountCollector, deadlineNanos) : new DeadlineCollector(hitCountCollector);
+            search(searcher, luceneQuery, drillSideways, deadlineCollector);
+            partialResults = deadlineCollector.isTerminated();
+            totalHits = hitCountCollector.getTotalHits();
+        } else if (faceting) {
+            // a bare FacetsCollector only records the matching docs without scoring or sorting them
+            facetsCollector = createFacetsCollector(query);
+            final DeadlineCollector deadlineCollector = hasDeadline
+                    ? new DeadlineCollector(facetsCollector, deadlineNanos) : new DeadlineCollector(facetsCollector);
+            search(searcher, luceneQuery, deadlineCollector);
+            partialResults = deadlineCollector.isTerminated();
+            totalHits = getOriginalMatchingDocs(facetsCollector).stream().mapToInt(md -> md.totalHits).sum();
+        } else if (!hasDeadline) {
+            // count can answer some queries from the index statistics without visiting any documents
+            totalHits = searcher.count(luceneQuery);
+        } else {
+            final TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+            final DeadlineCollector deadlineCollector = new DeadlineCollector(hitCountCollector, deadlineNanos);
+            search(searcher, luceneQuery, deadlineCollector);
+            partialResults = deadlineCollector.isTerminated();
+            totalHits = hitCountCollector.getTotalHits();
+        }
+
+        phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+
+        if (faceting) {
+            processFacetResults(searcher, facetsCollector, drillSideways, facetFields, rangeFacets, resultsBuilder);
+            timings.addSince(Phase.FACET, phaseStart);
+        }
+
+        // no results were returned so the cursor stays where it was
+        if (query.getCursorMark() != null) {
+            resultsBuilder.cursorMark(query.getCursorMark());
+        }
+
+        resultsBuilder.totalResults(totalHits);
+        resultsBuilder.partialResults(partialResults);
+
+        timings.stop();
+
+        if (query.isProfile()) {
+            resultsBuilder.profile(getProfile(searcher, luceneQuery, timings, totalHits, 0,
+                    facetFields.size() + rangeFacets.size()));
+        }
+
+        return resultsBuilder.build();
+    }
+
+    /**
+     * Answers a count-only or facet-only query from materialized counts without searching.
+     */
+    private QueryResults<QR> performMaterialized(final Query query, final IndexSearcher searcher,
+                                                 final org.apache.lucene.search.Query luceneQuery,
+                                                 final MaterializedFacets.Counts counts, final Set<String> facetFields,
+                                                 final QueryResults.Builder<QR> resultsBuilder,
+                                                 final PhaseTimings timings) throws IOException {
+        final long phaseStart = System.nanoTime();
+        for (String facetField : facetFields) {
+            resultsBuilder.addFacetResult(counts.getFacetResult(facetField));
+        }
+        timings.addSince(Phase.FACET, phaseStart);
+
+        // no results were returned so the cursor stays where it was
+        if (query.getCursorMark() != null) {
+            resultsBuilder.cursorMark(query.getCursorMark());
+        }
+
+        resultsBuilder.totalResults(counts.getTotalHits());
+        resultsBuilder.partialResults(false);
+
+        timings.stop();
+
+        if (query.isProfile()) {
+            resultsBuilder.profile(getProfile(searcher, luceneQuery, timings, 0, 0, facetFields.size()));
+        }
+
+        return resultsBuilder.build();
+    }
+
+    /**
+     * @param query the query
+     * @return a collector that samples the matching docs when the query has a facet sample size, otherwise one that
+     *         keeps all of them for exact counts
+     */
+    private FacetsCollector createFacetsCollector(final Query query) {
+        final Integer facetSampleSize = query.getFacetSampleSize();
+        return facetSampleSize == null ? new FacetsCollector() : new RandomSamplingFacetsCollector(facetSampleSize);
+    }
+
+    private static List<FacetsCollector.MatchingDocs> getOriginalMatchingDocs(final FacetsCollector facetsCollector) {
+        return facetsCollector instanceof RandomSamplingFacetsCollector
+                ? ((RandomSamplingFacetsCollector) facetsCollector).getOriginalMatchingDocs()
+                : facetsCollector.getMatchingDocs();
+    }
+
+    /**
+     * @param facetsCollector the FacetsCollector that was used for the search
+     * @return the fraction of the matching docs the facets are counted over, which is 1 unless the collector sampled
+     *         a query that matched more docs than its sample size
+     */
+    protected static double getSamplingRate(final FacetsCollector facetsCollector) {
+        if (!(facetsCollector instanceof RandomSamplingFacetsCollector)) {
+            return 1.0;
+        }
+
+        // the sample is taken on the first call to getMatchingDocs, which only sets the sampling rate when the
+        // query matched more docs than the sample size, otherwise it is left at 0 and all docs are counted
+        final RandomSamplingFacetsCollector samplingCollector = (RandomSamplingFacetsCollector) facetsCollector;
+        samplingCollector.getMatchingDocs();
+        final double samplingRate = samplingCollector.getSamplingRate();
+        return samplingRate > 0 ? samplingRate : 1.0;
+    }
+
+    /**
+     * Multi-select faceting needs the filter queries as the dimensions of a DrillDownQuery, so it only applies when
+     * the LuceneQueryTransformer produces one, which the StandardLuceneQueryTransformer does when given a
+     * FacetsConfig. Without filter queries there are no dimensions to count sideways, so the query is faceted as
+     * usual. DrillSideways creates its own FacetsCollectors, so multi-select facets ignore the facet sample size and
+     * are always counted exactly.
+     *
+     * @return a DrillSideways to search with when the query uses multi-select faceting, otherwise null
+     */
+    private MultiSelectDrillSideways getDrillSideways(final Query query, final IndexSearcher searcher,
+                                                      final org.apache.lucene.search.Query luceneQuery) {
+        // DrillDownQuery.getDims() isn't public, but its dims are the filter queries
+        if (!query.isMultiSelectFacets() || !(luceneQuery instanceof DrillDownQuery)
+                || query.getFilterQueries() == null || query.getFilterQueries().isEmpty()) {
+            return null;
+        }
+        return new MultiSelectDrillSideways(searcher);
+    }
+
+    /**
+     * Adds the facet results from either the FacetsCollector of the search, or the collectors of the DrillSideways
+     * when the search used one.
+     */
+    private void processFacetResults(final IndexSearcher searcher, final FacetsCollector facetsCollector,
+                                     final MultiSelectDrillSideways drillSideways, final Set<String> facetFields,
+                                     final List<RangeFacet> rangeFacets, final QueryResults.Builder<QR> resultsBuilder)
+            throws IOException {
+        if (drillSideways == null) {
+            processFacetResults(searcher, facetsCollector, facetFields, resultsBuilder);
+            processRangeFacetResults(facetsCollector, rangeFacets, resultsBuilder);
+            return;
+        }
+
+        // each field filtered by the query is counted over the docs matching all of the other filters
+        for (String facetField : facetFields) {
+            processFacetResults(searcher, drillSideways.getFacetsCollector(facetField),
+                    Collections.singleton(facetField), resultsBuilder);
+        }
+        processRangeFacetResults(drillSideways.getDrillDownCollector(), rangeFacets, resultsBuilder);
+    }
+
+    private void search(final IndexSearcher searcher, final org.apache.lucene.search.Query luceneQuery,
+                        final DeadlineCollector deadlineCollector) throws IOException, QueryException {
+        search(searcher, luceneQuery, null, deadlineCollector);
+    }
+
+    private void search(final IndexSearcher searcher, final org.apache.lucene.search.Query luceneQuery,
+                        final MultiSelectDrillSideways drillSideways, final DeadlineCollector deadlineCollector)
+            throws IOException, QueryException {
+        if (drillSideways == null) {
+            searcher.search(luceneQuery, deadlineCollector);
+        } else {
+            drillSideways.search((DrillDownQuery) luceneQuery, deadlineCollector);
+        }
+
+        if (deadlineCollector.isCancelled()) {
+            throw new QueryException("Query was cancelled");
+        }
+    }
+
+    private QueryProfile getProfile(final IndexSearcher searcher, final org.apache.lucene.search.Query luceneQuery,
+                                    final PhaseTimings timings, final int hitsCollected, final long storedFieldBytes,
+                                    final int facetDimensions) throws IOException {
+        return new QueryProfile.Builder()
+                .phaseNanos(timings.toMap())
+                .segmentsSearched(searcher.getIndexReader().leaves().size())
+                .hitsCollected(hitsCollected)
+                .storedFieldBytes(storedFieldBytes)
+                .facetDimensions(facetDimensions)
+                .rewrittenQuery(searcher.rewrite(luceneQuery).toString())
+                .build();
+    }
+
+    private void release(final IndexSearcher searcher) {
+        if (searcher != null) {
+            try {
+                searcherManager.release(searcher);
+            } catch (IOException e) {
+                LOGGER.warn("Error releasing IndexSearcher: " + e.getMessage(), e);
             }
         }
     }
@@ -399,24 +892,109 @@ public class LuceneService<QR extends QueryResult> {
             return;
         }
 
+        final FacetStateCache stateCache = facetStateCache;
+        final double samplingRate = getSamplingRate(facetsCollector);
+        final int limit = facetLimit;
+        final boolean compact = compactFacetResults;
         for (String facetField : facetFields) {
-            final List<FacetCount> facetResultCounts = new ArrayList<>();
-
             // TODO this will produce an exception if no documents were indexed with the field to facet on
             // java.lang.IllegalArgumentException: field "foo" was not indexed with SortedSetDocValues
             // at org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState.<init>(DefaultSortedSetDocValuesReaderState.java:72)
 
            if (facetsCollector.getMatchingDocs() != null && facetsCollector.getMatchingDocs().size() > 0) {
-                final SortedSetDocValuesReaderState state = new DefaultSortedSetDocValuesReaderState(indexSearcher.getIndexReader(), facetField);
-                final Facets facets = new SortedSetDocValuesFacetCounts(state, facetsCollector);
+                final SortedSetDocValuesReaderState state = stateCache == null
+                        ? new DefaultSortedSetDocValuesReaderState(indexSearcher.getIndexReader(), facetField)
+                        : stateCache.get(indexSearcher.getIndexReader(), facetField);
+
+                // both forms count into an int[] by ordinal, so no count is boxed
+                resultBuilder.addFacetResult(compact
+                        ? OrdinalFacetCounts.count(state, facetField, facetsCollector, limit, samplingRate)
+                        : OrdinalFacetCounts.countFacetCounts(state, facetField, facetsCollector, limit, samplingRate));
+                continue;
+            }
+            resultBuilder.addFacetResult(new FacetResult(facetField, Collections.emptyList(), samplingRate));
+        }
+    }
 
-                org.apache.lucene.facet.FacetResult result = facets.getTopChildren(10, facetField);
-                for (int i = 0; i < result.childCount; i++) {
-                    LabelAndValue lv = result.labelValues[i];
-                    facetResultCounts.add(new FacetCount(lv.label, lv.value.longValue()));
-                }
+    /**
+     * Counts the matching documents in each range of the range facets and adds them to the QueryResults builder.
+     *
+     * @param facetsCollector the FacetsCollector that was used for the search
+     * @param rangeFacets the range facets to count
+     * @param resultBuilder the QueryResults.Builder
+     * @throws IOException if an error occurs reading the doc values of a field
+     */
+    protected void processRangeFacetResults(final FacetsCollector facetsCollector, final List<RangeFacet> rangeFacets,
+                                            final QueryResults.Builder<QR> resultBuilder) throws IOException {
+        final double samplingRate = getSamplingRate(facetsCollector);
+        for (RangeFacet rangeFacet : rangeFacets) {
+            final List<RangeFacet.Range> ranges = rangeFacet.getRanges();
+            final LongRange[] longRanges = new LongRange[ranges.size()];
+            for (int i = 0; i < longRanges.length; i++) {
+                final RangeFacet.Range range = ranges.get(i);
+                longRanges[i] = new LongRange(range.getLabel(),
+                        range.getMin() == null ? Long.MIN_VALUE : range.getMin(),
+                        range.getMin() == null || range.isMinInclusive(),
+                        range.getMax() == null ? Long.MAX_VALUE : range.getMax(),
+                        range.getMax() == null || range.isMaxInclusive());
             }
-            resultBuilder.addFacetResult(new FacetResult(facetField, facetResultCounts));
+
+            // every range is counted from the NumericDocValues of the matching docs in a single pass
+            final String field = rangeFacet.getField().getName();
+            final int[] counts = new LongRangeCounts(field, facetsCollector, longRanges).getCounts();
+
+            // range results always have every range, in the order given
+            final List<FacetCount> facetResultCounts = new ArrayList<>(longRanges.length);
+            for (int i = 0; i < longRanges.length; i++) {
+                facetResultCounts.add(FacetCount.estimate(longRanges[i].label, counts[i], samplingRate));
+            }
+            resultBuilder.addFacetResult(new FacetResult(rangeFacet.getName(), facetResultCounts, samplingRate));
+        }
+    }
+
+    /**
+     * LongRangeFacetCounts that gives access to the count of each range, which getTopChildren boxes into a
+     * LabelAndValue per range.
+     */
+    private static final class LongRangeCounts extends LongRangeFacetCounts {
+
+        LongRangeCounts(final String field, final FacetsCollector facetsCollector, final LongRange... ranges)
+                throws IOException {
+            super(field, facetsCollector, ranges);
+        }
+
+        /**
+         * @return the count of each range, in the order the ranges were given
+         */
+        int[] getCounts() {
+            return counts;
+        }
+    }
+
+    /**
+     * Per-thread sets reused by performSearch, so a steady stream of searches doesn't allocate them for each query.
+     * A search started while another is in progress on the same thread, such as from a document transformer, gets
+     * its own sets.
+     */
+    private static final class SearchScratch {
+
+        private static final ThreadLocal<SearchScratch> SCRATCH = ThreadLocal.withInitial(SearchScratch::new);
+
+        private final Set<String> fieldsToLoad = new HashSet<>();
+        private final Set<String> facetFields = new HashSet<>();
+        private boolean inUse;
+
+        static SearchScratch acquire() {
+            final SearchScratch threadScratch = SCRATCH.get();
+            final SearchScratch scratch = threadScratch.inUse ? new SearchScratch() : threadScratch;
+            scratch.inUse = true;
+            return scratch;
+        }
+
+        void release() {
+            fieldsToLoad.clear();
+            facetFields.clear();
+            inUse = false;
         }
     }
 
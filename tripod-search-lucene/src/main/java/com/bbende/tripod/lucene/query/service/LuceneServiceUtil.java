@@ -20,12 +20,24 @@ import com.bbende.tripod.api.Field;
 import com.bbende.tripod.api.query.SortOrder;
 import com.bbende.tripod.lucene.SortTypeFactory;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.UnicodeUtil;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -36,6 +48,8 @@ import java.util.Set;
  */
 public class LuceneServiceUtil {
 
+    static final int[] NO_DOCS = new int[0];
+
     /**
      * Converts the Tripod Sort clauses to a Lucene Sort instance.
      *
@@ -75,4 +89,87 @@ public class LuceneServiceUtil {
         }
     }
 
+    /**
+     * @param doc a loaded Document
+     * @return the approximate number of bytes of stored values in the Document
+     */
+    public static long getStoredBytes(final Document doc) {
+        long bytes = 0;
+        for (IndexableField field : doc.getFields()) {
+            final BytesRef binaryValue = field.binaryValue();
+            final String stringValue = field.stringValue();
+            if (binaryValue != null) {
+                bytes += binaryValue.length;
+            } else if (field.numericValue() != null) {
+                bytes += Long.BYTES;
+            } else if (stringValue != null) {
+                bytes += UnicodeUtil.calcUTF16toUTF8Length(stringValue, 0, stringValue.length());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Finds the live document with the given id by seeking the id term directly in each segment.
+     *
+     * @param reader the top-level IndexReader
+     * @param field the id field
+     * @param id the id to look up
+     * @param idTermsCache an optional cache of id postings per segment, may be null
+     * @return the global doc id of the first live document with the given id, or -1 if none exists
+     * @throws IOException if an error occurs seeking the id
+     */
+    public static int getLiveDoc(final IndexReader reader, final String field, final BytesRef id,
+                                 final IdTermsCache idTermsCache) throws IOException {
+        final List<LeafReaderContext> leaves = reader.leaves();
+
+        // newer segments are checked first since an updated document is most likely to be found there
+        for (int i = leaves.size() - 1; i >= 0; i--) {
+            final LeafReaderContext context = leaves.get(i);
+            final LeafReader leafReader = context.reader();
+            final Bits liveDocs = leafReader.getLiveDocs();
+
+            final int[] docs = idTermsCache == null
+                    ? getDocs(leafReader, field, id) : idTermsCache.getDocs(leafReader, field, id);
+
+            for (int doc : docs) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    return context.docBase + doc;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param reader a segment reader
+     * @param field the id field
+     * @param id the id to look up
+     * @return the segment doc ids having the given id, including deleted docs, or an empty array
+     * @throws IOException if an error occurs seeking the id
+     */
+    public static int[] getDocs(final LeafReader reader, final String field, final BytesRef id) throws IOException {
+        final Terms terms = reader.terms(field);
+        if (terms == null) {
+            return NO_DOCS;
+        }
+
+        final TermsEnum termsEnum = terms.iterator();
+        if (!termsEnum.seekExact(id)) {
+            return NO_DOCS;
+        }
+
+        int[] docs = new int[1];
+        int count = 0;
+
+        final PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+            if (count == docs.length) {
+                docs = Arrays.copyOf(docs, count * 2);
+            }
+            docs[count++] = doc;
+        }
+        return count == docs.length ? docs : Arrays.copyOf(docs, count);
+    }
+
 }
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import com.bbende.tripod.api.Field;
+import com.bbende.tripod.api.query.FilterQuery;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.ResultMode;
+import com.bbende.tripod.api.query.result.FacetResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryException;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the facet counts of match-all and of configured combinations of filter queries for the current searcher of a
+ * SearcherManager, so landing pages that only filter on facet values don't count every matching document per query.
+ *
+ * The counts are computed in the background once for each new searcher, so register with SearcherManager.addListener
+ * and set on the LuceneService that should serve them, which also counts them. A query is served from the counts when
+ * its query string is *:*, it has no range facets, its facet fields were all materialized, and its filter queries,
+ * in any order, are one of the combinations. Any other query, or any query against a searcher whose counts aren't
+ * computed yet, is counted as usual.
+ *
+ * @author bbende
+ */
+public class MaterializedFacets implements ReferenceManager.RefreshListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaterializedFacets.class);
+
+    static final String MATCH_ALL = "*:*";
+
+    private final SearcherManager searcherManager;
+    private final Executor executor;
+    private final List<Field> facetFields;
+    private final Set<String> facetFieldNames;
+    private final List<Set<FilterQuery>> combinations;
+
+    private final ConcurrentMap<IndexReader,Map<Set<FilterQuery>,Counts>> counts = new ConcurrentHashMap<>();
+    private final Set<IndexReader> materializing = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private volatile Counter counter;
+    private volatile long lastMaterializingNanos;
+
+    private MaterializedFacets(final Builder builder) {
+        this.searcherManager = builder.searcherManager;
+        this.executor = builder.executor;
+        this.facetFields = Collections.unmodifiableList(new ArrayList<>(builder.facetFields));
+        this.combinations = Collections.unmodifiableList(new ArrayList<>(builder.combinations));
+
+        final Set<String> names = new HashSet<>();
+        facetFields.stream().forEach(f -> names.add(f.getName()));
+        this.facetFieldNames = Collections.unmodifiableSet(names);
+    }
+
+    @Override
+    public void beforeRefresh() {
+
+    }
+
+    @Override
+    public void afterRefresh(final boolean didRefresh) {
+        if (didRefresh) {
+            materialize();
+        }
+    }
+
+    /**
+     * Computes the counts for the current searcher on the executor, unless they were already computed.
+     */
+    public void materialize() {
+        if (counter == null) {
+            return;
+        }
+        executor.execute(this::materializeCurrent);
+    }
+
+    private void materializeCurrent() {
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            materialize(searcher);
+        } catch (IOException e) {
+            LOGGER.warn("Error acquiring searcher to materialize facets: " + e.getMessage(), e);
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    LOGGER.warn("Error releasing IndexSearcher: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void materialize(final IndexSearcher searcher) {
+        final IndexReader reader = searcher.getIndexReader();
+        final Counter currentCounter = counter;
+        if (currentCounter == null || counts.containsKey(reader) || !materializing.add(reader)) {
+            return;
+        }
+
+        try {
+            final long startNanos = System.nanoTime();
+            final Map<Set<FilterQuery>,Counts> readerCounts = new HashMap<>();
+
+            for (Set<FilterQuery> combination : combinations) {
+                final Query query = new Query(MATCH_ALL);
+                query.setResultMode(ResultMode.FACETS);
+                query.setFacetFields(facetFields);
+                query.setFilterQueries(new ArrayList<>(combination));
+
+                try {
+                    final QueryResults<?> results = currentCounter.count(searcher, query);
+                    if (!results.isPartialResults()) {
+                        readerCounts.put(combination, new Counts(results));
+                    }
+                } catch (QueryException | RuntimeException e) {
+                    LOGGER.warn("Error materializing facets for " + combination + ": " + e.getMessage(), e);
+                }
+            }
+
+            // the searcher holds a reference to the reader, so it can't have closed before the listener is added
+            counts.put(reader, Collections.unmodifiableMap(readerCounts));
+            reader.addReaderClosedListener(closedReader -> counts.remove(closedReader));
+
+            this.lastMaterializingNanos = System.nanoTime() - startNanos;
+            LOGGER.debug("Materialized " + readerCounts.size() + " facet combinations in "
+                    + TimeUnit.NANOSECONDS.toMillis(lastMaterializingNanos) + " ms");
+        } finally {
+            materializing.remove(reader);
+        }
+    }
+
+    /**
+     * @param reader the top-level reader of the searcher performing the query
+     * @param query the query
+     * @return the materialized counts that answer the query, or null if the query has to be counted
+     */
+    public Counts get(final IndexReader reader, final Query query) {
+        Validate.notNull(reader);
+        Validate.notNull(query);
+
+        if (!MATCH_ALL.equals(StringUtils.trim(query.getQuery()))) {
+            return null;
+        }
+        if (query.getRangeFacets() != null && !query.getRangeFacets().isEmpty()) {
+            return null;
+        }
+        if (query.getFacetFields() != null
+                && !query.getFacetFields().stream().allMatch(f -> facetFieldNames.contains(f.getName()))) {
+            return null;
+        }
+
+        final Set<FilterQuery> filterQueries = query.getFilterQueries() == null
+                ? Collections.emptySet() : new HashSet<>(query.getFilterQueries());
+
+        // multi-select counts each filtered field without its own filters, which is only the same for match-all
+        if (query.isMultiSelectFacets() && !filterQueries.isEmpty()) {
+            return null;
+        }
+
+        final Map<Set<FilterQuery>,Counts> readerCounts = counts.get(reader);
+        return readerCounts == null ? null : readerCounts.get(filterQueries);
+    }
+
+    /**
+     * @param counter the counter that computes the counts of each combination, set by the LuceneService
+     */
+    void setCounter(final Counter counter) {
+        this.counter = counter;
+    }
+
+    /**
+     * @return the number of searchers with materialized counts
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * @return the time spent computing the counts of the last searcher
+     */
+    public long getLastMaterializingNanos() {
+        return lastMaterializingNanos;
+    }
+
+    /**
+     * Counts a facet-only query against a searcher.
+     */
+    interface Counter {
+
+        QueryResults<?> count(IndexSearcher searcher, Query query) throws QueryException;
+
+    }
+
+    /**
+     * The total hits and facet results of one combination of filter queries.
+     */
+    public static class Counts {
+
+        private final long totalHits;
+        private final Map<String,FacetResult> facetResults;
+
+        Counts(final QueryResults<?> results) {
+            this.totalHits = results.getTotalResults();
+
+            final Map<String,FacetResult> resultsByField = new HashMap<>();
+            results.getFacetResults().stream().forEach(fr -> resultsByField.put(fr.getField(), fr));
+            this.facetResults = Collections.unmodifiableMap(resultsByField);
+        }
+
+        public long getTotalHits() {
+            return totalHits;
+        }
+
+        /**
+         * @param field the name of a materialized facet field
+         * @return the facet result of the field
+         */
+        public FacetResult getFacetResult(final String field) {
+            return facetResults.get(field);
+        }
+
+    }
+
+    /**
+     * Builder for MaterializedFacets.
+     */
+    public static class Builder {
+        private final SearcherManager searcherManager;
+        private final Executor executor;
+        private final Set<Field> facetFields = new LinkedHashSet<>();
+        private final List<Set<FilterQuery>> combinations = new ArrayList<>();
+
+        /**
+         * @param searcherManager the SearcherManager to materialize the searchers of
+         * @param executor the executor to compute the counts on
+         */
+        public Builder(final SearcherManager searcherManager, final Executor executor) {
+            Validate.notNull(searcherManager);
+            Validate.notNull(executor);
+            this.searcherManager = searcherManager;
+            this.executor = executor;
+
+            // match-all is always materialized
+            this.combinations.add(Collections.emptySet());
+        }
+
+        /**
+         * @param facetFields the facet fields to count
+         * @return this builder
+         */
+        public Builder facetFields(Field... facetFields) {
+            Validate.notNull(facetFields);
+            for (Field facetField : facetFields) {
+                Validate.notNull(facetField);
+                this.facetFields.add(facetField);
+            }
+            return this;
+        }
+
+        /**
+         * @param filterQueries a combination of filter queries to count match-all with
+         * @return this builder
+         */
+        public Builder filters(FilterQuery... filterQueries) {
+            Validate.notEmpty(filterQueries);
+            final Set<FilterQuery> combination = Collections.unmodifiableSet(
+                    new HashSet<>(Arrays.asList(filterQueries)));
+            if (!combinations.contains(combination)) {
+                combinations.add(combination);
+            }
+            return this;
+        }
+
+        public MaterializedFacets build() {
+            Validate.notEmpty(facetFields, "At least one facet field is required");
+            return new MaterializedFacets(this);
+        }
+    }
+
+}
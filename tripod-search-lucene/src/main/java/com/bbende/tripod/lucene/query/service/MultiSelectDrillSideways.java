@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import org.apache.lucene.facet.DrillSideways;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.search.IndexSearcher;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DrillSideways that keeps the FacetsCollectors of a search so LuceneService can count them like any other facets.
+ *
+ * One search collects the hits and the facets of the docs matching every dimension of the DrillDownQuery, along with
+ * the facets of the docs matching all but one dimension for each dimension, which are the counts of that dimension
+ * as if it weren't filtered.
+ *
+ * @author bbende
+ */
+class MultiSelectDrillSideways extends DrillSideways {
+
+    private FacetsCollector drillDownCollector;
+    private final Map<String,FacetsCollector> drillSidewaysCollectors = new HashMap<>();
+
+    MultiSelectDrillSideways(final IndexSearcher searcher) {
+        // the facets are counted from the collectors rather than by DrillSideways, so no config or state is needed
+        super(searcher, new FacetsConfig(), (TaxonomyReader) null);
+    }
+
+    @Override
+    protected Facets buildFacetsResult(final FacetsCollector drillDowns, final FacetsCollector[] drillSideways,
+                                       final String[] drillSidewaysDims) {
+        this.drillDownCollector = drillDowns;
+        if (drillSideways != null) {
+            for (int i = 0; i < drillSideways.length; i++) {
+                drillSidewaysCollectors.put(drillSidewaysDims[i], drillSideways[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the collector of the docs matching the query and all of its dimensions
+     */
+    FacetsCollector getDrillDownCollector() {
+        return drillDownCollector;
+    }
+
+    /**
+     * @param dim a facet dimension
+     * @return the collector of the docs matching every dimension except the given one, or the drill-down collector
+     *         if the query doesn't filter on the dimension
+     */
+    FacetsCollector getFacetsCollector(final String dim) {
+        final FacetsCollector collector = drillSidewaysCollectors.get(dim);
+        return collector == null ? drillDownCollector : collector;
+    }
+
+}
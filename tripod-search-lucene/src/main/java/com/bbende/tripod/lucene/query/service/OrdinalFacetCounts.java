@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import com.bbende.tripod.api.query.result.CompactFacetResult;
+import com.bbende.tripod.api.query.result.FacetCount;
+import com.bbende.tripod.api.query.result.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts the values of a SortedSetDocValuesFacetField dimension into an array indexed by ordinal and keeps the top
+ * values, either as a CompactFacetResult, so no object is created per value until a label or FacetCount is accessed,
+ * or as a FacetResult with a FacetCount per top value. Unlike SortedSetDocValuesFacetCounts, no count is boxed.
+ *
+ * The order is the same as SortedSetDocValuesFacetCounts, highest count first and lowest ordinal first among equal
+ * counts. The label bytes are copied while the searcher is still acquired, so the result can outlive it.
+ *
+ * @author bbende
+ */
+final class OrdinalFacetCounts {
+
+    private OrdinalFacetCounts() {
+
+    }
+
+    /**
+     * @param state the state of the facet field
+     * @param dim the dimension to count
+     * @param facetsCollector the FacetsCollector that was used for the search
+     * @param limit the maximum number of values to return
+     * @param samplingRate the sampling rate of the FacetsCollector
+     * @return the top values of the dimension
+     * @throws IOException if an error occurs reading the doc values
+     * @throws IllegalArgumentException if the dimension wasn't indexed
+     */
+    static CompactFacetResult count(final SortedSetDocValuesReaderState state, final String dim,
+                                    final FacetsCollector facetsCollector, final int limit,
+                                    final double samplingRate) throws IOException {
+        final SortedSetDocValuesReaderState.OrdRange ordRange = getOrdRange(state, dim);
+        final SortedSetDocValues dv = state.getDocValues();
+        final int[] counts = countOrdinals(state, dv, ordRange, facetsCollector);
+        final int[] top = getTopOrdinals(counts, limit);
+
+        final int prefixLength = getPrefixLength(dim);
+        final CompactFacetResult.Builder builder = new CompactFacetResult.Builder(dim, top.length, samplingRate);
+        for (int ord : top) {
+            final BytesRef label = dv.lookupOrd(ordRange.start + ord);
+            builder.add(label.bytes, label.offset + prefixLength, label.length - prefixLength, counts[ord]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Same as count, but returns a FacetResult with a FacetCount for each of the top values.
+     *
+     * @param state the state of the facet field
+     * @param dim the dimension to count
+     * @param facetsCollector the FacetsCollector that was used for the search
+     * @param limit the maximum number of values to return
+     * @param samplingRate the sampling rate of the FacetsCollector
+     * @return the top values of the dimension
+     * @throws IOException if an error occurs reading the doc values
+     * @throws IllegalArgumentException if the dimension wasn't indexed
+     */
+    static FacetResult countFacetCounts(final SortedSetDocValuesReaderState state, final String dim,
+                                        final FacetsCollector facetsCollector, final int limit,
+                                        final double samplingRate) throws IOException {
+        final SortedSetDocValuesReaderState.OrdRange ordRange = getOrdRange(state, dim);
+        final SortedSetDocValues dv = state.getDocValues();
+        final int[] counts = countOrdinals(state, dv, ordRange, facetsCollector);
+        final int[] top = getTopOrdinals(counts, limit);
+
+        final int prefixLength = getPrefixLength(dim);
+        final List<FacetCount> facetCounts = new ArrayList<>(top.length);
+        for (int ord : top) {
+            final BytesRef label = dv.lookupOrd(ordRange.start + ord);
+            final String value = new String(label.bytes, label.offset + prefixLength, label.length - prefixLength,
+                    StandardCharsets.UTF_8);
+            facetCounts.add(FacetCount.estimate(value, counts[ord], samplingRate));
+        }
+        return new FacetResult(dim, facetCounts, samplingRate);
+    }
+
+    private static SortedSetDocValuesReaderState.OrdRange getOrdRange(final SortedSetDocValuesReaderState state,
+                                                                      final String dim) {
+        final SortedSetDocValuesReaderState.OrdRange ordRange = state.getOrdRange(dim);
+        if (ordRange == null) {
+            throw new IllegalArgumentException("dimension \"" + dim + "\" was not indexed");
+        }
+        return ordRange;
+    }
+
+    /**
+     * Labels are stored as dim + delimiter + value, and only the value is kept.
+     */
+    private static int getPrefixLength(final String dim) {
+        return dim.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    /**
+     * @return the counts of the ordinals of the dimension, offset by the start of its range
+     */
+    private static int[] countOrdinals(final SortedSetDocValuesReaderState state, final SortedSetDocValues dv,
+                                       final SortedSetDocValuesReaderState.OrdRange ordRange,
+                                       final FacetsCollector facetsCollector) throws IOException {
+        final MultiDocValues.OrdinalMap ordinalMap = dv instanceof MultiDocValues.MultiSortedSetDocValues
+                ? ((MultiDocValues.MultiSortedSetDocValues) dv).mapping : null;
+
+        final int[] counts = new int[ordRange.end - ordRange.start + 1];
+
+        for (FacetsCollector.MatchingDocs hits : facetsCollector.getMatchingDocs()) {
+            if (ReaderUtil.getTopLevelContext(hits.context).reader() != state.getReader()) {
+                throw new IllegalStateException("the SortedSetDocValuesReaderState was created with a different "
+                        + "reader than the one the FacetsCollector searched");
+            }
+
+            final SortedSetDocValues segValues = hits.context.reader().getSortedSetDocValues(state.getField());
+            final DocIdSetIterator docs = hits.bits.iterator();
+            if (segValues == null || docs == null) {
+                continue;
+            }
+
+            final LongValues globalOrds = ordinalMap == null ? null : ordinalMap.getGlobalOrds(hits.context.ord);
+            for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                segValues.setDocument(doc);
+                for (long ord = segValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = segValues.nextOrd()) {
+                    final long globalOrd = globalOrds == null ? ord : globalOrds.get(ord);
+                    if (globalOrd >= ordRange.start && globalOrd <= ordRange.end) {
+                        counts[(int) (globalOrd - ordRange.start)]++;
+                    }
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Selects the ordinals with the highest non-zero counts with a heap of ordinals, worst at the root.
+     *
+     * @return the selected ordinals, best first
+     */
+    static int[] getTopOrdinals(final int[] counts, final int limit) {
+        final int[] heap = new int[Math.min(limit, counts.length)];
+        int size = 0;
+
+        for (int ord = 0; ord < counts.length; ord++) {
+            if (counts[ord] == 0) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = ord;
+                siftUp(heap, size++, counts);
+            } else if (size > 0 && counts[ord] > counts[heap[0]]) {
+                // ordinals are visited in order, so an equal count never replaces a lower ordinal
+                heap[0] = ord;
+                siftDown(heap, size, counts);
+            }
+        }
+
+        // removing the worst to the end of the array leaves the best first
+        final int[] top = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            top[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, counts);
+        }
+        return top;
+    }
+
+    private static boolean isWorse(final int ord, final int other, final int[] counts) {
+        return counts[ord] < counts[other] || (counts[ord] == counts[other] && ord > other);
+    }
+
+    private static void siftUp(final int[] heap, int i, final int[] counts) {
+        final int ord = heap[i];
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (!isWorse(ord, heap[parent], counts)) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = ord;
+    }
+
+    private static void siftDown(final int[] heap, final int size, final int[] counts) {
+        if (size == 0) {
+            return;
+        }
+
+        final int ord = heap[0];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && isWorse(heap[child + 1], heap[child], counts)) {
+                child++;
+            }
+            if (!isWorse(heap[child], ord, counts)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = ord;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import com.bbende.tripod.api.query.ImmutableQuery;
+import com.bbende.tripod.api.query.Query;
+import org.apache.commons.lang.Validate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the most recent queries performed by a LuceneService, for replaying against new searchers.
+ *
+ * The log holds the last capacity queries. Equivalent queries are recognized through their canonical ImmutableQuery,
+ * so the queries to replay can be ranked by how often they appear in the log.
+ *
+ * @author bbende
+ */
+public class QueryLog {
+
+    private final ImmutableQuery[] queries;
+
+    // guarded by this
+    private int next;
+    private int size;
+
+    /**
+     * @param capacity the number of recent queries to keep
+     */
+    public QueryLog(final int capacity) {
+        Validate.isTrue(capacity > 0);
+        this.queries = new ImmutableQuery[capacity];
+    }
+
+    /**
+     * @param query a query that was performed
+     */
+    public void record(final Query query) {
+        Validate.notNull(query);
+        final ImmutableQuery immutableQuery = ImmutableQuery.copyOf(query);
+
+        synchronized (this) {
+            queries[next] = immutableQuery;
+            next = (next + 1) % queries.length;
+            size = Math.min(size + 1, queries.length);
+        }
+    }
+
+    /**
+     * @param maxQueries the maximum number of queries to return
+     * @return the distinct queries in the log, most frequent first and most recent first among equally frequent
+     */
+    public List<ImmutableQuery> getTopQueries(final int maxQueries) {
+        Validate.isTrue(maxQueries >= 0);
+
+        final List<ImmutableQuery> recent = new ArrayList<>();
+        synchronized (this) {
+            for (int i=1; i <= size; i++) {
+                recent.add(queries[(next - i + queries.length) % queries.length]);
+            }
+        }
+
+        // insertion order is most recent first, and the sort below is stable
+        final Map<ImmutableQuery,Integer> counts = new LinkedHashMap<>();
+        for (ImmutableQuery query : recent) {
+            counts.merge(query, 1, Integer::sum);
+        }
+
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<ImmutableQuery,Integer>comparingByValue(Comparator.reverseOrder()))
+                .limit(maxQueries)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+}
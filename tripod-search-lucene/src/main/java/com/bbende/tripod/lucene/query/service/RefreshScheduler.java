@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import com.bbende.tripod.api.metrics.Histogram;
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Refreshes any number of SearcherManagers from a small shared pool of threads.
+ *
+ * Each registered SearcherManager is checked for changes on its own interval, and is only refreshed when the
+ * searcher is no longer current. The interval adapts to the index:
+ *
+ * - when a check finds no changes the interval doubles, up to the max interval
+ * - when a check finds changes the interval halves, down to the min interval
+ * - the interval is never less than the cost factor times the duration of the last refresh, so expensive refreshes,
+ *   such as ones that warm the new searcher, can't take up more than a fraction of a thread
+ *
+ * Checks of the same SearcherManager never overlap. A refresh that blocks only delays the other SearcherManagers
+ * when all threads are busy.
+ *
+ * @author bbende
+ */
+public class RefreshScheduler implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshScheduler.class);
+
+    private final ScheduledExecutorService executorService;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final int costFactor;
+
+    private final Set<Registration> registrations = ConcurrentHashMap.newKeySet();
+
+    private RefreshScheduler(final Builder builder) {
+        Validate.isTrue(builder.minIntervalNanos <= builder.maxIntervalNanos,
+                "Min interval must not be greater than max interval");
+        this.minIntervalNanos = builder.minIntervalNanos;
+        this.maxIntervalNanos = builder.maxIntervalNanos;
+        this.costFactor = builder.costFactor;
+        this.executorService = Executors.newScheduledThreadPool(builder.threads, new RefreshThreadFactory());
+    }
+
+    /**
+     * Starts refreshing the given SearcherManager, first checking it after the min interval.
+     *
+     * @param searcherManager the SearcherManager to refresh
+     * @return the registration, to close when the SearcherManager should no longer be refreshed
+     */
+    public Registration register(final SearcherManager searcherManager) {
+        Validate.notNull(searcherManager);
+        Validate.isTrue(!executorService.isShutdown(), "RefreshScheduler is closed");
+
+        final Registration registration = new Registration(searcherManager);
+        registrations.add(registration);
+        registration.schedule();
+        return registration;
+    }
+
+    /**
+     * @return the number of registered SearcherManagers
+     */
+    public int size() {
+        return registrations.size();
+    }
+
+    /**
+     * Stops refreshing all SearcherManagers, waiting for any refresh in progress to complete.
+     */
+    @Override
+    public void close() {
+        for (Registration registration : registrations) {
+            registration.close();
+        }
+
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+                if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
+                    LOGGER.error("Pool did not terminate");
+                }
+            }
+        } catch (InterruptedException ie) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A SearcherManager registered with a RefreshScheduler.
+     */
+    public final class Registration implements Runnable, Closeable {
+
+        private final SearcherManager searcherManager;
+
+        private final Histogram refreshLag = new Histogram();
+        private final Histogram refreshDuration = new Histogram();
+        private final LongAdder checkCount = new LongAdder();
+        private final LongAdder refreshCount = new LongAdder();
+        private final LongAdder errorCount = new LongAdder();
+
+        // only changed by the check in progress, which never overlaps another check
+        private volatile long intervalNanos = minIntervalNanos;
+        private volatile long lastCurrentNanos = System.nanoTime();
+
+        // guarded by this
+        private ScheduledFuture<?> future;
+        private boolean closed;
+
+        private Registration(final SearcherManager searcherManager) {
+            this.searcherManager = searcherManager;
+        }
+
+        @Override
+        public void run() {
+            if (isClosed()) {
+                return;
+            }
+
+            checkCount.increment();
+            final long checkNanos = System.nanoTime();
+            try {
+                if (searcherManager.isSearcherCurrent()) {
+                    lastCurrentNanos = checkNanos;
+                    intervalNanos = Math.min(maxIntervalNanos, intervalNanos * 2);
+                } else {
+                    searcherManager.maybeRefreshBlocking();
+                    final long endNanos = System.nanoTime();
+                    final long durationNanos = endNanos - checkNanos;
+
+                    refreshCount.increment();
+                    refreshDuration.record(durationNanos);
+                    refreshLag.record(endNanos - lastCurrentNanos);
+
+                    // changes made after the refresh started may not be visible yet
+                    lastCurrentNanos = checkNanos;
+
+                    final long adaptedNanos = Math.max(intervalNanos / 2, durationNanos * costFactor);
+                    intervalNanos = Math.min(maxIntervalNanos, Math.max(minIntervalNanos, adaptedNanos));
+                }
+            } catch (AlreadyClosedException e) {
+                LOGGER.warn("SearcherManager was closed without closing its registration, no longer refreshing");
+                close();
+                return;
+            } catch (IOException | RuntimeException e) {
+                errorCount.increment();
+                LOGGER.warn("Error refreshing SearcherManager: " + e.getMessage(), e);
+            }
+
+            schedule();
+        }
+
+        private synchronized void schedule() {
+            if (!closed) {
+                future = executorService.schedule(this, intervalNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * @return the statistics of refreshing the SearcherManager
+         */
+        public RefreshStats getStats() {
+            return new RefreshStats(intervalNanos, checkCount.sum(), refreshCount.sum(), errorCount.sum(),
+                    refreshLag.getSnapshot(), refreshDuration.getSnapshot());
+        }
+
+        public SearcherManager getSearcherManager() {
+            return searcherManager;
+        }
+
+        /**
+         * Stops refreshing the SearcherManager. A refresh in progress is allowed to complete.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+            registrations.remove(this);
+        }
+    }
+
+    /**
+     * Creates named daemon threads.
+     */
+    private static class RefreshThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "tripod-refresh-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Builder for RefreshScheduler.
+     */
+    public static class Builder {
+        private int threads = 1;
+        private long minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private long maxIntervalNanos = TimeUnit.SECONDS.toNanos(10);
+        private int costFactor = 10;
+
+        /**
+         * @param threads the number of threads shared by all registered SearcherManagers
+         * @return this builder
+         */
+        public Builder threads(int threads) {
+            Validate.isTrue(threads > 0);
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param minInterval the shortest time between checks, used while the index is changing
+         * @param unit the unit of the interval
+         * @return this builder
+         */
+        public Builder minInterval(long minInterval, TimeUnit unit) {
+            Validate.isTrue(minInterval > 0);
+            Validate.notNull(unit);
+            this.minIntervalNanos = unit.toNanos(minInterval);
+            return this;
+        }
+
+        /**
+         * @param maxInterval the longest time between checks, reached while the index is not changing
+         * @param unit the unit of the interval
+         * @return this builder
+         */
+        public Builder maxInterval(long maxInterval, TimeUnit unit) {
+            Validate.isTrue(maxInterval > 0);
+            Validate.notNull(unit);
+            this.maxIntervalNanos = unit.toNanos(maxInterval);
+            return this;
+        }
+
+        /**
+         * @param costFactor the minimum ratio of the interval to the duration of the last refresh
+         * @return this builder
+         */
+        public Builder costFactor(int costFactor) {
+            Validate.isTrue(costFactor > 0);
+            this.costFactor = costFactor;
+            return this;
+        }
+
+        public RefreshScheduler build() {
+            return new RefreshScheduler(this);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import com.bbende.tripod.api.metrics.Histogram;
+
+/**
+ * A point-in-time snapshot of the statistics of a SearcherManager registered with a RefreshScheduler.
+ *
+ * @author bbende
+ */
+public class RefreshStats {
+
+    private final long intervalNanos;
+    private final long checkCount;
+    private final long refreshCount;
+    private final long errorCount;
+    private final Histogram.Snapshot refreshLag;
+    private final Histogram.Snapshot refreshDuration;
+
+    public RefreshStats(final long intervalNanos, final long checkCount, final long refreshCount,
+                        final long errorCount, final Histogram.Snapshot refreshLag,
+                        final Histogram.Snapshot refreshDuration) {
+        this.intervalNanos = intervalNanos;
+        this.checkCount = checkCount;
+        this.refreshCount = refreshCount;
+        this.errorCount = errorCount;
+        this.refreshLag = refreshLag;
+        this.refreshDuration = refreshDuration;
+    }
+
+    /**
+     * @return the current time between checks for changes
+     */
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * @return the number of times the index was checked for changes
+     */
+    public long getCheckCount() {
+        return checkCount;
+    }
+
+    /**
+     * @return the number of checks that found changes and refreshed the searcher
+     */
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the nanos from the last time the searcher was known to be current until a refresh made it current
+     *         again, which is an upper bound on how long changes took to become visible
+     */
+    public Histogram.Snapshot getRefreshLag() {
+        return refreshLag;
+    }
+
+    /**
+     * @return the nanos taken by each refresh, including any warming by the SearcherFactory
+     */
+    public Histogram.Snapshot getRefreshDuration() {
+        return refreshDuration;
+    }
+
+    @Override
+    public String toString() {
+        return "RefreshStats[intervalNanos=" + intervalNanos + ", checks=" + checkCount
+                + ", refreshes=" + refreshCount + ", errors=" + errorCount
+                + ", lag=[" + refreshLag + "], duration=[" + refreshDuration + "]]";
+    }
+
+}
@@ -30,6 +30,9 @@ import java.util.concurrent.TimeUnit;
  *
  * A SearcherManagerRefresher should be used to refresh the SearcherManager when using a LuceneQueryService.
  *
+ * Each SearcherManagerRefresher uses its own thread, so a RefreshScheduler should be used instead when refreshing
+ * many SearcherManagers in the same JVM.
+ *
  * @author bbende
  */
 public class SearcherManagerRefresher {
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import com.bbende.tripod.api.index.IndexListener;
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.search.ReferenceManager;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Notifies IndexListeners whenever a SearcherManager opens a new searcher, which is when committed changes become
+ * visible to Lucene services.
+ *
+ * Register with SearcherManager.addListener, for example to invalidate a CachingQueryService.
+ *
+ * @author bbende
+ */
+public class SearcherRefreshNotifier implements ReferenceManager.RefreshListener {
+
+    private final List<IndexListener> listeners;
+
+    public SearcherRefreshNotifier(final IndexListener... listeners) {
+        Validate.notEmpty(listeners);
+        this.listeners = Arrays.asList(listeners);
+    }
+
+    @Override
+    public void beforeRefresh() {
+        for (IndexListener listener : listeners) {
+            listener.beforeCommit();
+        }
+    }
+
+    @Override
+    public void afterRefresh(final boolean didRefresh) {
+        if (!didRefresh) {
+            return;
+        }
+
+        for (IndexListener listener : listeners) {
+            listener.onCommit();
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.query.service;
+
+import com.bbende.tripod.api.Field;
+import com.bbende.tripod.api.query.ImmutableQuery;
+import com.bbende.tripod.api.query.service.QueryException;
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A SearcherFactory that warms each new searcher before the SearcherManager makes it visible.
+ *
+ * Warming first builds the facet states of the configured fields in the FacetStateCache, which must be the same cache
+ * given to the LuceneServices, and then replays the top queries of the QueryLog through the Warmer, which loads the
+ * doc values and fills the caches the queries need. Warming stops once the time budget is used up, and each replayed
+ * query is given the remaining budget as its time allowed.
+ *
+ * Since the SearcherManager is created with this factory before the services that use it, the Warmer is set after
+ * creating the services, usually as setWarmer(queryService::warm). Until then only facet states are warmed.
+ *
+ * @author bbende
+ */
+public class WarmingSearcherFactory extends SearcherFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmingSearcherFactory.class);
+
+    private final SearcherFactory searcherFactory;
+    private final QueryLog queryLog;
+    private final int maxQueries;
+    private final FacetStateCache facetStateCache;
+    private final List<Field> facetFields;
+    private final long timeBudgetNanos;
+
+    private volatile Warmer warmer;
+
+    private volatile int lastWarmedQueries;
+    private volatile long lastWarmingNanos;
+
+    private WarmingSearcherFactory(final Builder builder) {
+        this.searcherFactory = builder.searcherFactory;
+        this.queryLog = builder.queryLog;
+        this.maxQueries = builder.maxQueries;
+        this.facetStateCache = builder.facetStateCache;
+        this.facetFields = Collections.unmodifiableList(new ArrayList<>(builder.facetFields));
+        this.timeBudgetNanos = builder.timeBudgetNanos;
+        Validate.isTrue(facetFields.isEmpty() || facetStateCache != null,
+                "A FacetStateCache is required to warm facet fields");
+    }
+
+    @Override
+    public IndexSearcher newSearcher(final IndexReader reader, final IndexReader previousReader) throws IOException {
+        final IndexSearcher searcher = searcherFactory.newSearcher(reader, previousReader);
+
+        final long startNanos = System.nanoTime();
+        final long deadlineNanos = startNanos + timeBudgetNanos;
+
+        for (Field facetField : facetFields) {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                break;
+            }
+            try {
+                facetStateCache.get(reader, facetField.getName());
+            } catch (IllegalArgumentException e) {
+                LOGGER.debug("Could not warm facet field " + facetField.getName() + ": " + e.getMessage());
+            }
+        }
+
+        int warmedQueries = 0;
+        final Warmer currentWarmer = warmer;
+        if (currentWarmer != null && queryLog != null) {
+            for (ImmutableQuery query : queryLog.getTopQueries(maxQueries)) {
+                final long remainingNanos = deadlineNanos - System.nanoTime();
+                final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+                if (remainingMillis <= 0) {
+                    break;
+                }
+
+                try {
+                    currentWarmer.warm(searcher, new ImmutableQuery.Builder(query)
+                            .timeAllowed(remainingMillis)
+                            .profile(false)
+                            .build());
+                    warmedQueries++;
+                } catch (QueryException | RuntimeException e) {
+                    LOGGER.warn("Error warming searcher with " + query + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        this.lastWarmedQueries = warmedQueries;
+        this.lastWarmingNanos = System.nanoTime() - startNanos;
+        LOGGER.debug("Warmed searcher with " + warmedQueries + " queries in "
+                + TimeUnit.NANOSECONDS.toMillis(lastWarmingNanos) + " ms");
+
+        return searcher;
+    }
+
+    public Warmer getWarmer() {
+        return warmer;
+    }
+
+    /**
+     * @param warmer the warmer to replay queries with, or null to only warm facet states
+     */
+    public void setWarmer(Warmer warmer) {
+        this.warmer = warmer;
+    }
+
+    /**
+     * @return the number of queries replayed when warming the last searcher
+     */
+    public int getLastWarmedQueries() {
+        return lastWarmedQueries;
+    }
+
+    /**
+     * @return the time spent warming the last searcher
+     */
+    public long getLastWarmingNanos() {
+        return lastWarmingNanos;
+    }
+
+    /**
+     * Performs a query against a searcher that is being warmed.
+     */
+    public interface Warmer {
+
+        void warm(IndexSearcher searcher, ImmutableQuery query) throws QueryException;
+
+    }
+
+    /**
+     * Builder for WarmingSearcherFactory.
+     */
+    public static class Builder {
+        private SearcherFactory searcherFactory = new SearcherFactory();
+        private QueryLog queryLog;
+        private int maxQueries = 20;
+        private FacetStateCache facetStateCache;
+        private final List<Field> facetFields = new ArrayList<>();
+        private long timeBudgetNanos = TimeUnit.SECONDS.toNanos(5);
+
+        /**
+         * @param searcherFactory the factory to create searchers with before warming them
+         * @return this builder
+         */
+        public Builder searcherFactory(SearcherFactory searcherFactory) {
+            Validate.notNull(searcherFactory);
+            this.searcherFactory = searcherFactory;
+            return this;
+        }
+
+        /**
+         * @param queryLog the log of the queries to replay
+         * @param maxQueries the maximum number of queries to replay
+         * @return this builder
+         */
+        public Builder queryLog(QueryLog queryLog, int maxQueries) {
+            Validate.notNull(queryLog);
+            Validate.isTrue(maxQueries >= 0);
+            this.queryLog = queryLog;
+            this.maxQueries = maxQueries;
+            return this;
+        }
+
+        /**
+         * @param facetStateCache the cache shared with the LuceneServices
+         * @param facetFields the facet fields to build states for
+         * @return this builder
+         */
+        public Builder facetFields(FacetStateCache facetStateCache, Field... facetFields) {
+            Validate.notNull(facetStateCache);
+            Validate.notNull(facetFields);
+            this.facetStateCache = facetStateCache;
+            for (Field facetField : facetFields) {
+                Validate.notNull(facetField);
+                this.facetFields.add(facetField);
+            }
+            return this;
+        }
+
+        /**
+         * @param timeBudget the most time to spend warming each searcher
+         * @param unit the unit of the time budget
+         * @return this builder
+         */
+        public Builder timeBudget(long timeBudget, TimeUnit unit) {
+            Validate.isTrue(timeBudget > 0);
+            Validate.notNull(unit);
+            this.timeBudgetNanos = unit.toNanos(timeBudget);
+            return this;
+        }
+
+        public WarmingSearcherFactory build() {
+            return new WarmingSearcherFactory(this);
+        }
+    }
+
+}
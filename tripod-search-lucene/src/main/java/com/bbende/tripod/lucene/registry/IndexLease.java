@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.registry;
+
+import com.bbende.tripod.api.query.result.QueryResult;
+import com.bbende.tripod.lucene.query.service.LuceneQueryService;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.SearcherManager;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A lease on the open index of a tenant from an IndexRegistry.
+ *
+ * The index stays open until the lease is closed, so the query service, writer and SearcherManager must not be used
+ * after closing the lease.
+ *
+ * @author bbende
+ * @param <QR> the type of QueryResult of the query service
+ */
+public final class IndexLease<QR extends QueryResult> implements Closeable {
+
+    private final IndexRegistry<QR> registry;
+    private final String tenantId;
+    private final LuceneQueryService<QR> queryService;
+    private final IndexWriter indexWriter;
+    private final SearcherManager searcherManager;
+
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    IndexLease(final IndexRegistry<QR> registry, final String tenantId, final LuceneQueryService<QR> queryService,
+               final IndexWriter indexWriter, final SearcherManager searcherManager) {
+        this.registry = registry;
+        this.tenantId = tenantId;
+        this.queryService = queryService;
+        this.indexWriter = indexWriter;
+        this.searcherManager = searcherManager;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public LuceneQueryService<QR> getQueryService() {
+        return queryService;
+    }
+
+    public IndexWriter getIndexWriter() {
+        return indexWriter;
+    }
+
+    public SearcherManager getSearcherManager() {
+        return searcherManager;
+    }
+
+    /**
+     * Releases the lease. Closing a lease more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            registry.release(tenantId);
+        }
+    }
+
+}
@@ -0,0 +1,516 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.registry;
+
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.query.service.LuceneQueryService;
+import com.bbende.tripod.lucene.query.service.RefreshScheduler;
+import com.bbende.tripod.lucene.store.DirectoryFactory;
+import com.bbende.tripod.lucene.store.DirectoryStats;
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Opens the index of each tenant on first use and closes the least recently used indexes to stay within a budget.
+ *
+ * Each tenant has its own directory under the root path, holding an index that is opened as a Directory from the
+ * DirectoryFactory, an IndexWriter, a SearcherManager over the writer, and a LuceneQueryService from the
+ * QueryServiceFactory. All of them are used through an IndexLease:
+ *
+ * <pre>
+ *     try (IndexLease&lt;ExampleSummary&gt; lease = registry.acquire("tenant1")) {
+ *         results = lease.getQueryService().search(query);
+ *     }
+ * </pre>
+ *
+ * An index is never closed while it is leased, so the budget may be exceeded while every open index is in use, in
+ * which case the least recently used indexes are closed as their leases are released. The size of an index counted
+ * against the byte budget is measured when it is opened, and again after each refresh that opens a new searcher,
+ * since that is when new segments and merges become visible. A refresh only updates the size, and the indexes over
+ * the budget are closed on the next acquire or release.
+ *
+ * @author bbende
+ * @param <QR> the type of QueryResult of the query services
+ */
+public class IndexRegistry<QR extends QueryResult> implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexRegistry.class);
+
+    private static final Pattern TENANT_ID_PATTERN = Pattern.compile("[A-Za-z0-9_\\-]+");
+
+    private final Path rootPath;
+    private final DirectoryFactory directoryFactory;
+    private final Supplier<IndexWriterConfig> writerConfigSupplier;
+    private final SearcherFactory searcherFactory;
+    private final QueryServiceFactory<QR> queryServiceFactory;
+    private final RefreshScheduler refreshScheduler;
+    private final int maxOpenIndexes;
+    private final long maxOpenBytes;
+
+    // guarded by this, in order of least recently used
+    private final LinkedHashMap<String,TenantIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String,TenantIndex> closingIndexes = new HashMap<>();
+    private long openBytes;
+    private long openCount;
+    private long evictionCount;
+    private boolean closed;
+
+    private IndexRegistry(final Builder<QR> builder) {
+        this.rootPath = builder.rootPath;
+        this.directoryFactory = builder.directoryFactory;
+        this.writerConfigSupplier = builder.writerConfigSupplier;
+        this.searcherFactory = builder.searcherFactory;
+        this.queryServiceFactory = builder.queryServiceFactory;
+        this.refreshScheduler = builder.refreshScheduler;
+        this.maxOpenIndexes = builder.maxOpenIndexes;
+        this.maxOpenBytes = builder.maxOpenBytes;
+        Validate.notNull(rootPath, "Root path is required");
+        Validate.notNull(writerConfigSupplier, "IndexWriterConfig supplier is required");
+        Validate.notNull(queryServiceFactory, "QueryServiceFactory is required");
+    }
+
+    /**
+     * Leases the index of the given tenant, opening it if it isn't already open.
+     *
+     * @param tenantId the tenant, which may only contain letters, digits, underscores and hyphens
+     * @return the lease, which must be closed when the caller is done with the index
+     * @throws IOException if the index could not be opened
+     */
+    public IndexLease<QR> acquire(final String tenantId) throws IOException {
+        Validate.notNull(tenantId);
+        Validate.isTrue(TENANT_ID_PATTERN.matcher(tenantId).matches(), "Invalid tenant id: " + tenantId);
+
+        final TenantIndex index;
+        final TenantIndex closingIndex;
+        synchronized (this) {
+            Validate.isTrue(!closed, "IndexRegistry is closed");
+
+            TenantIndex existing = indexes.get(tenantId);
+            if (existing == null) {
+                existing = new TenantIndex(tenantId);
+                indexes.put(tenantId, existing);
+            }
+            index = existing;
+            index.refCount++;
+            closingIndex = closingIndexes.get(tenantId);
+        }
+
+        try {
+            // the previous IndexWriter of the tenant must release the write lock first
+            if (closingIndex != null) {
+                closingIndex.awaitClosed();
+            }
+            if (index.open()) {
+                synchronized (this) {
+                    index.counted = true;
+                    index.countedBytes = index.bytes;
+                    openBytes += index.countedBytes;
+                    openCount++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                index.refCount--;
+                if (index.refCount == 0 && indexes.get(tenantId) == index) {
+                    indexes.remove(tenantId);
+                }
+            }
+            throw e;
+        }
+
+        evict();
+        return new IndexLease<>(this, tenantId, index.queryService, index.indexWriter, index.searcherManager);
+    }
+
+    /**
+     * Searches the index of the given tenant.
+     *
+     * @param tenantId the tenant
+     * @param query the query
+     * @return the results
+     * @throws QueryException if the index could not be opened or the search failed
+     */
+    public QueryResults<QR> search(final String tenantId, final Query query) throws QueryException {
+        final IndexLease<QR> lease;
+        try {
+            lease = acquire(tenantId);
+        } catch (IOException e) {
+            throw new QueryException("Unable to open index for tenant " + tenantId, e);
+        }
+
+        try {
+            return lease.getQueryService().search(query);
+        } finally {
+            lease.close();
+        }
+    }
+
+    void release(final String tenantId) {
+        final List<TenantIndex> toClose = new ArrayList<>();
+        synchronized (this) {
+            final TenantIndex index = indexes.get(tenantId);
+            index.refCount--;
+            if (closed && index.refCount == 0) {
+                indexes.remove(tenantId);
+                uncount(index);
+                toClose.add(index);
+            }
+        }
+        closeAll(toClose);
+        evict();
+    }
+
+    private void evict() {
+        final List<TenantIndex> toClose = new ArrayList<>();
+        synchronized (this) {
+            final Iterator<TenantIndex> iter = indexes.values().iterator();
+            while ((indexes.size() > maxOpenIndexes || openBytes > maxOpenBytes) && iter.hasNext()) {
+                final TenantIndex index = iter.next();
+                if (index.refCount == 0 && index.isOpen()) {
+                    iter.remove();
+                    uncount(index);
+                    evictionCount++;
+                    closingIndexes.put(index.tenantId, index);
+                    toClose.add(index);
+                }
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Updates the size of an index counted against the byte budget, unless it was already closed.
+     */
+    private synchronized void recount(final TenantIndex index, final long bytes) {
+        if (index.counted) {
+            openBytes += bytes - index.countedBytes;
+            index.countedBytes = bytes;
+        }
+    }
+
+    /**
+     * Removes an index that is about to be closed from the byte budget, must be called while holding this.
+     */
+    private void uncount(final TenantIndex index) {
+        if (index.counted) {
+            openBytes -= index.countedBytes;
+            index.countedBytes = 0;
+            index.counted = false;
+        }
+    }
+
+    private void closeAll(final List<TenantIndex> toClose) {
+        for (TenantIndex index : toClose) {
+            index.close();
+            synchronized (this) {
+                closingIndexes.remove(index.tenantId, index);
+            }
+        }
+    }
+
+    /**
+     * @return the current number of open indexes and their size
+     */
+    public synchronized IndexRegistryStats getStats() {
+        int leasedIndexes = 0;
+        for (TenantIndex index : indexes.values()) {
+            if (index.refCount > 0) {
+                leasedIndexes++;
+            }
+        }
+        return new IndexRegistryStats(indexes.size(), leasedIndexes, openBytes, openCount, evictionCount);
+    }
+
+    /**
+     * @param tenantId a tenant
+     * @return true if the index of the tenant is currently open
+     */
+    public synchronized boolean isOpen(final String tenantId) {
+        // iterating doesn't change the access order, unlike get
+        for (TenantIndex index : indexes.values()) {
+            if (index.tenantId.equals(tenantId)) {
+                return index.isOpen();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes every index that isn't leased. Leased indexes are closed when their leases are released, and no new
+     * leases can be acquired.
+     */
+    @Override
+    public void close() {
+        final List<TenantIndex> toClose = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            final Iterator<TenantIndex> iter = indexes.values().iterator();
+            while (iter.hasNext()) {
+                final TenantIndex index = iter.next();
+                if (index.refCount == 0) {
+                    iter.remove();
+                    uncount(index);
+                    toClose.add(index);
+                }
+            }
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * The open index of a tenant.
+     */
+    private final class TenantIndex {
+
+        private final String tenantId;
+        private final CountDownLatch closedLatch = new CountDownLatch(1);
+
+        // guarded by IndexRegistry.this
+        private int refCount;
+        private boolean counted;
+        private long countedBytes;
+
+        // written once by open() while holding this, before being published to leases
+        private volatile boolean open;
+        private Directory directory;
+        private IndexWriter indexWriter;
+        private SearcherManager searcherManager;
+        private LuceneQueryService<QR> queryService;
+        private RefreshScheduler.Registration registration;
+        private long bytes;
+
+        TenantIndex(final String tenantId) {
+            this.tenantId = tenantId;
+        }
+
+        /**
+         * @return true if this call opened the index, false if it was already open
+         */
+        synchronized boolean open() throws IOException {
+            if (open) {
+                return false;
+            }
+
+            try {
+                directory = directoryFactory.open(rootPath.resolve(tenantId));
+                indexWriter = new IndexWriter(directory, writerConfigSupplier.get());
+                searcherManager = new SearcherManager(indexWriter, searcherFactory);
+                searcherManager.addListener(new ReferenceManager.RefreshListener() {
+                    @Override
+                    public void beforeRefresh() {
+
+                    }
+
+                    @Override
+                    public void afterRefresh(final boolean didRefresh) {
+                        if (didRefresh) {
+                            remeasure();
+                        }
+                    }
+                });
+                queryService = queryServiceFactory.create(tenantId, searcherManager);
+                if (refreshScheduler != null) {
+                    registration = refreshScheduler.register(searcherManager);
+                }
+
+                final DirectoryStats stats = directoryFactory.getStats(directory);
+                bytes = stats.getMappedBytes() + stats.getCachedBytes();
+            } catch (IOException | RuntimeException e) {
+                closeResources();
+                throw e;
+            }
+
+            open = true;
+            LOGGER.debug("Opened index for tenant " + tenantId);
+            return true;
+        }
+
+        boolean isOpen() {
+            return open;
+        }
+
+        private void remeasure() {
+            try {
+                final DirectoryStats stats = directoryFactory.getStats(directory);
+                recount(this, stats.getMappedBytes() + stats.getCachedBytes());
+            } catch (AlreadyClosedException e) {
+                // closed by an eviction racing with the refresh, and no longer counted
+            } catch (IOException e) {
+                LOGGER.warn("Error measuring index for tenant " + tenantId + ": " + e.getMessage(), e);
+            }
+        }
+
+        void awaitClosed() throws IOException {
+            try {
+                closedLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for index of tenant " + tenantId + " to close", e);
+            }
+        }
+
+        synchronized void close() {
+            try {
+                closeResources();
+                open = false;
+                LOGGER.debug("Closed index for tenant " + tenantId);
+            } finally {
+                closedLatch.countDown();
+            }
+        }
+
+        private void closeResources() {
+            if (registration != null) {
+                registration.close();
+            }
+            try {
+                IOUtils.close(searcherManager, indexWriter, directory);
+            } catch (IOException e) {
+                LOGGER.warn("Error closing index for tenant " + tenantId + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Creates the LuceneQueryService of a tenant when its index is opened.
+     *
+     * @param <QR> the type of QueryResult
+     */
+    public interface QueryServiceFactory<QR extends QueryResult> {
+
+        LuceneQueryService<QR> create(String tenantId, SearcherManager searcherManager);
+
+    }
+
+    /**
+     * Builder for IndexRegistry.
+     *
+     * @param <QR> the type of QueryResult
+     */
+    public static class Builder<QR extends QueryResult> {
+        private Path rootPath;
+        private DirectoryFactory directoryFactory = new DirectoryFactory.Builder().build();
+        private Supplier<IndexWriterConfig> writerConfigSupplier;
+        private SearcherFactory searcherFactory;
+        private QueryServiceFactory<QR> queryServiceFactory;
+        private RefreshScheduler refreshScheduler;
+        private int maxOpenIndexes = 100;
+        private long maxOpenBytes = Long.MAX_VALUE;
+
+        /**
+         * @param rootPath the directory containing one index directory per tenant
+         * @return this builder
+         */
+        public Builder<QR> rootPath(Path rootPath) {
+            Validate.notNull(rootPath);
+            this.rootPath = rootPath;
+            return this;
+        }
+
+        public Builder<QR> directoryFactory(DirectoryFactory directoryFactory) {
+            Validate.notNull(directoryFactory);
+            this.directoryFactory = directoryFactory;
+            return this;
+        }
+
+        /**
+         * @param writerConfigSupplier supplies a new IndexWriterConfig for each IndexWriter, since a config can't be
+         *                             shared between writers
+         * @return this builder
+         */
+        public Builder<QR> writerConfigSupplier(Supplier<IndexWriterConfig> writerConfigSupplier) {
+            Validate.notNull(writerConfigSupplier);
+            this.writerConfigSupplier = writerConfigSupplier;
+            return this;
+        }
+
+        /**
+         * @param searcherFactory the factory for the searchers of every SearcherManager, or null for the default
+         * @return this builder
+         */
+        public Builder<QR> searcherFactory(SearcherFactory searcherFactory) {
+            this.searcherFactory = searcherFactory;
+            return this;
+        }
+
+        public Builder<QR> queryServiceFactory(QueryServiceFactory<QR> queryServiceFactory) {
+            Validate.notNull(queryServiceFactory);
+            this.queryServiceFactory = queryServiceFactory;
+            return this;
+        }
+
+        /**
+         * @param refreshScheduler the scheduler to register each SearcherManager with while its index is open, or
+         *                         null when refreshing is left to the caller
+         * @return this builder
+         */
+        public Builder<QR> refreshScheduler(RefreshScheduler refreshScheduler) {
+            this.refreshScheduler = refreshScheduler;
+            return this;
+        }
+
+        /**
+         * @param maxOpenIndexes the most indexes to keep open, which bounds the open file handles
+         * @return this builder
+         */
+        public Builder<QR> maxOpenIndexes(int maxOpenIndexes) {
+            Validate.isTrue(maxOpenIndexes > 0);
+            this.maxOpenIndexes = maxOpenIndexes;
+            return this;
+        }
+
+        /**
+         * @param maxOpenBytes the most bytes of index files to keep open, which bounds the mapped memory
+         * @return this builder
+         */
+        public Builder<QR> maxOpenBytes(long maxOpenBytes) {
+            Validate.isTrue(maxOpenBytes > 0);
+            this.maxOpenBytes = maxOpenBytes;
+            return this;
+        }
+
+        public IndexRegistry<QR> build() {
+            return new IndexRegistry<>(this);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.registry;
+
+/**
+ * A point-in-time snapshot of the statistics of an IndexRegistry.
+ *
+ * @author bbende
+ */
+public class IndexRegistryStats {
+
+    private final int openIndexes;
+    private final int leasedIndexes;
+    private final long openBytes;
+    private final long openCount;
+    private final long evictionCount;
+
+    public IndexRegistryStats(final int openIndexes, final int leasedIndexes, final long openBytes,
+                              final long openCount, final long evictionCount) {
+        this.openIndexes = openIndexes;
+        this.leasedIndexes = leasedIndexes;
+        this.openBytes = openBytes;
+        this.openCount = openCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * @return the number of indexes that are open or being opened
+     */
+    public int getOpenIndexes() {
+        return openIndexes;
+    }
+
+    /**
+     * @return the number of indexes with at least one lease
+     */
+    public int getLeasedIndexes() {
+        return leasedIndexes;
+    }
+
+    /**
+     * @return the size of the open indexes, as measured when each was opened
+     */
+    public long getOpenBytes() {
+        return openBytes;
+    }
+
+    /**
+     * @return the number of times an index was opened
+     */
+    public long getOpenCount() {
+        return openCount;
+    }
+
+    /**
+     * @return the number of times the least recently used index was closed to stay within the budget
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexRegistryStats[open=" + openIndexes + ", leased=" + leasedIndexes + ", openBytes=" + openBytes
+                + ", opens=" + openCount + ", evictions=" + evictionCount + "]";
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.store;
+
+import org.apache.commons.lang.Validate;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Opens index directories for the Lucene services.
+ *
+ * Indexes are opened with MMapDirectory, so the index lives in the OS page cache instead of the heap. Files with the
+ * preload extensions are loaded into memory when they are opened, so the first queries after opening a searcher
+ * don't wait on disk. Preloading only applies to files outside of compound files, so indexes that preload specific
+ * extensions should be written with IndexWriterConfig.setUseCompoundFile(false).
+ *
+ * Optionally the directory is wrapped in an NRTCachingDirectory, which keeps small newly flushed segments on the heap
+ * until they are merged or committed, for indexes that reopen near-real-time searchers frequently.
+ *
+ * @author bbende
+ */
+public class DirectoryFactory {
+
+    /**
+     * The extensions of the doc values files, used for sorting and faceting.
+     */
+    public static final Set<String> DOC_VALUES_EXTENSIONS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("dvd", "dvm")));
+
+    /**
+     * The extension of the terms index file, used to seek terms.
+     */
+    public static final Set<String> TERMS_INDEX_EXTENSIONS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("tip")));
+
+    private final Set<String> preloadExtensions;
+    private final boolean preloadAll;
+    private final boolean nrtCaching;
+    private final double nrtMaxMergeSizeMB;
+    private final double nrtMaxCachedMB;
+
+    private DirectoryFactory(final Builder builder) {
+        this.preloadExtensions = Collections.unmodifiableSet(new HashSet<>(builder.preloadExtensions));
+        this.preloadAll = builder.preloadAll;
+        this.nrtCaching = builder.nrtCaching;
+        this.nrtMaxMergeSizeMB = builder.nrtMaxMergeSizeMB;
+        this.nrtMaxCachedMB = builder.nrtMaxCachedMB;
+    }
+
+    /**
+     * @param path the path of the index
+     * @return the Directory for the index at the given path
+     * @throws IOException if the directory can't be opened
+     */
+    public Directory open(final Path path) throws IOException {
+        Validate.notNull(path);
+
+        Directory directory;
+        if (preloadAll || preloadExtensions.isEmpty()) {
+            final MMapDirectory mmapDirectory = new MMapDirectory(path);
+            mmapDirectory.setPreload(preloadAll);
+            directory = mmapDirectory;
+        } else {
+            // both directories map the same path, FileSwitchDirectory sends each file to one of them by extension
+            final MMapDirectory preloadDirectory = new MMapDirectory(path);
+            preloadDirectory.setPreload(true);
+            directory = new FileSwitchDirectory(preloadExtensions, preloadDirectory, new MMapDirectory(path), true);
+        }
+
+        if (nrtCaching) {
+            directory = new NRTCachingDirectory(directory, nrtMaxMergeSizeMB, nrtMaxCachedMB);
+        }
+        return directory;
+    }
+
+    /**
+     * @param directory a Directory opened by this factory
+     * @return the bytes mapped, preloaded and cached by the directory
+     * @throws IOException if the files of the directory can't be listed
+     */
+    public DirectoryStats getStats(final Directory directory) throws IOException {
+        Validate.notNull(directory);
+
+        final Set<String> cachedFiles = new HashSet<>();
+        long cachedBytes = 0;
+        if (directory instanceof NRTCachingDirectory) {
+            final NRTCachingDirectory nrtCachingDirectory = (NRTCachingDirectory) directory;
+            cachedFiles.addAll(Arrays.asList(nrtCachingDirectory.listCachedFiles()));
+            cachedBytes = nrtCachingDirectory.ramBytesUsed();
+        }
+
+        long mappedBytes = 0;
+        long preloadedBytes = 0;
+        int numFiles = 0;
+        for (String file : directory.listAll()) {
+            if (cachedFiles.contains(file)) {
+                continue;
+            }
+
+            final long length;
+            try {
+                length = directory.fileLength(file);
+            } catch (NoSuchFileException e) {
+                // deleted since the listing, such as by a merge
+                continue;
+            }
+
+            numFiles++;
+            mappedBytes += length;
+            if (preloadAll || preloadExtensions.contains(IndexFileNames.getExtension(file))) {
+                preloadedBytes += length;
+            }
+        }
+
+        return new DirectoryStats(numFiles, mappedBytes, preloadedBytes, cachedFiles.size(), cachedBytes);
+    }
+
+    /**
+     * Builder for DirectoryFactory.
+     */
+    public static class Builder {
+        private final Set<String> preloadExtensions = new HashSet<>();
+        private boolean preloadAll;
+        private boolean nrtCaching;
+        private double nrtMaxMergeSizeMB = 5.0;
+        private double nrtMaxCachedMB = 60.0;
+
+        /**
+         * @param extensions the extensions of the files to preload, such as DOC_VALUES_EXTENSIONS
+         * @return this builder
+         */
+        public Builder preloadExtensions(Set<String> extensions) {
+            Validate.notNull(extensions);
+            extensions.forEach(e -> Validate.notEmpty(e));
+            this.preloadExtensions.addAll(extensions);
+            return this;
+        }
+
+        /**
+         * @param preloadAll true to preload every file of the index
+         * @return this builder
+         */
+        public Builder preloadAll(boolean preloadAll) {
+            this.preloadAll = preloadAll;
+            return this;
+        }
+
+        /**
+         * Wraps the directory in an NRTCachingDirectory.
+         *
+         * @param maxMergeSizeMB the largest flushed or merged segment to cache
+         * @param maxCachedMB the most to cache in total
+         * @return this builder
+         */
+        public Builder nrtCaching(double maxMergeSizeMB, double maxCachedMB) {
+            Validate.isTrue(maxMergeSizeMB > 0);
+            Validate.isTrue(maxCachedMB > 0);
+            this.nrtCaching = true;
+            this.nrtMaxMergeSizeMB = maxMergeSizeMB;
+            this.nrtMaxCachedMB = maxCachedMB;
+            return this;
+        }
+
+        public DirectoryFactory build() {
+            return new DirectoryFactory(this);
+        }
+    }
+
+}
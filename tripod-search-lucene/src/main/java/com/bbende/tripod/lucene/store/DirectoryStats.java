@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.store;
+
+/**
+ * A point-in-time snapshot of the files of a Directory opened by a DirectoryFactory.
+ *
+ * @author bbende
+ */
+public class DirectoryStats {
+
+    private final int numFiles;
+    private final long mappedBytes;
+    private final long preloadedBytes;
+    private final int numCachedFiles;
+    private final long cachedBytes;
+
+    public DirectoryStats(final int numFiles, final long mappedBytes, final long preloadedBytes,
+                          final int numCachedFiles, final long cachedBytes) {
+        this.numFiles = numFiles;
+        this.mappedBytes = mappedBytes;
+        this.preloadedBytes = preloadedBytes;
+        this.numCachedFiles = numCachedFiles;
+        this.cachedBytes = cachedBytes;
+    }
+
+    /**
+     * @return the number of files on disk
+     */
+    public int getNumFiles() {
+        return numFiles;
+    }
+
+    /**
+     * @return the total size of the files on disk, which are memory mapped when opened
+     */
+    public long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    /**
+     * @return the total size of the files on disk with a preload extension
+     */
+    public long getPreloadedBytes() {
+        return preloadedBytes;
+    }
+
+    /**
+     * @return the number of files held on the heap by the NRTCachingDirectory
+     */
+    public int getNumCachedFiles() {
+        return numCachedFiles;
+    }
+
+    /**
+     * @return the heap used by the NRTCachingDirectory
+     */
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryStats[files=" + numFiles + ", mappedBytes=" + mappedBytes
+                + ", preloadedBytes=" + preloadedBytes + ", cachedFiles=" + numCachedFiles
+                + ", cachedBytes=" + cachedBytes + "]";
+    }
+
+}
@@ -17,6 +17,7 @@
 package com.bbende.tripod.lucene.example.query;
 
 import com.bbende.tripod.lucene.example.Example;
+import com.bbende.tripod.lucene.example.ExampleField;
 import com.bbende.tripod.lucene.example.ExampleFieldSortTypeFactory;
 import com.bbende.tripod.lucene.query.StandardLuceneQueryTransformer;
 import com.bbende.tripod.lucene.query.service.LuceneRetrievalService;
@@ -36,6 +37,7 @@ public class ExampleRetrievalService extends LuceneRetrievalService<Example> {
         super(searcherManager, analyzer,
                 new StandardLuceneQueryTransformer(defaultField, analyzer),
                 new ExampleDocumentTransformer(),
-                new ExampleFieldSortTypeFactory());
+                new ExampleFieldSortTypeFactory(),
+                ExampleField.ID);
     }
 }
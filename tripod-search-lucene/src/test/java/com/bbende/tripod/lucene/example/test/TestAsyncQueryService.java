@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.AsyncExecutors;
+import com.bbende.tripod.api.query.service.ExecutorAsyncQueryService;
+import com.bbende.tripod.api.query.service.ExecutorAsyncRetrievalService;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.api.query.service.QueryService;
+import com.bbende.tripod.lucene.example.Example;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.query.ExampleRetrievalService;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the async query and retrieval services with Lucene.
+ *
+ * @author bbende
+ */
+public class TestAsyncQueryService extends TestExampleLuceneBase {
+
+    private ExecutorService executor;
+    private ExampleSummaryQueryService queryService;
+
+    @Before
+    public void setup() {
+        this.executor = AsyncExecutors.newVirtualThreadExecutor();
+        this.queryService = new ExampleSummaryQueryService(searcherManager, defaultField, analyzer, facetsConfig);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSearchAsync() throws InterruptedException, ExecutionException {
+        final ExecutorAsyncQueryService<ExampleSummary> asyncQueryService =
+                new ExecutorAsyncQueryService<>(queryService, executor);
+
+        QueryResults<ExampleSummary> results = asyncQueryService.searchAsync(new Query("*:*")).get();
+        assertEquals(5, results.getTotalResults());
+    }
+
+    @Test
+    public void testFindAsync() throws InterruptedException, ExecutionException {
+        final ExecutorAsyncRetrievalService<Example> asyncRetrievalService = new ExecutorAsyncRetrievalService<>(
+                new ExampleRetrievalService(searcherManager, defaultField, analyzer), executor);
+
+        Example example = asyncRetrievalService.findByIdAsync("2").get();
+        assertEquals("Title 2", example.getTitle());
+
+        Map<String,Example> examples = asyncRetrievalService.findAllAsync(Arrays.asList("1", "3")).get();
+        assertEquals(2, examples.size());
+    }
+
+    @Test
+    public void testCancelBeforeStart() throws InterruptedException {
+        final ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final AtomicInteger searchCount = new AtomicInteger(0);
+
+        final QueryService<ExampleSummary> countingQueryService = (query) -> {
+            searchCount.incrementAndGet();
+            return queryService.search(query);
+        };
+
+        try {
+            // occupy the only thread so the search is queued behind it
+            singleThreadExecutor.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            final CompletableFuture<QueryResults<ExampleSummary>> future =
+                    new ExecutorAsyncQueryService<>(countingQueryService, singleThreadExecutor)
+                            .searchAsync(new Query("*:*"));
+
+            assertTrue(future.cancel(true));
+            blocked.countDown();
+        } finally {
+            singleThreadExecutor.shutdown();
+            assertTrue(singleThreadExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, searchCount.get());
+    }
+
+    @Test
+    public void testCancelStopsSearchWithoutInterrupt() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicReference<QueryException> error = new AtomicReference<>();
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+
+        final QueryService<ExampleSummary> waitingQueryService = (query) -> {
+            started.countDown();
+            try {
+                cancelled.await();
+                return queryService.search(query);
+            } catch (InterruptedException e) {
+                throw new QueryException("Interrupted", e);
+            } catch (QueryException e) {
+                error.set(e);
+                throw e;
+            } finally {
+                interrupted.set(Thread.currentThread().isInterrupted());
+                finished.countDown();
+            }
+        };
+
+        final CompletableFuture<QueryResults<ExampleSummary>> future =
+                new ExecutorAsyncQueryService<>(waitingQueryService, executor).searchAsync(new Query("*:*"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // the search starts after the cancel, so it stops at its first check
+        assertTrue(future.cancel(true));
+        cancelled.countDown();
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertFalse(interrupted.get());
+        assertNotNull(error.get());
+        assertEquals("Query was cancelled", error.get().getMessage());
+    }
+
+    @Test
+    public void testInterruptStopsSearch() {
+        Thread.currentThread().interrupt();
+        try {
+            queryService.search(new Query("*:*"));
+            fail("Should have been cancelled");
+        } catch (QueryException e) {
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.cache.BoundedCache;
+import com.bbende.tripod.api.query.FilterQuery;
+import com.bbende.tripod.api.query.ImmutableQuery;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.Highlight;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.CachingQueryService;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import com.bbende.tripod.lucene.query.service.SearcherRefreshNotifier;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for CachingQueryService with Lucene.
+ *
+ * @author bbende
+ */
+public class TestCachingQueryService extends TestExampleLuceneBase {
+
+    private CachingQueryService<ExampleSummary> queryService;
+
+    @Before
+    public void setup() {
+        final BoundedCache<ImmutableQuery,QueryResults<ExampleSummary>> cache =
+                new BoundedCache.Builder<ImmutableQuery,QueryResults<ExampleSummary>>()
+                        .maxSize(2)
+                        .maxWeight(100, CachingQueryService::weigh)
+                        .build();
+
+        this.queryService = new CachingQueryService<>(
+                new ExampleSummaryQueryService(searcherManager, defaultField, analyzer, facetsConfig), cache,
+                TestCachingQueryService::copy);
+
+        searcherManager.addListener(new SearcherRefreshNotifier(queryService));
+    }
+
+    private static ExampleSummary copy(final ExampleSummary summary) {
+        final ExampleSummary copy = new ExampleSummary(summary.getId());
+        copy.setTitle(summary.getTitle());
+        copy.setColor(summary.getColor());
+        copy.setCreateDate(summary.getCreateDate() == null ? null : new Date(summary.getCreateDate().getTime()));
+        copy.setHighlights(summary.getHighlights() == null ? null : new ArrayList<>(summary.getHighlights()));
+        return copy;
+    }
+
+    @Test
+    public void testEquivalentQueriesHitCache() throws QueryException {
+        Query query1 = new Query("*:*");
+        query1.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query1.addFilterQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+        query1.addFilterQuery(new FilterQuery(ExampleField.ID, "1"));
+
+        Query query2 = new Query("*:*");
+        query2.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query2.addFilterQuery(new FilterQuery(ExampleField.ID, "1"));
+        query2.addFilterQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+
+        QueryResults<ExampleSummary> results1 = queryService.search(query1);
+        QueryResults<ExampleSummary> results2 = queryService.search(query2);
+
+        assertEquals(results1.getTotalResults(), results2.getTotalResults());
+        assertEquals(results1.getResults().size(), results2.getResults().size());
+        assertEquals(1, queryService.getStats().getHitCount());
+        assertEquals(1, queryService.getStats().getMissCount());
+    }
+
+    @Test
+    public void testChangesToReturnedResultsDoNotReachCache() throws QueryException {
+        final Query query = new Query("*:*");
+
+        final QueryResults<ExampleSummary> results1 = queryService.search(query);
+        final ExampleSummary summary1 = results1.getResults().get(0);
+        final String title = summary1.getTitle();
+        summary1.setTitle("changed");
+        summary1.setHighlights(Collections.singletonList(new Highlight("title", Collections.singletonList("changed"))));
+
+        final QueryResults<ExampleSummary> results2 = queryService.search(query);
+        assertEquals(1, queryService.getStats().getHitCount());
+
+        final ExampleSummary summary2 = results2.getResults().get(0);
+        assertEquals(summary1.getId(), summary2.getId());
+        assertEquals(title, summary2.getTitle());
+        assertNull(summary2.getHighlights());
+
+        // changes to a hit don't reach the next hit either
+        summary2.setTitle("changed again");
+        assertEquals(title, queryService.search(query).getResults().get(0).getTitle());
+    }
+
+    @Test
+    public void testProfiledQueriesBypassCache() throws QueryException {
+        final Query query = new Query("*:*");
+        query.setProfile(true);
+
+        final QueryResults<ExampleSummary> results1 = queryService.search(query);
+        final QueryResults<ExampleSummary> results2 = queryService.search(query);
+
+        assertNotNull(results1.getProfile());
+        assertNotNull(results2.getProfile());
+        assertNotSame(results1.getProfile(), results2.getProfile());
+
+        assertEquals(0, queryService.getStats().getHitCount());
+        assertEquals(0, queryService.getStats().getMissCount());
+        assertEquals(0, queryService.getStats().getSize());
+    }
+
+    @Test
+    public void testCanonicalQueryKeepsAbsentListsNull() {
+        final Query query = new Query("*:*");
+        query.addFilterQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+
+        final ImmutableQuery immutableQuery = ImmutableQuery.copyOf(query);
+        assertNull(immutableQuery.getFacetFields());
+        assertNull(immutableQuery.getSorts());
+        assertEquals(query.getFilterQueries(), immutableQuery.getFilterQueries());
+    }
+
+    @Test
+    public void testEviction() throws QueryException {
+        queryService.search(new Query("id:1"));
+        queryService.search(new Query("id:2"));
+        queryService.search(new Query("id:3"));
+
+        assertEquals(2, queryService.getStats().getSize());
+        assertEquals(1, queryService.getStats().getEvictionCount());
+    }
+
+    @Test
+    public void testInvalidatedOnRefresh() throws QueryException, IOException {
+        Query query = new Query("*:*");
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(5, results.getTotalResults());
+
+        final IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            Document doc = new Document();
+            doc.add(new Field(ExampleField.ID.getName(), "99", StringField.TYPE_STORED));
+            doc.add(new Field(ExampleField.TITLE.getName(), "Title 99", TextField.TYPE_STORED));
+            writer.addDocument(doc);
+            writer.commit();
+        }
+
+        // still served from the cache until the searcher is refreshed
+        assertEquals(5, queryService.search(query).getTotalResults());
+        assertEquals(1, queryService.getStats().getHitCount());
+
+        searcherManager.maybeRefreshBlocking();
+        assertEquals(0, queryService.getStats().getSize());
+
+        QueryResults<ExampleSummary> refreshedResults = queryService.search(query);
+        assertNotSame(results, refreshedResults);
+        assertEquals(6, refreshedResults.getTotalResults());
+    }
+
+}
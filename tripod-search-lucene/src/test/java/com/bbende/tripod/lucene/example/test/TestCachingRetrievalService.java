@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.index.IndexException;
+import com.bbende.tripod.api.index.NotifyingIndexer;
+import com.bbende.tripod.api.query.service.CachingRetrievalService;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.Example;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.index.ExampleIndexer;
+import com.bbende.tripod.lucene.example.query.ExampleRetrievalService;
+import com.bbende.tripod.lucene.query.service.SearcherRefreshNotifier;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.util.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for CachingRetrievalService with Lucene.
+ *
+ * @author bbende
+ */
+public class TestCachingRetrievalService extends TestExampleLuceneBase {
+
+    private IndexWriter indexWriter;
+    private NotifyingIndexer<Example> indexer;
+    private CachingRetrievalService<Example> retrievalService;
+
+    @Before
+    public void setup() throws IOException {
+        indexWriter = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+
+        // commits are not visible until the SearcherManager refreshes, so only notify of changed ids
+        indexer = new NotifyingIndexer<>(new ExampleIndexer(indexWriter, facetsConfig), false);
+
+        retrievalService = new CachingRetrievalService.Builder<Example>()
+                .retrievalService(new ExampleRetrievalService(searcherManager, defaultField, analyzer))
+                .maxSize(10)
+                .build();
+
+        indexer.addListener(retrievalService);
+        searcherManager.addListener(new SearcherRefreshNotifier(retrievalService));
+    }
+
+    @After
+    public void cleanup() {
+        IOUtils.closeWhileHandlingException(indexWriter);
+    }
+
+    @Test
+    public void testFindByIdHitsCache() throws QueryException {
+        final Example example = retrievalService.findById("1");
+        assertNotNull(example);
+        assertSame(example, retrievalService.findById("1"));
+        assertEquals(1, retrievalService.getStats().getHitCount());
+        assertEquals(1, retrievalService.getStats().getMissCount());
+    }
+
+    @Test
+    public void testMissesAreCached() throws QueryException {
+        assertNull(retrievalService.findById("99"));
+        assertNull(retrievalService.findById("99"));
+        assertEquals(1, retrievalService.getStats().getHitCount());
+        assertEquals(1, retrievalService.getStats().getSize());
+    }
+
+    @Test
+    public void testFindAllUsesCache() throws QueryException {
+        final Example example1 = retrievalService.findById("1");
+
+        final Map<String,Example> results = retrievalService.findAll(Arrays.asList("3", "1", "99"));
+        assertEquals(2, results.size());
+        assertEquals(Arrays.asList("3", "1"), Arrays.asList(results.keySet().toArray()));
+        assertSame(example1, results.get("1"));
+        assertEquals(3, retrievalService.getStats().getSize());
+    }
+
+    @Test
+    public void testInvalidatedPerId() throws QueryException, IndexException, IOException {
+        final Example example1 = retrievalService.findById("1");
+        final Example example2 = retrievalService.findById("2");
+        assertEquals("Title 1", example1.getTitle());
+
+        final Example updated = new Example("1");
+        updated.setTitle("Updated Title 1");
+        updated.setBody("Updated Body 1");
+        updated.setColor("BLUE");
+        updated.setCreateDate(new Date());
+        indexer.update(updated);
+        indexer.commit();
+
+        // the change is not visible yet, so the id is served from the index without being cached
+        assertEquals("Title 1", retrievalService.findById("1").getTitle());
+        assertEquals(1, retrievalService.getStats().getSize());
+
+        searcherManager.maybeRefreshBlocking();
+        assertEquals("Updated Title 1", retrievalService.findById("1").getTitle());
+
+        // entities with other ids stay cached
+        assertSame(example2, retrievalService.findById("2"));
+    }
+
+    @Test
+    public void testChangedDuringCommitStaysPending() throws QueryException {
+        retrievalService.onEntityChanged(ExampleField.ID, "1");
+        retrievalService.beforeCommit();
+        retrievalService.onEntityChanged(ExampleField.ID, "2");
+        retrievalService.onCommit();
+
+        // the commit covers the change to 1, but 2 changed after it began so it is not cached yet
+        retrievalService.findById("1");
+        retrievalService.findById("2");
+        assertEquals(1, retrievalService.getStats().getSize());
+
+        retrievalService.onCommit();
+        retrievalService.findById("2");
+        assertEquals(2, retrievalService.getStats().getSize());
+    }
+
+}
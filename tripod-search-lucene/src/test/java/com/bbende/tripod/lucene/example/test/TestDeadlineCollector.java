@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import com.bbende.tripod.lucene.query.service.DeadlineCollector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for DeadlineCollector and the time allowed for Lucene queries.
+ *
+ * @author bbende
+ */
+public class TestDeadlineCollector extends TestExampleLuceneBase {
+
+    @Test
+    public void testCollectsAllBeforeDeadline() throws IOException {
+        final TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+        final DeadlineCollector deadlineCollector = DeadlineCollector.withTimeAllowed(hitCountCollector, 60000);
+
+        search(deadlineCollector);
+        assertEquals(5, hitCountCollector.getTotalHits());
+        assertFalse(deadlineCollector.isTerminated());
+    }
+
+    @Test
+    public void testStopsAfterDeadline() throws IOException {
+        final TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+        final DeadlineCollector deadlineCollector = new DeadlineCollector(hitCountCollector, System.nanoTime() - 1);
+
+        search(deadlineCollector);
+        assertEquals(0, hitCountCollector.getTotalHits());
+        assertTrue(deadlineCollector.isTerminated());
+    }
+
+    @Test
+    public void testStopsWhenCancelled() throws IOException {
+        final TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+        final DeadlineCollector deadlineCollector = DeadlineCollector.withTimeAllowed(hitCountCollector, 60000);
+        deadlineCollector.cancel();
+
+        search(deadlineCollector);
+        assertEquals(0, hitCountCollector.getTotalHits());
+        assertTrue(deadlineCollector.isTerminated());
+    }
+
+    @Test
+    public void testQueryWithinTimeAllowed() throws QueryException {
+        final ExampleSummaryQueryService queryService =
+                new ExampleSummaryQueryService(searcherManager, defaultField, analyzer, facetsConfig);
+
+        Query query = new Query("*:*");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query.setHighlightFields(Arrays.asList(ExampleField.BODY));
+        query.setTimeAllowed(60000L);
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertFalse(results.isPartialResults());
+        assertEquals(5, results.getTotalResults());
+        assertEquals(5, results.getResults().size());
+    }
+
+    private void search(final DeadlineCollector collector) throws IOException {
+        final IndexSearcher searcher = searcherManager.acquire();
+        try {
+            searcher.search(new MatchAllDocsQuery(), collector);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.index.IndexException;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.Example;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.index.ExampleIndexer;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import com.bbende.tripod.lucene.store.DirectoryFactory;
+import com.bbende.tripod.lucene.store.DirectoryStats;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for DirectoryFactory.
+ *
+ * @author bbende
+ */
+public class TestDirectoryFactory {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Analyzer analyzer;
+    private FacetsConfig facetsConfig;
+    private Directory directory;
+    private IndexWriter indexWriter;
+
+    @Before
+    public void setup() {
+        analyzer = new StandardAnalyzer();
+        facetsConfig = new FacetsConfig();
+        facetsConfig.setIndexFieldName(ExampleField.COLOR.getName(), ExampleField.COLOR.getName());
+    }
+
+    @After
+    public void cleanup() {
+        IOUtils.closeWhileHandlingException(indexWriter, directory);
+    }
+
+    @Test
+    public void testPreloadExtensions() throws IOException, IndexException, QueryException {
+        final DirectoryFactory directoryFactory = new DirectoryFactory.Builder()
+                .preloadExtensions(DirectoryFactory.DOC_VALUES_EXTENSIONS)
+                .build();
+
+        directory = directoryFactory.open(tempFolder.newFolder().toPath());
+
+        // preloading applies to files outside of compound files
+        final IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setUseCompoundFile(false);
+        indexWriter = new IndexWriter(directory, config);
+        indexExamples(indexWriter);
+        indexWriter.commit();
+
+        final DirectoryStats stats = directoryFactory.getStats(directory);
+        assertTrue(stats.getNumFiles() > 0);
+        assertTrue(stats.getMappedBytes() > 0);
+        assertTrue(stats.getPreloadedBytes() > 0);
+        assertTrue(stats.getPreloadedBytes() < stats.getMappedBytes());
+        assertEquals(0, stats.getNumCachedFiles());
+
+        // the files of both underlying directories are readable
+        final SearcherManager searcherManager = new SearcherManager(directory, null);
+        try {
+            final ExampleSummaryQueryService queryService = new ExampleSummaryQueryService(
+                    searcherManager, ExampleField.BODY.getName(), analyzer, facetsConfig);
+
+            final Query query = new Query("*:*");
+            query.addFacetField(ExampleField.COLOR);
+
+            final QueryResults<ExampleSummary> results = queryService.search(query);
+            assertEquals(2, results.getTotalResults());
+            assertEquals(1, results.getFacetResults().size());
+        } finally {
+            searcherManager.close();
+        }
+    }
+
+    @Test
+    public void testNrtCaching() throws IOException, IndexException {
+        final DirectoryFactory directoryFactory = new DirectoryFactory.Builder()
+                .nrtCaching(5.0, 60.0)
+                .build();
+
+        directory = directoryFactory.open(tempFolder.newFolder().toPath());
+        indexWriter = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+        indexExamples(indexWriter);
+
+        // opening a near-real-time reader flushes a small segment, which is cached
+        DirectoryReader.open(indexWriter).close();
+
+        DirectoryStats stats = directoryFactory.getStats(directory);
+        assertTrue(stats.getNumCachedFiles() > 0);
+        assertTrue(stats.getCachedBytes() > 0);
+
+        // committing writes the cached files through to disk
+        indexWriter.commit();
+
+        stats = directoryFactory.getStats(directory);
+        assertEquals(0, stats.getNumCachedFiles());
+        assertTrue(stats.getMappedBytes() > 0);
+    }
+
+    private void indexExamples(final IndexWriter indexWriter) throws IndexException {
+        final ExampleIndexer indexer = new ExampleIndexer(indexWriter, facetsConfig);
+
+        final Example e1 = new Example("1");
+        e1.setBody("Body of e1");
+        e1.setTitle("Title of e1");
+        e1.setColor("BLUE");
+        e1.setCreateDate(new Date());
+        indexer.index(e1);
+
+        final Example e2 = new Example("2");
+        e2.setBody("Body of e2");
+        e2.setTitle("Title of e2");
+        e2.setColor("RED");
+        e2.setCreateDate(new Date());
+        indexer.index(e2);
+    }
+
+}
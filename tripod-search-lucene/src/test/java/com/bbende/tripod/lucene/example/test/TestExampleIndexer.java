@@ -29,6 +29,7 @@ import com.bbende.tripod.lucene.example.Example;
 import com.bbende.tripod.lucene.example.ExampleField;
 import com.bbende.tripod.lucene.example.ExampleSummary;
 import com.bbende.tripod.lucene.example.index.ExampleIndexer;
+import com.bbende.tripod.lucene.example.query.ExampleRetrievalService;
 import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
 import com.bbende.tripod.lucene.index.LuceneIndexer;
 import org.apache.lucene.analysis.Analyzer;
@@ -52,6 +53,7 @@ import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -177,6 +179,12 @@ public class TestExampleIndexer {
 
         verifyFacetValuesExist(updatedFacetCounts, "BLUE", "GREEN");
 
+        // the id lookup should skip the deleted version of the updated doc
+        ExampleRetrievalService retrievalService = new ExampleRetrievalService(searcherManager, DEFAULT_FIELD, analyzer);
+        Example retrieved = retrievalService.findById(e2updated.getId());
+        assertNotNull(retrieved);
+        assertEquals(e2updated.getTitle(), retrieved.getTitle());
+
         // now delete the docs
         indexer.delete(e1);
         indexer.delete(e2);
@@ -190,6 +198,8 @@ public class TestExampleIndexer {
         assertNotNull(emptyResults);
         assertNotNull(emptyResults.getResults());
         assertEquals(0, emptyResults.getResults().size());
+        assertNull(retrievalService.findById(e1.getId()));
+        assertNull(retrievalService.findById(e2.getId()));
     }
 
     private void verifyFacetValuesExist(List<FacetCount> facetCounts, String ...facetValues) {
@@ -18,14 +18,19 @@ package com.bbende.tripod.lucene.example.test;
 
 import com.bbende.tripod.api.query.RetrievalQuery;
 import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.api.query.service.RetrievalService;
 import com.bbende.tripod.lucene.example.Example;
 import com.bbende.tripod.lucene.example.query.ExampleRetrievalService;
+import com.bbende.tripod.lucene.query.service.IdTermsCache;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Tests for ExampleRetrievalService with Lucene.
@@ -61,4 +66,62 @@ public class TestExampleRetrievalService extends TestExampleLuceneBase {
         Assert.assertNull(result);
     }
 
+    @Test
+    public void testFindAll() throws QueryException {
+        Map<String,Example> results = retrievalService.findAll(Arrays.asList("3", "ABCD", "1", "5"));
+
+        Assert.assertNotNull(results);
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(Arrays.asList("3", "1", "5"), new ArrayList<>(results.keySet()));
+        Assert.assertEquals("Title 3", results.get("3").getTitle());
+        Assert.assertEquals("Title 1", results.get("1").getTitle());
+        Assert.assertEquals("Title 5", results.get("5").getTitle());
+    }
+
+    @Test
+    public void testFindAllWhenNoneExist() throws QueryException {
+        Map<String,Example> results = retrievalService.findAll(Arrays.asList("ABCD", "EFGH"));
+        Assert.assertNotNull(results);
+        Assert.assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void testFindById() throws QueryException {
+        Example result = retrievalService.findById("2");
+        Assert.assertNotNull(result);
+        Assert.assertEquals("2", result.getId());
+        Assert.assertEquals("Title 2", result.getTitle());
+
+        Assert.assertNull(retrievalService.findById("ABCD"));
+    }
+
+    @Test
+    public void testDefaultFindByIdAndFindAll() throws QueryException {
+        final RetrievalService<Example> findOnly = retrievalService::find;
+
+        Example result = findOnly.findById("2");
+        Assert.assertNotNull(result);
+        Assert.assertEquals("Title 2", result.getTitle());
+        Assert.assertNull(findOnly.findById("ABCD"));
+
+        Map<String,Example> results = findOnly.findAll(Arrays.asList("3", "ABCD", "1"));
+        Assert.assertEquals(Arrays.asList("3", "1"), new ArrayList<>(results.keySet()));
+        Assert.assertEquals("Title 1", results.get("1").getTitle());
+    }
+
+    @Test
+    public void testFindByIdWithIdTermsCache() throws QueryException {
+        final IdTermsCache idTermsCache = new IdTermsCache();
+        retrievalService.setIdTermsCache(idTermsCache);
+
+        for (int i=0; i < 2; i++) {
+            Example result = retrievalService.findById("4");
+            Assert.assertNotNull(result);
+            Assert.assertEquals("Title 4", result.getTitle());
+            Assert.assertNull(retrievalService.findById("ABCD"));
+        }
+
+        Assert.assertEquals(1, idTermsCache.getSegmentCount());
+    }
+
 }
@@ -16,12 +16,19 @@
  */
 package com.bbende.tripod.lucene.example.test;
 
+import com.bbende.tripod.api.metrics.Phase;
 import com.bbende.tripod.api.query.FilterQuery;
+import com.bbende.tripod.api.query.ImmutableQuery;
 import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.RangeFacet;
+import com.bbende.tripod.api.query.ResultMode;
 import com.bbende.tripod.api.query.Sort;
 import com.bbende.tripod.api.query.SortOrder;
+import com.bbende.tripod.api.query.result.BatchResult;
+import com.bbende.tripod.api.query.result.CompactFacetResult;
 import com.bbende.tripod.api.query.result.FacetCount;
 import com.bbende.tripod.api.query.result.FacetResult;
+import com.bbende.tripod.api.query.result.QueryProfile;
 import com.bbende.tripod.api.query.result.QueryResults;
 import com.bbende.tripod.api.query.service.QueryException;
 import com.bbende.tripod.api.query.service.QueryService;
@@ -37,9 +44,15 @@ import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.util.BytesRef;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,12 +60,19 @@ import org.junit.Test;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -186,13 +206,13 @@ public class TestExampleSummaryQueryService extends TestExampleLuceneBase {
         for (FacetCount facetCount : facetResult.getFacetCounts()) {
             if (facetCount.getValue().equals("BLUE")) {
                 foundBlue = true;
-                assertEquals(2, facetCount.getCount().longValue());
+                assertEquals(2, facetCount.getCount());
             } else if (facetCount.getValue().equals("RED")) {
                 foundRed = true;
-                assertEquals(2, facetCount.getCount().longValue());
+                assertEquals(2, facetCount.getCount());
             } else if (facetCount.getValue().equals("GREEN")) {
                 foundGreen = true;
-                assertEquals(1, facetCount.getCount().longValue());
+                assertEquals(1, facetCount.getCount());
             }
         }
 
@@ -236,6 +256,33 @@ public class TestExampleSummaryQueryService extends TestExampleLuceneBase {
         }
     }
 
+    @Test
+    public void testImmutableQuery() throws QueryException {
+        ImmutableQuery query = new ImmutableQuery.Builder("*:*")
+                .filterQuery(ExampleField.COLOR, "BLUE")
+                .sort(ExampleField.CREATE_DATE, SortOrder.DESC)
+                .returnFields(Arrays.asList(ExampleField.TITLE, ExampleField.ID, ExampleField.COLOR))
+                .build();
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+
+        assertNotNull(results);
+        assertNotNull(results.getResults());
+        assertEquals(2, results.getResults().size());
+        assertEquals("4", results.getResults().get(0).getId());
+        assertEquals("1", results.getResults().get(1).getId());
+
+        // an equivalent mutable query with fields in a different order has the same canonical form
+        Query mutableQuery = new Query("*:*");
+        mutableQuery.setReturnFields(Arrays.asList(ExampleField.ID, ExampleField.COLOR, ExampleField.TITLE));
+        mutableQuery.addSort(ExampleField.CREATE_DATE, SortOrder.DESC);
+        mutableQuery.addFilterQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+
+        ImmutableQuery copy = ImmutableQuery.copyOf(mutableQuery);
+        assertEquals(query, copy);
+        assertEquals(query.getFingerprint(), copy.getFingerprint());
+    }
+
     @Test
     public void testDefaultSorting() throws QueryException {
         Query query = new Query(ExampleField.BODY.getName() + ":Solr");
@@ -351,6 +398,122 @@ public class TestExampleSummaryQueryService extends TestExampleLuceneBase {
     }
 
 
+    @Test
+    public void testStream() {
+        // page sizes that end on a short page and on an empty page
+        for (int pageSize : new int[] {2, 5}) {
+            Query query = new Query("*:*", Query.CURSOR_MARK_START, pageSize);
+            query.addSort(ExampleField.CREATE_DATE, SortOrder.DESC);
+            query.addSort(ExampleField.ID, SortOrder.ASC);
+
+            List<String> ids;
+            try (Stream<ExampleSummary> results = queryService.stream(query)) {
+                ids = results.map(ExampleSummary::getId).collect(Collectors.toList());
+            }
+
+            assertEquals(Arrays.asList("5", "4", "3", "2", "1"), ids);
+        }
+    }
+
+    @Test
+    public void testProfile() throws QueryException {
+        Query query = new Query(ExampleField.BODY.getName() + ":solr");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertNull(results.getProfile());
+
+        query.setProfile(true);
+        results = queryService.search(query);
+
+        QueryProfile profile = results.getProfile();
+        assertNotNull(profile);
+        assertEquals(1, profile.getSegmentsSearched());
+        assertEquals(2, profile.getHitsCollected());
+        assertTrue(profile.getStoredFieldBytes() > 0);
+        assertEquals(1, profile.getFacetDimensions());
+        assertTrue(profile.getRewrittenQuery().contains(ExampleField.BODY.getName() + ":solr"));
+        assertTrue(profile.getPhaseNanos().containsKey(Phase.SEARCH));
+        assertTrue(profile.getPhaseNanos().containsKey(Phase.FACET));
+        assertTrue(profile.getServerPhaseNanos().isEmpty());
+        assertEquals(-1, profile.getServerTimeMillis());
+    }
+
+    @Test
+    public void testSearchAll() {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Query allQuery = new Query("*:*");
+            Query blueQuery = new Query("*:*");
+            blueQuery.addFilterQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+            Query badQuery = new Query(ExampleField.BODY.getName() + ":(");
+
+            List<BatchResult<ExampleSummary>> results =
+                    queryService.searchAll(Arrays.asList(allQuery, badQuery, blueQuery), executor);
+            assertEquals(3, results.size());
+
+            assertTrue(results.get(0).isSuccess());
+            assertEquals(allQuery, results.get(0).getQuery());
+            assertEquals(5, results.get(0).getResults().getTotalResults());
+
+            assertFalse(results.get(1).isSuccess());
+            assertNull(results.get(1).getResults());
+            assertNotNull(results.get(1).getException());
+
+            assertTrue(results.get(2).isSuccess());
+            assertEquals(2, results.get(2).getResults().getTotalResults());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCountOnly() throws QueryException {
+        Query query = new Query("*:*");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query.setHighlightFields(Arrays.asList(ExampleField.BODY));
+        query.setResultMode(ResultMode.COUNT);
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(5, results.getTotalResults());
+        assertTrue(results.getResults().isEmpty());
+        assertTrue(results.getFacetResults().isEmpty());
+
+        query = new Query("*:*");
+        query.addFilterQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+        query.setTimeAllowed(60000L);
+        query.setResultMode(ResultMode.COUNT);
+
+        results = queryService.search(query);
+        assertEquals(2, results.getTotalResults());
+        assertTrue(results.getResults().isEmpty());
+        assertFalse(results.isPartialResults());
+    }
+
+    @Test
+    public void testFacetsOnly() throws QueryException {
+        Query query = new Query("*:*");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query.setResultMode(ResultMode.FACETS);
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(5, results.getTotalResults());
+        assertTrue(results.getResults().isEmpty());
+        assertEquals(1, results.getFacetResults().size());
+
+        FacetResult facetResult = results.getFacetResults().get(0);
+        assertEquals(ExampleField.COLOR.getName(), facetResult.getField());
+
+        long totalCount = 0;
+        for (FacetCount facetCount : facetResult.getFacetCounts()) {
+            if (facetCount.getValue().equals("BLUE") || facetCount.getValue().equals("RED")) {
+                assertEquals(2, facetCount.getCount());
+            }
+            totalCount += facetCount.getCount();
+        }
+        assertEquals(5, totalCount);
+    }
+
     @Test
     public void testRefreshingSearcherManager() throws IOException, ParseException, QueryException, InterruptedException {
         // Add a new document
@@ -400,4 +563,219 @@ public class TestExampleSummaryQueryService extends TestExampleLuceneBase {
             refresher.stop();
         }
     }
+
+    @Test
+    public void testRangeFacets() throws QueryException {
+        final Instant threeAm = Instant.parse("2016-10-01T03:00:00Z");
+
+        Query query = new Query("*:*");
+        query.setResultMode(ResultMode.FACETS);
+        query.addRangeFacet(RangeFacet.dateHistogram(ExampleField.CREATE_DATE,
+                Instant.parse("2016-10-01T00:00:00Z"), Instant.parse("2016-10-01T06:00:00Z"), Duration.ofHours(2)));
+        query.addRangeFacet(new RangeFacet.Builder(ExampleField.CREATE_DATE)
+                .name("before_after")
+                .date(true)
+                .range("before", null, threeAm.toEpochMilli())
+                .range("after", threeAm.toEpochMilli(), null)
+                .build());
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(5, results.getTotalResults());
+        assertEquals(2, results.getFacetResults().size());
+
+        // the histogram counts every bucket in order from a single query
+        List<FacetCount> histogram = getFacetCounts(results, ExampleField.CREATE_DATE.getName());
+        assertEquals(3, histogram.size());
+        assertEquals("2016-10-01T00:00:00Z", histogram.get(0).getValue());
+        assertEquals(1, histogram.get(0).getCount());
+        assertEquals("2016-10-01T02:00:00Z", histogram.get(1).getValue());
+        assertEquals(2, histogram.get(1).getCount());
+        assertEquals("2016-10-01T04:00:00Z", histogram.get(2).getValue());
+        assertEquals(2, histogram.get(2).getCount());
+
+        List<FacetCount> beforeAfter = getFacetCounts(results, "before_after");
+        assertEquals(2, beforeAfter.size());
+        assertEquals("before", beforeAfter.get(0).getValue());
+        assertEquals(2, beforeAfter.get(0).getCount());
+        assertEquals("after", beforeAfter.get(1).getValue());
+        assertEquals(3, beforeAfter.get(1).getCount());
+    }
+
+    @Test
+    public void testSampledFacets() throws QueryException {
+        Query query = new Query("*:*");
+        query.setResultMode(ResultMode.FACETS);
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query.setFacetSampleSize(2);
+
+        // all 5 docs match, which is more than the sample size
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(5, results.getTotalResults());
+        assertEquals(1, results.getFacetResults().size());
+
+        FacetResult facetResult = results.getFacetResults().get(0);
+        assertTrue(facetResult.isApproximate());
+        assertTrue(facetResult.getSamplingRate() > 0 && facetResult.getSamplingRate() < 1);
+        for (FacetCount facetCount : facetResult.getFacetCounts()) {
+            assertTrue(facetCount.getErrorBound() > 0);
+        }
+
+        // fewer matches than the sample size are counted exactly
+        query = new Query("id:1 OR id:4");
+        query.setResultMode(ResultMode.FACETS);
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query.setFacetSampleSize(2);
+
+        results = queryService.search(query);
+        facetResult = results.getFacetResults().get(0);
+        assertFalse(facetResult.isApproximate());
+        assertEquals(1, facetResult.getFacetCounts().size());
+        assertEquals(2, facetResult.getFacetCounts().get(0).getCount());
+        assertEquals(0, facetResult.getFacetCounts().get(0).getErrorBound());
+
+        // a count over a 10% sample is scaled up by 10x
+        FacetCount estimate = FacetCount.estimate("BLUE", 10, 0.1);
+        assertEquals(100, estimate.getCount());
+        assertEquals(59, estimate.getErrorBound());
+    }
+
+    @Test
+    public void testMultiSelectFacets() throws QueryException {
+        Query query = new Query("*:*");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query.addFilterQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+
+        // without multi-select the facet only counts the filtered documents
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(2, results.getTotalResults());
+        List<FacetCount> colors = getFacetCounts(results, ExampleField.COLOR.getName());
+        assertEquals(1, colors.size());
+        assertEquals("BLUE", colors.get(0).getValue());
+
+        // with multi-select the facet ignores its own filter, but the results do not
+        query.setMultiSelectFacets(true);
+        results = queryService.search(query);
+        assertEquals(2, results.getTotalResults());
+        assertEquals(2, results.getResults().size());
+
+        colors = getFacetCounts(results, ExampleField.COLOR.getName());
+        assertEquals(3, colors.size());
+
+        long totalCount = 0;
+        for (FacetCount facetCount : colors) {
+            if (facetCount.getValue().equals("BLUE") || facetCount.getValue().equals("RED")) {
+                assertEquals(2, facetCount.getCount());
+            }
+            totalCount += facetCount.getCount();
+        }
+        assertEquals(5, totalCount);
+
+        // selecting a second value of the same field widens the results
+        query.addFilterQuery(new FilterQuery(ExampleField.COLOR, "RED"));
+        query.setResultMode(ResultMode.FACETS);
+        results = queryService.search(query);
+        assertEquals(4, results.getTotalResults());
+        assertEquals(3, getFacetCounts(results, ExampleField.COLOR.getName()).size());
+
+        // multi-select facets are counted exactly even with a sample size
+        query.setFacetSampleSize(1);
+        results = queryService.search(query);
+        assertFalse(results.getFacetResults().get(0).isApproximate());
+        assertEquals(3, getFacetCounts(results, ExampleField.COLOR.getName()).size());
+
+        // without filter queries there is nothing to count sideways, so the facets are counted as usual
+        Query unfiltered = new Query("*:*");
+        unfiltered.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        unfiltered.setFilterQueries(new ArrayList<>());
+        unfiltered.setMultiSelectFacets(true);
+        results = queryService.search(unfiltered);
+        assertEquals(5, results.getTotalResults());
+        assertEquals(3, getFacetCounts(results, ExampleField.COLOR.getName()).size());
+    }
+
+    @Test
+    public void testCompactFacetResults() throws QueryException, IOException {
+        // a second segment makes the counts map segment ordinals to global ordinals
+        final IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            Document doc = new Document();
+            doc.add(new Field(ExampleField.ID.getName(), "6", StringField.TYPE_STORED));
+            doc.add(new Field(ExampleField.COLOR.getName(), "YELLOW", StringField.TYPE_STORED));
+            doc.add(new SortedSetDocValuesFacetField(ExampleField.COLOR.getName(), "YELLOW"));
+            writer.addDocument(facetsConfig.build(doc));
+            writer.commit();
+        }
+        searcherManager.maybeRefreshBlocking();
+
+        final ExampleSummaryQueryService compactQueryService =
+                new ExampleSummaryQueryService(searcherManager, defaultField, analyzer, facetsConfig);
+        compactQueryService.setCompactFacetResults(true);
+
+        Query query = new Query("*:*");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query.setResultMode(ResultMode.FACETS);
+
+        // both forms have the same counts in the same order as Lucene's SortedSetDocValuesFacetCounts
+        final org.apache.lucene.facet.FacetResult expected = getLuceneFacetResult(ExampleField.COLOR.getName());
+        final List<FacetCount> standard = getFacetCounts(queryService.search(query), ExampleField.COLOR.getName());
+        assertEquals(expected.childCount, standard.size());
+        for (int i = 0; i < expected.childCount; i++) {
+            assertEquals(expected.labelValues[i].label, standard.get(i).getValue());
+            assertEquals(expected.labelValues[i].value.longValue(), standard.get(i).getCount());
+        }
+
+        final QueryResults<ExampleSummary> results = compactQueryService.search(query);
+        assertTrue(results.getFacetResults().get(0) instanceof CompactFacetResult);
+
+        final CompactFacetResult compact = (CompactFacetResult) results.getFacetResults().get(0);
+        assertEquals(4, compact.size());
+        assertEquals(expected.childCount, compact.getFacetCounts().size());
+        for (int i = 0; i < expected.childCount; i++) {
+            assertEquals(expected.labelValues[i].label, compact.getLabel(i));
+            assertEquals(expected.labelValues[i].value.longValue(), compact.getCount(i));
+            assertEquals(expected.labelValues[i].label, compact.getFacetCounts().get(i).getValue());
+        }
+
+        // the limit keeps the highest counts, and the lowest value among equal counts
+        compactQueryService.setFacetLimit(2);
+        final CompactFacetResult limited = (CompactFacetResult)
+                compactQueryService.search(query).getFacetResults().get(0);
+        assertEquals(2, limited.size());
+        assertEquals("BLUE", limited.getLabel(0));
+        assertEquals("RED", limited.getLabel(1));
+        assertEquals(2, limited.getCount(1));
+
+        // filtered counts only include the matching docs
+        query = new Query("*:*");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        query.addFilterQuery(new FilterQuery(ExampleField.COLOR, "YELLOW"));
+        final CompactFacetResult filtered = (CompactFacetResult)
+                compactQueryService.search(query).getFacetResults().get(0);
+        assertEquals(1, filtered.size());
+        assertEquals("YELLOW", filtered.getLabel(0));
+        assertEquals(1, filtered.getCount(0));
+    }
+
+    private List<FacetCount> getFacetCounts(final QueryResults<ExampleSummary> results, final String name) {
+        for (FacetResult facetResult : results.getFacetResults()) {
+            if (facetResult.getField().equals(name)) {
+                return facetResult.getFacetCounts();
+            }
+        }
+        throw new AssertionError("No facet result named " + name);
+    }
+
+    private org.apache.lucene.facet.FacetResult getLuceneFacetResult(final String name) throws IOException {
+        final IndexSearcher searcher = searcherManager.acquire();
+        try {
+            final FacetsCollector facetsCollector = new FacetsCollector();
+            FacetsCollector.search(searcher, new MatchAllDocsQuery(), 1, facetsCollector);
+
+            final SortedSetDocValuesReaderState state =
+                    new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader(), name);
+            return new SortedSetDocValuesFacetCounts(state, facetsCollector).getTopChildren(10, name);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
 }
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.query.FilterQuery;
+import com.bbende.tripod.api.query.ImmutableQuery;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.SortOrder;
+import com.bbende.tripod.api.query.result.FacetCount;
+import com.bbende.tripod.api.query.result.FacetResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.FederatedQueryService;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.api.query.service.QueryService;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for FederatedQueryService over Lucene services that each see part of the example data.
+ *
+ * @author bbende
+ */
+public class TestFederatedQueryService extends TestExampleLuceneBase {
+
+    private ExecutorService executor;
+    private ExampleSummaryQueryService exampleQueryService;
+
+    @Before
+    public void setup() {
+        this.executor = Executors.newCachedThreadPool();
+        this.exampleQueryService = new ExampleSummaryQueryService(searcherManager, defaultField, analyzer, facetsConfig);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMergeInSortOrder() throws QueryException {
+        final FederatedQueryService<ExampleSummary> queryService = createFederatedService();
+
+        Query query = new Query("*:*");
+        query.addSort(ExampleField.ID, SortOrder.DESC);
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(5, results.getTotalResults());
+        assertFalse(results.isPartialResults());
+        assertEquals(Arrays.asList("5", "4", "3", "2", "1"), getIds(results));
+
+        assertEquals(1, results.getFacetResults().size());
+        final FacetResult facetResult = results.getFacetResults().get(0);
+        final Map<String,Long> counts = new HashMap<>();
+        for (FacetCount facetCount : facetResult.getFacetCounts()) {
+            counts.put(facetCount.getValue(), facetCount.getCount());
+        }
+        assertEquals(Long.valueOf(2), counts.get("BLUE"));
+        assertEquals(Long.valueOf(2), counts.get("RED"));
+        assertEquals(Long.valueOf(1), counts.get("GREEN"));
+
+        // second page by offset
+        query = new Query("*:*", 2, 2);
+        query.addSort(ExampleField.ID, SortOrder.ASC);
+
+        results = queryService.search(query);
+        assertEquals(Arrays.asList("3", "4"), getIds(results));
+    }
+
+    @Test
+    public void testPagingWithCursorMark() {
+        final FederatedQueryService<ExampleSummary> queryService = createFederatedService();
+
+        for (int rows : Arrays.asList(1, 2, 5)) {
+            Query query = new Query("*:*", Query.CURSOR_MARK_START, rows);
+            query.addSort(ExampleField.ID, SortOrder.ASC);
+
+            List<String> ids;
+            try (Stream<ExampleSummary> results = queryService.stream(query)) {
+                ids = results.map(ExampleSummary::getId).collect(Collectors.toList());
+            }
+
+            assertEquals(Arrays.asList("1", "2", "3", "4", "5"), ids);
+        }
+    }
+
+    @Test
+    public void testChildTimeoutReturnsPartialResults() throws QueryException {
+        final QueryService<ExampleSummary> slowService = query -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryException("Interrupted", e);
+            }
+            return colorService("RED").search(query);
+        };
+
+        final FederatedQueryService<ExampleSummary> queryService = new FederatedQueryService.Builder<ExampleSummary>()
+                .queryService(colorService("BLUE"))
+                .queryService(slowService)
+                .sortValueProvider((result, field) -> result.getId())
+                .executor(executor)
+                .childTimeout(100, TimeUnit.MILLISECONDS)
+                .build();
+
+        Query query = new Query("*:*");
+        query.addSort(ExampleField.ID, SortOrder.ASC);
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertTrue(results.isPartialResults());
+        assertEquals(2, results.getTotalResults());
+        assertEquals(Arrays.asList("1", "4"), getIds(results));
+    }
+
+    @Test
+    public void testMergedFacetCountsAreLowerBounds() throws QueryException {
+        // GREEN is in the top 2 of the first service but not the second, and the reverse for RED
+        final FederatedQueryService<ExampleSummary> queryService = new FederatedQueryService.Builder<ExampleSummary>()
+                .queryService(facetService(new FacetCount("BLUE", 10L), new FacetCount("GREEN", 8L)))
+                .queryService(facetService(new FacetCount("RED", 9L), new FacetCount("BLUE", 5L)))
+                .sortValueProvider((result, field) -> result.getId())
+                .executor(executor)
+                .facetLimit(2)
+                .build();
+
+        final List<FacetCount> facetCounts = queryService.search(new Query("*:*"))
+                .getFacetResults().get(0).getFacetCounts();
+
+        // both services counted BLUE, while RED may have up to 8 more in the first service and GREEN, which is
+        // trimmed to the limit, up to 5 more in the second
+        assertEquals(2, facetCounts.size());
+        assertEquals("BLUE", facetCounts.get(0).getValue());
+        assertEquals(15, facetCounts.get(0).getCount());
+        assertEquals(0, facetCounts.get(0).getErrorBound());
+        assertEquals("RED", facetCounts.get(1).getValue());
+        assertEquals(9, facetCounts.get(1).getCount());
+        assertEquals(8, facetCounts.get(1).getErrorBound());
+    }
+
+    @Test
+    public void testMergedFacetCountsFromCompleteServicesAreExact() throws QueryException {
+        // the second service returned fewer values than the limit, so it has no count for GREEN
+        final FederatedQueryService<ExampleSummary> queryService = new FederatedQueryService.Builder<ExampleSummary>()
+                .queryService(facetService(new FacetCount("BLUE", 10L), new FacetCount("GREEN", 8L)))
+                .queryService(facetService(new FacetCount("RED", 9L)))
+                .sortValueProvider((result, field) -> result.getId())
+                .executor(executor)
+                .facetLimit(2)
+                .build();
+
+        final List<FacetCount> facetCounts = queryService.search(new Query("*:*"))
+                .getFacetResults().get(0).getFacetCounts();
+
+        assertEquals(2, facetCounts.size());
+        assertEquals("BLUE", facetCounts.get(0).getValue());
+        assertEquals(0, facetCounts.get(0).getErrorBound());
+        assertEquals("RED", facetCounts.get(1).getValue());
+        assertEquals(8, facetCounts.get(1).getErrorBound());
+    }
+
+    private FederatedQueryService<ExampleSummary> createFederatedService() {
+        return new FederatedQueryService.Builder<ExampleSummary>()
+                .queryService(colorService("BLUE"))
+                .queryService(colorService("RED"))
+                .queryService(colorService("GREEN"))
+                .sortValueProvider((result, field) -> result.getId())
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * @return a service that only sees the documents with the given color
+     */
+    private QueryService<ExampleSummary> colorService(final String color) {
+        return query -> exampleQueryService.search(new ImmutableQuery.Builder(query)
+                .filterQuery(new FilterQuery(ExampleField.COLOR, color))
+                .build());
+    }
+
+    /**
+     * @return a service that returns no results and the given counts for the color field
+     */
+    private static QueryService<ExampleSummary> facetService(final FacetCount... facetCounts) {
+        return query -> new QueryResults.Builder<ExampleSummary>()
+                .addFacetResult(new FacetResult(ExampleField.COLOR.getName(), Arrays.asList(facetCounts)))
+                .build();
+    }
+
+    private static List<String> getIds(final QueryResults<ExampleSummary> results) {
+        return results.getResults().stream().map(ExampleSummary::getId).collect(Collectors.toList());
+    }
+
+}
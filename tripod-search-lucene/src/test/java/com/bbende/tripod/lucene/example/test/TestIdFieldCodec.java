@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.index.IndexException;
+import com.bbende.tripod.lucene.example.Example;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.index.ExampleIndexer;
+import com.bbende.tripod.lucene.index.IdFieldCodec;
+import com.bbende.tripod.lucene.index.LuceneIndexer;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.bloom.BloomFilteringPostingsFormat;
+import org.apache.lucene.codecs.perfield.PerFieldPostingsFormat;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests for IdFieldCodec.
+ *
+ * @author bbende
+ */
+public class TestIdFieldCodec {
+
+    static final String DEFAULT_POSTINGS_FORMAT = "Lucene50";
+
+    private Analyzer analyzer;
+    private Directory directory;
+    private FacetsConfig facetsConfig;
+
+    @Before
+    public void setup() {
+        analyzer = new StandardAnalyzer();
+        directory = new RAMDirectory();
+
+        facetsConfig = new FacetsConfig();
+        facetsConfig.setIndexFieldName(ExampleField.COLOR.getName(), ExampleField.COLOR.getName());
+    }
+
+    @After
+    public void cleanup() {
+        IOUtils.closeWhileHandlingException(directory);
+    }
+
+    @Test
+    public void testIdFieldUsesBloomFilter() throws IOException, IndexException {
+        final IndexWriterConfig config = IdFieldCodec.configure(new IndexWriterConfig(analyzer), ExampleField.ID);
+        try (IndexWriter indexWriter = new IndexWriter(directory, config)) {
+            final LuceneIndexer<Example> indexer = new ExampleIndexer(indexWriter, facetsConfig);
+            indexer.index(example("1", "Title of e1"));
+            indexer.index(example("2", "Title of e2"));
+            indexer.index(example("3", "Title of e3"));
+            indexer.commit();
+
+            indexer.update(example("2", "Title of e2 updated"));
+            indexer.delete(example("1", "Title of e1"));
+            indexer.commit();
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(2, reader.leaves().size());
+            for (LeafReaderContext leaf : reader.leaves()) {
+                assertEquals(BloomFilteringPostingsFormat.BLOOM_CODEC_NAME, getPostingsFormat(leaf, ExampleField.ID));
+                assertEquals(DEFAULT_POSTINGS_FORMAT, getPostingsFormat(leaf, ExampleField.TITLE));
+            }
+
+            assertEquals(2, reader.numDocs());
+            assertTitle(reader, "2", "Title of e2 updated");
+            assertTitle(reader, "3", "Title of e3");
+        }
+    }
+
+    @Test
+    public void testIndexOpensWithDefaultCodec() throws IOException, IndexException {
+        final IndexWriterConfig config = IdFieldCodec.configure(new IndexWriterConfig(analyzer), ExampleField.ID);
+        try (IndexWriter indexWriter = new IndexWriter(directory, config)) {
+            final LuceneIndexer<Example> indexer = new ExampleIndexer(indexWriter, facetsConfig);
+            indexer.index(example("1", "Title of e1"));
+            indexer.index(example("2", "Title of e2"));
+            indexer.index(example("3", "Title of e3"));
+            indexer.commit();
+        }
+
+        // the bloom-filtered segment is still read, updated and deleted from with a plain config
+        try (IndexWriter indexWriter = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            final LuceneIndexer<Example> indexer = new ExampleIndexer(indexWriter, facetsConfig);
+            indexer.update(example("2", "Title of e2 updated"));
+            indexer.delete(example("1", "Title of e1"));
+            indexer.index(example("4", "Title of e4"));
+            indexer.commit();
+        }
+
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertEquals(2, reader.leaves().size());
+            assertEquals(BloomFilteringPostingsFormat.BLOOM_CODEC_NAME,
+                    getPostingsFormat(reader.leaves().get(0), ExampleField.ID));
+            assertEquals(DEFAULT_POSTINGS_FORMAT, getPostingsFormat(reader.leaves().get(1), ExampleField.ID));
+
+            assertEquals(3, reader.numDocs());
+            assertEquals(0, new IndexSearcher(reader).count(new TermQuery(new Term(ExampleField.ID.getName(), "1"))));
+            assertTitle(reader, "2", "Title of e2 updated");
+            assertTitle(reader, "3", "Title of e3");
+            assertTitle(reader, "4", "Title of e4");
+        }
+    }
+
+    private Example example(final String id, final String title) {
+        final Example example = new Example(id);
+        example.setBody("Body of " + id);
+        example.setTitle(title);
+        example.setColor("BLUE");
+        example.setCreateDate(new Date());
+        return example;
+    }
+
+    private String getPostingsFormat(final LeafReaderContext leaf, final ExampleField field) {
+        final FieldInfo fieldInfo = leaf.reader().getFieldInfos().fieldInfo(field.getName());
+        assertNotNull(fieldInfo);
+        return fieldInfo.getAttribute(PerFieldPostingsFormat.PER_FIELD_FORMAT_KEY);
+    }
+
+    private void assertTitle(final DirectoryReader reader, final String id, final String title) throws IOException {
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        final TopDocs topDocs = searcher.search(new TermQuery(new Term(ExampleField.ID.getName(), id)), 2);
+        assertEquals(1, topDocs.totalHits);
+        assertEquals(title, searcher.doc(topDocs.scoreDocs[0].doc).get(ExampleField.TITLE.getName()));
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.index.IndexException;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.Example;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.index.ExampleIndexer;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import com.bbende.tripod.lucene.registry.IndexLease;
+import com.bbende.tripod.lucene.registry.IndexRegistry;
+import com.bbende.tripod.lucene.registry.IndexRegistryStats;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for IndexRegistry.
+ *
+ * @author bbende
+ */
+public class TestIndexRegistry {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Analyzer analyzer;
+    private FacetsConfig facetsConfig;
+    private IndexRegistry<ExampleSummary> registry;
+
+    @Before
+    public void setup() throws IOException {
+        analyzer = new StandardAnalyzer();
+        facetsConfig = new FacetsConfig();
+        facetsConfig.setIndexFieldName(ExampleField.COLOR.getName(), ExampleField.COLOR.getName());
+
+        registry = new IndexRegistry.Builder<ExampleSummary>()
+                .rootPath(tempFolder.newFolder().toPath())
+                .writerConfigSupplier(() -> new IndexWriterConfig(analyzer))
+                .queryServiceFactory((tenantId, searcherManager) -> new ExampleSummaryQueryService(
+                        searcherManager, ExampleField.BODY.getName(), analyzer, facetsConfig))
+                .maxOpenIndexes(2)
+                .build();
+    }
+
+    @After
+    public void cleanup() {
+        registry.close();
+    }
+
+    @Test
+    public void testOpensLazilyAndEvictsLeastRecentlyUsed() throws IOException, IndexException, QueryException {
+        assertFalse(registry.isOpen("tenant1"));
+
+        indexExample("tenant1", "1");
+        indexExample("tenant2", "2");
+        assertTrue(registry.isOpen("tenant1"));
+        assertTrue(registry.isOpen("tenant2"));
+
+        // using tenant1 again makes tenant2 the least recently used
+        assertEquals(1, registry.search("tenant1", new Query("*:*")).getTotalResults());
+        indexExample("tenant3", "3");
+
+        assertTrue(registry.isOpen("tenant1"));
+        assertFalse(registry.isOpen("tenant2"));
+        assertTrue(registry.isOpen("tenant3"));
+
+        // reopening sees the committed data
+        final QueryResults<ExampleSummary> results = registry.search("tenant2", new Query("*:*"));
+        assertEquals(1, results.getTotalResults());
+        assertEquals("2", results.getResults().get(0).getId());
+
+        final IndexRegistryStats stats = registry.getStats();
+        assertEquals(2, stats.getOpenIndexes());
+        assertEquals(0, stats.getLeasedIndexes());
+        assertEquals(4, stats.getOpenCount());
+        assertEquals(2, stats.getEvictionCount());
+    }
+
+    @Test
+    public void testLeasedIndexIsNotEvicted() throws IOException, QueryException {
+        try (IndexLease<ExampleSummary> lease = registry.acquire("tenant1")) {
+            registry.acquire("tenant2").close();
+            registry.acquire("tenant3").close();
+            registry.acquire("tenant4").close();
+
+            assertTrue(registry.isOpen("tenant1"));
+            assertEquals(1, registry.getStats().getLeasedIndexes());
+            assertEquals(0, lease.getQueryService().search(new Query("*:*")).getTotalResults());
+        }
+
+        assertEquals(2, registry.getStats().getOpenIndexes());
+    }
+
+    @Test
+    public void testLeaseCloseIsIdempotent() throws IOException {
+        final IndexLease<ExampleSummary> lease = registry.acquire("tenant1");
+        lease.close();
+        lease.close();
+        assertEquals(0, registry.getStats().getLeasedIndexes());
+    }
+
+    @Test
+    public void testOpenBytesFollowRefreshesAndClose() throws IOException, IndexException {
+        registry.acquire("tenant1").close();
+        final long emptyBytes = registry.getStats().getOpenBytes();
+
+        // the new segment is counted once the refresh makes it visible
+        indexExample("tenant1", "1");
+        final long indexedBytes = registry.getStats().getOpenBytes();
+        assertTrue(indexedBytes > emptyBytes);
+
+        indexExample("tenant2", "2");
+        assertTrue(registry.getStats().getOpenBytes() > indexedBytes);
+
+        registry.close();
+        assertEquals(0, registry.getStats().getOpenBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTenantId() throws IOException {
+        registry.acquire("../tenant1");
+    }
+
+    private void indexExample(final String tenantId, final String id) throws IOException, IndexException {
+        try (IndexLease<ExampleSummary> lease = registry.acquire(tenantId)) {
+            final Example example = new Example(id);
+            example.setTitle("Title " + id);
+            example.setBody("Body of " + id);
+            example.setCreateDate(new Date());
+            example.setColor("BLUE");
+            new ExampleIndexer(lease.getIndexWriter(), facetsConfig).index(example);
+
+            lease.getIndexWriter().commit();
+            lease.getSearcherManager().maybeRefreshBlocking();
+        }
+    }
+
+}
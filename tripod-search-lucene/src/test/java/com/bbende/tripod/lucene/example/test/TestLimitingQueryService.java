@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.limit.ConcurrencyLimiter;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.LimitingQueryService;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.api.query.service.QueryRejectedException;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for LimitingQueryService and ConcurrencyLimiter with Lucene.
+ *
+ * @author bbende
+ */
+public class TestLimitingQueryService extends TestExampleLuceneBase {
+
+    @Test
+    public void testRejectsWhenSaturated() throws QueryException, InterruptedException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+                .fixedLimit(1)
+                .maxQueueSize(0)
+                .build();
+
+        final LimitingQueryService<ExampleSummary> queryService = createQueryService(limiter);
+
+        // hold the only permit so the search is rejected
+        assertTrue(limiter.acquire());
+        try {
+            queryService.search(new Query("*:*"));
+            fail("Should have been rejected");
+        } catch (QueryRejectedException e) {
+            assertEquals(1, e.getLimiterStats().getInFlight());
+        }
+        assertEquals(1, queryService.getStats().getRejectedCount());
+
+        limiter.releaseIgnored();
+
+        QueryResults<ExampleSummary> results = queryService.search(new Query("*:*"));
+        assertEquals(5, results.getTotalResults());
+        assertEquals(0, queryService.getStats().getInFlight());
+        assertEquals(2, queryService.getStats().getAcceptedCount());
+    }
+
+    @Test
+    public void testRejectsAfterQueueTimeout() throws QueryException, InterruptedException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+                .fixedLimit(1)
+                .maxQueueSize(1)
+                .queueTimeout(10, TimeUnit.MILLISECONDS)
+                .build();
+
+        final LimitingQueryService<ExampleSummary> queryService = createQueryService(limiter);
+
+        assertTrue(limiter.acquire());
+        try {
+            queryService.search(new Query("*:*"));
+            fail("Should have been rejected");
+        } catch (QueryRejectedException e) {
+            assertEquals(1, queryService.getStats().getTimeoutCount());
+            assertEquals(0, queryService.getStats().getQueued());
+        } finally {
+            limiter.releaseIgnored();
+        }
+    }
+
+    @Test
+    public void testAdaptiveLimit() throws InterruptedException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter.Builder()
+                .initialLimit(10)
+                .minLimit(2)
+                .maxLimit(50)
+                .sampleWindow(5)
+                .build();
+
+        // stable latency with the limit fully used grows the limit
+        for (int i=0; i < 20; i++) {
+            runAtLimit(limiter, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        final int grownLimit = limiter.getLimit();
+        assertTrue(grownLimit > 10);
+        assertTrue(grownLimit <= 50);
+
+        // rising latency shrinks the limit
+        for (int i=0; i < 5; i++) {
+            runAtLimit(limiter, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+
+        final int shrunkLimit = limiter.getLimit();
+        assertTrue(shrunkLimit < grownLimit);
+        assertTrue(shrunkLimit >= 2);
+
+        // dropped requests shrink the limit immediately
+        assertTrue(limiter.acquire());
+        limiter.releaseDropped();
+        assertTrue(limiter.getLimit() < shrunkLimit || shrunkLimit == 2);
+        assertEquals(1, limiter.getStats().getDroppedCount());
+    }
+
+    private void runAtLimit(final ConcurrencyLimiter limiter, final long latencyNanos) throws InterruptedException {
+        final int limit = limiter.getLimit();
+        for (int i=0; i < limit; i++) {
+            assertTrue(limiter.acquire());
+        }
+        for (int i=0; i < limit; i++) {
+            limiter.release(latencyNanos);
+        }
+    }
+
+    private LimitingQueryService<ExampleSummary> createQueryService(final ConcurrencyLimiter limiter) {
+        return new LimitingQueryService<>(
+                new ExampleSummaryQueryService(searcherManager, defaultField, analyzer, facetsConfig), limiter);
+    }
+
+}
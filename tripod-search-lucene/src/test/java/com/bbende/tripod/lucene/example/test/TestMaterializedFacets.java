@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.query.FilterQuery;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.ResultMode;
+import com.bbende.tripod.api.query.result.FacetCount;
+import com.bbende.tripod.api.query.result.FacetResult;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import com.bbende.tripod.lucene.query.service.MaterializedFacets;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for MaterializedFacets.
+ *
+ * @author bbende
+ */
+public class TestMaterializedFacets extends TestExampleLuceneBase {
+
+    private MaterializedFacets materializedFacets;
+    private ExampleSummaryQueryService queryService;
+
+    @Before
+    public void setup() {
+        // counting on the calling thread makes materializing synchronous
+        materializedFacets = new MaterializedFacets.Builder(searcherManager, Runnable::run)
+                .facetFields(ExampleField.COLOR)
+                .filters(new FilterQuery(ExampleField.COLOR, "BLUE"))
+                .build();
+        searcherManager.addListener(materializedFacets);
+
+        queryService = new ExampleSummaryQueryService(searcherManager, defaultField, analyzer, facetsConfig);
+        queryService.setMaterializedFacets(materializedFacets);
+    }
+
+    @Test
+    public void testMatchingQueries() throws IOException {
+        assertEquals(1, materializedFacets.size());
+
+        final IndexSearcher searcher = searcherManager.acquire();
+        try {
+            final IndexReader reader = searcher.getIndexReader();
+
+            final Query matchAll = createQuery();
+            assertNotNull(materializedFacets.get(reader, matchAll));
+            assertEquals(5, materializedFacets.get(reader, matchAll).getTotalHits());
+
+            final Query blue = createQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+            assertNotNull(materializedFacets.get(reader, blue));
+            assertEquals(2, materializedFacets.get(reader, blue).getTotalHits());
+
+            // not a materialized combination
+            assertNull(materializedFacets.get(reader, createQuery(new FilterQuery(ExampleField.COLOR, "RED"))));
+
+            // not match-all
+            final Query text = new Query("body:solr");
+            text.setFacetFields(Arrays.asList(ExampleField.COLOR));
+            assertNull(materializedFacets.get(reader, text));
+
+            // not a materialized facet field
+            final Query otherField = createQuery();
+            otherField.setFacetFields(Arrays.asList(ExampleField.TITLE));
+            assertNull(materializedFacets.get(reader, otherField));
+
+            // multi-select with filters counts differently
+            blue.setMultiSelectFacets(true);
+            assertNull(materializedFacets.get(reader, blue));
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    @Test
+    public void testServesMaterializedCounts() throws QueryException {
+        final Query query = createQuery(new FilterQuery(ExampleField.COLOR, "BLUE"));
+        query.setResultMode(ResultMode.FACETS);
+
+        QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(2, results.getTotalResults());
+        assertEquals(1, results.getFacetResults().size());
+        assertEquals(2, getCount(results.getFacetResults().get(0), "BLUE"));
+
+        // documents are still collected, with the materialized facets
+        query.setResultMode(ResultMode.DOCUMENTS);
+        results = queryService.search(query);
+        assertEquals(2, results.getTotalResults());
+        assertEquals(2, results.getResults().size());
+        assertEquals(2, getCount(results.getFacetResults().get(0), "BLUE"));
+
+        // a combination that isn't materialized is counted as usual
+        final Query red = createQuery(new FilterQuery(ExampleField.COLOR, "RED"));
+        red.setResultMode(ResultMode.FACETS);
+        results = queryService.search(red);
+        assertEquals(2, results.getTotalResults());
+        assertEquals(2, getCount(results.getFacetResults().get(0), "RED"));
+    }
+
+    @Test
+    public void testMaterializesEachSearcher() throws IOException, QueryException {
+        final IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            final Document doc = new Document();
+            doc.add(new Field(ExampleField.ID.getName(), "99", StringField.TYPE_STORED));
+            doc.add(new Field(ExampleField.BODY.getName(), "Body 99", TextField.TYPE_STORED));
+            doc.add(new Field(ExampleField.COLOR.getName(), "BLUE", StringField.TYPE_STORED));
+            doc.add(new SortedSetDocValuesFacetField(ExampleField.COLOR.getName(), "BLUE"));
+            writer.addDocument(facetsConfig.build(doc));
+            writer.commit();
+        }
+
+        searcherManager.maybeRefreshBlocking();
+
+        // the counts of the previous searcher are removed when its reader closes
+        assertEquals(1, materializedFacets.size());
+
+        final Query query = createQuery();
+        query.setResultMode(ResultMode.FACETS);
+
+        final QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(6, results.getTotalResults());
+        assertEquals(3, getCount(results.getFacetResults().get(0), "BLUE"));
+    }
+
+    private Query createQuery(final FilterQuery... filterQueries) {
+        final Query query = new Query("*:*");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        Arrays.stream(filterQueries).forEach(query::addFilterQuery);
+        return query;
+    }
+
+    private long getCount(final FacetResult facetResult, final String value) {
+        for (FacetCount facetCount : facetResult.getFacetCounts()) {
+            if (facetCount.getValue().equals(value)) {
+                return facetCount.getCount();
+            }
+        }
+        return 0;
+    }
+
+}
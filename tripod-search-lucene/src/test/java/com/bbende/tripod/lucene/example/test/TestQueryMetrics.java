@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.metrics.Histogram;
+import com.bbende.tripod.api.metrics.HistogramQueryMetrics;
+import com.bbende.tripod.api.metrics.Phase;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.query.ExampleRetrievalService;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for recording QueryMetrics from the Lucene services.
+ *
+ * @author bbende
+ */
+public class TestQueryMetrics extends TestExampleLuceneBase {
+
+    private HistogramQueryMetrics queryMetrics;
+    private ExampleSummaryQueryService queryService;
+    private ExampleRetrievalService retrievalService;
+
+    @Before
+    public void setup() {
+        queryMetrics = new HistogramQueryMetrics();
+
+        queryService = new ExampleSummaryQueryService(searcherManager, defaultField, analyzer, facetsConfig);
+        queryService.setQueryMetrics(queryMetrics);
+
+        retrievalService = new ExampleRetrievalService(searcherManager, defaultField, analyzer);
+        retrievalService.setQueryMetrics(queryMetrics);
+    }
+
+    @Test
+    public void testSearchRecordsEachPhase() throws QueryException {
+        Query query = new Query(ExampleField.BODY.getName() + ":solr");
+        query.setHighlightFields(Arrays.asList(ExampleField.BODY));
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+
+        queryService.search(query);
+        queryService.search(query);
+
+        for (Phase phase : Phase.values()) {
+            assertEquals(phase.name(), 2, queryMetrics.getHistogram(phase).getCount());
+        }
+        assertTrue(queryMetrics.getHistogram(Phase.TOTAL).getSnapshot().getP50()
+                >= queryMetrics.getHistogram(Phase.SEARCH).getSnapshot().getP50());
+    }
+
+    @Test
+    public void testSearchSkipsPhasesNotPerformed() throws QueryException {
+        queryService.search(new Query("id:1"));
+
+        assertEquals(1, queryMetrics.getHistogram(Phase.SEARCH).getCount());
+        assertEquals(0, queryMetrics.getHistogram(Phase.HIGHLIGHT).getCount());
+        assertEquals(0, queryMetrics.getHistogram(Phase.FACET).getCount());
+    }
+
+    @Test
+    public void testRetrievalRecordsPhases() throws QueryException {
+        retrievalService.findById("1");
+        retrievalService.findAll(Arrays.asList("1", "2"));
+
+        assertEquals(2, queryMetrics.getHistogram(Phase.ACQUIRE).getCount());
+        assertEquals(2, queryMetrics.getHistogram(Phase.FETCH).getCount());
+        assertEquals(2, queryMetrics.getHistogram(Phase.TOTAL).getCount());
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        final Histogram histogram = new Histogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        final Histogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(100000, snapshot.getCount());
+        assertEquals(100000000, snapshot.getMax());
+        assertEquals(50000000, snapshot.getP50(), 50000000 * 0.04);
+        assertEquals(99000000, snapshot.getP99(), 99000000 * 0.04);
+        assertEquals(99900000, snapshot.getP999(), 99900000 * 0.04);
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.query.service.RefreshScheduler;
+import com.bbende.tripod.lucene.query.service.RefreshStats;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for RefreshScheduler.
+ *
+ * @author bbende
+ */
+public class TestRefreshScheduler extends TestExampleLuceneBase {
+
+    private RefreshScheduler refreshScheduler;
+
+    @Before
+    public void setup() {
+        refreshScheduler = new RefreshScheduler.Builder()
+                .minInterval(10, TimeUnit.MILLISECONDS)
+                .maxInterval(200, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @After
+    public void teardown() {
+        refreshScheduler.close();
+    }
+
+    @Test
+    public void testSkipsRefreshWhenUnchanged() throws InterruptedException {
+        final RefreshScheduler.Registration registration = refreshScheduler.register(searcherManager);
+        final long maxIntervalNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+        // the interval doubles on each check that finds no changes until it reaches the max
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (registration.getStats().getIntervalNanos() != maxIntervalNanos && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        final RefreshStats stats = registration.getStats();
+        assertTrue(stats.getCheckCount() > 0);
+        assertEquals(0, stats.getRefreshCount());
+        assertEquals(maxIntervalNanos, stats.getIntervalNanos());
+    }
+
+    @Test
+    public void testRefreshesWhenChanged() throws IOException, InterruptedException {
+        final RefreshScheduler.Registration registration = refreshScheduler.register(searcherManager);
+
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            Document doc = new Document();
+            doc.add(new Field(ExampleField.ID.getName(), "99", StringField.TYPE_STORED));
+            writer.addDocument(doc);
+            writer.commit();
+        }
+
+        // the stats are recorded after the new searcher is visible, so wait on the last of them
+        final RefreshStats stats = awaitStats(registration, s -> s.getRefreshLag().getCount() == 1);
+        assertEquals(6, numDocs(searcherManager));
+        assertEquals(1, stats.getRefreshCount());
+        assertEquals(1, stats.getRefreshDuration().getCount());
+        assertEquals(1, stats.getRefreshLag().getCount());
+        assertTrue(stats.getRefreshLag().getMax() >= stats.getRefreshDuration().getMax());
+    }
+
+    @Test
+    public void testCloseRegistration() throws IOException, InterruptedException {
+        // the directory isn't closed with the SearcherManager, and closing it would close the wrapped directory
+        final BlockingDirectory blockingDirectory = new BlockingDirectory(directory);
+        try (SearcherManager blockingSearcherManager = new SearcherManager(blockingDirectory, null)) {
+            blockingDirectory.block();
+            final RefreshScheduler.Registration registration = refreshScheduler.register(blockingSearcherManager);
+            assertEquals(1, refreshScheduler.size());
+
+            // close while the first check is in progress, then let it finish
+            assertTrue(blockingDirectory.listing.await(5, TimeUnit.SECONDS));
+            registration.close();
+            assertEquals(0, refreshScheduler.size());
+            blockingDirectory.release.countDown();
+
+            // the executor runs any check still scheduled before it terminates
+            refreshScheduler.close();
+            assertEquals(1, registration.getStats().getCheckCount());
+        }
+    }
+
+    private RefreshStats awaitStats(final RefreshScheduler.Registration registration, final Predicate<RefreshStats> condition)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        RefreshStats stats = registration.getStats();
+        while (!condition.test(stats) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            stats = registration.getStats();
+        }
+        assertTrue(condition.test(stats));
+        return stats;
+    }
+
+    private int numDocs(final SearcherManager searcherManager) throws IOException {
+        final IndexSearcher searcher = searcherManager.acquire();
+        try {
+            return searcher.getIndexReader().numDocs();
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * A Directory that, once blocked, holds up listing its files until released. Checking whether a searcher is
+     * current lists the files of the directory to find the latest commit.
+     */
+    private static class BlockingDirectory extends FilterDirectory {
+
+        private final CountDownLatch listing = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean blocking;
+
+        BlockingDirectory(final Directory directory) {
+            super(directory);
+        }
+
+        void block() {
+            blocking = true;
+        }
+
+        @Override
+        public String[] listAll() throws IOException {
+            if (blocking) {
+                listing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.listAll();
+        }
+    }
+
+}
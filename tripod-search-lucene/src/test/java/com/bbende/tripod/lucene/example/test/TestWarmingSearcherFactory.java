@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bbende.tripod.lucene.example.test;
+
+import com.bbende.tripod.api.query.ImmutableQuery;
+import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryException;
+import com.bbende.tripod.lucene.example.ExampleField;
+import com.bbende.tripod.lucene.example.ExampleSummary;
+import com.bbende.tripod.lucene.example.query.ExampleSummaryQueryService;
+import com.bbende.tripod.lucene.query.service.FacetStateCache;
+import com.bbende.tripod.lucene.query.service.QueryLog;
+import com.bbende.tripod.lucene.query.service.WarmingSearcherFactory;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.SearcherManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for WarmingSearcherFactory.
+ *
+ * @author bbende
+ */
+public class TestWarmingSearcherFactory extends TestExampleLuceneBase {
+
+    private QueryLog queryLog;
+    private FacetStateCache facetStateCache;
+    private WarmingSearcherFactory searcherFactory;
+    private SearcherManager warmingSearcherManager;
+    private ExampleSummaryQueryService queryService;
+
+    @Before
+    public void setup() throws IOException {
+        queryLog = new QueryLog(100);
+        facetStateCache = new FacetStateCache();
+
+        searcherFactory = new WarmingSearcherFactory.Builder()
+                .queryLog(queryLog, 10)
+                .facetFields(facetStateCache, ExampleField.COLOR)
+                .timeBudget(10, TimeUnit.SECONDS)
+                .build();
+
+        warmingSearcherManager = new SearcherManager(directory, searcherFactory);
+
+        queryService = new ExampleSummaryQueryService(warmingSearcherManager, defaultField, analyzer, facetsConfig);
+        queryService.setQueryLog(queryLog);
+        queryService.setFacetStateCache(facetStateCache);
+        searcherFactory.setWarmer(queryService::warm);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        if (warmingSearcherManager != null) {
+            warmingSearcherManager.close();
+        }
+    }
+
+    @Test
+    public void testQueryLogRanksByFrequency() {
+        final QueryLog log = new QueryLog(4);
+        log.record(new Query("id:1"));
+        log.record(new Query("id:2"));
+        log.record(new Query("id:2"));
+        log.record(new Query("id:3"));
+        log.record(new Query("id:4"));
+
+        // id:1 fell out of the log, id:2 is the most frequent, then the most recent
+        final List<ImmutableQuery> topQueries = log.getTopQueries(10);
+        assertEquals(4, log.size());
+        assertEquals(3, topQueries.size());
+        assertEquals("id:2", topQueries.get(0).getQuery());
+        assertEquals("id:4", topQueries.get(1).getQuery());
+        assertEquals("id:3", topQueries.get(2).getQuery());
+
+        assertEquals(1, log.getTopQueries(1).size());
+    }
+
+    @Test
+    public void testRefreshReplaysLoggedQueries() throws QueryException, IOException {
+        // the initial searcher was warmed before there was anything to replay
+        assertEquals(0, searcherFactory.getLastWarmedQueries());
+        assertEquals(1, facetStateCache.size());
+
+        final Query query = new Query(ExampleField.BODY.getName() + ":solr");
+        query.setFacetFields(Arrays.asList(ExampleField.COLOR));
+        queryService.search(query);
+        queryService.search(query);
+        queryService.search(new Query("id:1"));
+        assertEquals(3, queryLog.size());
+
+        addDocument("6", "Body 6 Solr is new", "RED");
+        warmingSearcherManager.maybeRefreshBlocking();
+
+        assertEquals(2, searcherFactory.getLastWarmedQueries());
+        assertTrue(searcherFactory.getLastWarmingNanos() > 0);
+
+        // warming doesn't log the replayed queries
+        assertEquals(3, queryLog.size());
+
+        final QueryResults<ExampleSummary> results = queryService.search(query);
+        assertEquals(3, results.getTotalResults());
+    }
+
+    @Test
+    public void testClosedReadersAreRemovedFromCache() throws IOException {
+        assertEquals(1, facetStateCache.size());
+
+        addDocument("6", "Body 6", "RED");
+        warmingSearcherManager.maybeRefreshBlocking();
+
+        // the previous reader was closed once the refresh released it
+        assertEquals(1, facetStateCache.size());
+    }
+
+    private void addDocument(final String id, final String body, final String color) throws IOException {
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            Document doc = new Document();
+            doc.add(new Field(ExampleField.ID.getName(), id, StringField.TYPE_STORED));
+            doc.add(new Field(ExampleField.BODY.getName(), body, TextField.TYPE_STORED));
+            doc.add(new Field(ExampleField.COLOR.getName(), color, StringField.TYPE_STORED));
+            doc.add(new SortedSetDocValuesFacetField(ExampleField.COLOR.getName(), color));
+            writer.addDocument(facetsConfig.build(doc));
+            writer.commit();
+        }
+    }
+
+}
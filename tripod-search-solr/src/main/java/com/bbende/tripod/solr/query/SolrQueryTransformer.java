@@ -26,4 +26,15 @@ import org.apache.solr.client.solrj.SolrQuery;
  */
 public interface SolrQueryTransformer extends QueryTransformer<SolrQuery> {
 
+    /**
+     * SolrService reads the count of each range of the range facets of a query from the facet.query with this key.
+     *
+     * @param rangeFacetIndex the index of the range facet in the query
+     * @param rangeIndex the index of the range in the range facet
+     * @return the key of the facet.query counting the range
+     */
+    static String getRangeFacetKey(final int rangeFacetIndex, final int rangeIndex) {
+        return "range_" + rangeFacetIndex + "_" + rangeIndex;
+    }
+
 }
@@ -16,12 +16,22 @@
  */
 package com.bbende.tripod.solr.query;
 
+import com.bbende.tripod.api.query.FilterQuery;
 import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.RangeFacet;
+import com.bbende.tripod.api.query.ResultMode;
 import com.bbende.tripod.api.query.Sort;
 import com.bbende.tripod.api.query.SortOrder;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.common.params.CursorMarkParams;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 /**
  * Standard factory for creating SolrQuery instances from the given Query.
  *
@@ -34,28 +44,58 @@ public class StandardSolrQueryTransformer implements SolrQueryTransformer {
         final SolrQuery solrQuery = new SolrQuery(query.getQuery());
         solrQuery.setParam("q.op", query.getDefaultOperator().name());
 
-        if (query.getCursorMark() != null) {
-            solrQuery.setParam(CursorMarkParams.CURSOR_MARK_PARAM, query.getCursorMark());
+        // Count-only and facet-only queries use rows=0 so Solr doesn't sort, load or return any documents
+        final boolean returnDocuments = query.getResultMode() == ResultMode.DOCUMENTS;
+        final boolean returnFacets = query.getResultMode() != ResultMode.COUNT;
+
+        if (!returnDocuments) {
+            solrQuery.setRows(0);
         } else {
-            solrQuery.setStart(query.getOffset());
+            if (query.getCursorMark() != null) {
+                solrQuery.setParam(CursorMarkParams.CURSOR_MARK_PARAM, query.getCursorMark());
+            } else {
+                solrQuery.setStart(query.getOffset());
+            }
+
+            solrQuery.setRows(query.getRows());
         }
 
-        solrQuery.setRows(query.getRows());
+        if (query.getTimeAllowed() != null) {
+            solrQuery.setTimeAllowed((int) Math.min(Integer.MAX_VALUE, query.getTimeAllowed()));
+        }
 
-        if (query.getReturnFields() != null) {
+        if (returnDocuments && query.getReturnFields() != null) {
             query.getReturnFields().stream().forEach(f -> solrQuery.addField(f.getName()));
         }
 
-        if (query.getHighlightFields() != null && !query.getHighlightFields().isEmpty()) {
+        if (returnDocuments && query.getHighlightFields() != null && !query.getHighlightFields().isEmpty()) {
             solrQuery.setHighlight(true);
             query.getHighlightFields().stream().forEach(hf -> solrQuery.addHighlightField(hf.getName()));
         }
 
-        if (query.getFacetFields() != null) {
-            query.getFacetFields().stream().forEach(ff -> solrQuery.addFacetField(ff.getName()));
+        // Solr has no sampling for facet counts, so the facet sample size is ignored and counts are always exact
+        if (returnFacets && query.getFacetFields() != null) {
+            // multi-select facet fields exclude the filter queries tagged with their name
+            final boolean multiSelect = query.isMultiSelectFacets();
+            query.getFacetFields().stream().map(ff -> ff.getName()).forEach(name ->
+                    solrQuery.addFacetField(multiSelect ? "{!ex=" + name + "}" + name : name));
         }
 
-        if (query.getSorts() != null) {
+        // each range is a keyed facet.query since the ranges may be arbitrary, and all of them are counted in the
+        // same request
+        if (returnFacets && query.getRangeFacets() != null) {
+            final List<RangeFacet> rangeFacets = query.getRangeFacets();
+            for (int i = 0; i < rangeFacets.size(); i++) {
+                final RangeFacet rangeFacet = rangeFacets.get(i);
+                final List<RangeFacet.Range> ranges = rangeFacet.getRanges();
+                for (int j = 0; j < ranges.size(); j++) {
+                    solrQuery.addFacetQuery("{!key=" + SolrQueryTransformer.getRangeFacetKey(i, j) + "}"
+                            + rangeFacet.getField().getName() + ":" + toRangeQuery(rangeFacet, ranges.get(j)));
+                }
+            }
+        }
+
+        if (returnDocuments && query.getSorts() != null) {
             for (Sort sort : query.getSorts()) {
                 SolrQuery.ORDER solrOrder = sort.getSortOrder() == SortOrder.ASC ? SolrQuery.ORDER.asc : SolrQuery.ORDER.desc;
                 SolrQuery.SortClause sortClause = new SolrQuery.SortClause(sort.getField().getName(), solrOrder);
@@ -64,7 +104,11 @@ public class StandardSolrQueryTransformer implements SolrQueryTransformer {
         }
 
         if (query.getFilterQueries() != null) {
-            query.getFilterQueries().stream().forEach(fq -> solrQuery.addFilterQuery(fq.getField().getName() + ":" + fq.getValue()));
+            if (query.isMultiSelectFacets()) {
+                addTaggedFilterQueries(query.getFilterQueries(), solrQuery);
+            } else {
+                query.getFilterQueries().stream().forEach(fq -> solrQuery.addFilterQuery(fq.getField().getName() + ":" + fq.getValue()));
+            }
         }
 
         if (query.getParams() != null) {
@@ -74,4 +118,35 @@ public class StandardSolrQueryTransformer implements SolrQueryTransformer {
         return solrQuery;
     }
 
+    /**
+     * Adds one filter query per field, matching any of the values of the field and tagged with the name of the field
+     * so the facet field of the same name can exclude it.
+     */
+    private static void addTaggedFilterQueries(final List<FilterQuery> filterQueries, final SolrQuery solrQuery) {
+        final Map<String,List<String>> valuesByField = new LinkedHashMap<>();
+        for (FilterQuery fq : filterQueries) {
+            valuesByField.computeIfAbsent(fq.getField().getName(), f -> new ArrayList<>()).add(fq.getValue());
+        }
+
+        for (Map.Entry<String,List<String>> fieldValues : valuesByField.entrySet()) {
+            final String field = fieldValues.getKey();
+            solrQuery.addFilterQuery("{!tag=" + field + "}" + fieldValues.getValue().stream()
+                    .map(value -> field + ":" + value)
+                    .collect(Collectors.joining(" OR ")));
+        }
+    }
+
+    private static String toRangeQuery(final RangeFacet rangeFacet, final RangeFacet.Range range) {
+        return (range.isMinInclusive() ? "[" : "{")
+                + toRangeValue(rangeFacet, range.getMin()) + " TO " + toRangeValue(rangeFacet, range.getMax())
+                + (range.isMaxInclusive() ? "]" : "}");
+    }
+
+    private static String toRangeValue(final RangeFacet rangeFacet, final Long value) {
+        if (value == null) {
+            return "*";
+        }
+        return rangeFacet.isDate() ? Instant.ofEpochMilli(value).toString() : value.toString();
+    }
+
 }
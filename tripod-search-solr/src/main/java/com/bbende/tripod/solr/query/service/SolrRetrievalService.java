@@ -18,6 +18,9 @@ package com.bbende.tripod.solr.query.service;
 
 import com.bbende.tripod.api.TransformException;
 import com.bbende.tripod.api.entity.Entity;
+import com.bbende.tripod.api.metrics.Phase;
+import com.bbende.tripod.api.metrics.PhaseTimings;
+import com.bbende.tripod.api.metrics.QueryMetrics;
 import com.bbende.tripod.api.query.RetrievalQuery;
 import com.bbende.tripod.api.query.service.QueryException;
 import com.bbende.tripod.api.query.service.RetrievalService;
@@ -28,12 +31,18 @@ import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Solr implementation of RetrievalService.
@@ -48,6 +57,8 @@ public class SolrRetrievalService<E extends Entity> implements RetrievalService<
     protected final SolrQueryTransformer queryTransformer;
     protected final SolrDocumentTransformer<E> documentTransformer;
 
+    private volatile QueryMetrics queryMetrics = QueryMetrics.NOOP;
+
     public SolrRetrievalService(final SolrClient solrClient,
                                 final SolrQueryTransformer queryTransformer,
                                 final SolrDocumentTransformer<E> documentTransformer) {
@@ -59,6 +70,18 @@ public class SolrRetrievalService<E extends Entity> implements RetrievalService<
         Validate.notNull(this.documentTransformer);
     }
 
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    /**
+     * @param queryMetrics the metrics to record the time spent in each phase of every retrieval to
+     */
+    public void setQueryMetrics(final QueryMetrics queryMetrics) {
+        Validate.notNull(queryMetrics);
+        this.queryMetrics = queryMetrics;
+    }
+
     @Override
     public E find(final RetrievalQuery query) throws QueryException {
         final List<E> results = performSearch(query);
@@ -73,24 +96,114 @@ public class SolrRetrievalService<E extends Entity> implements RetrievalService<
         }
     }
 
+    @Override
+    public E findById(final String id) throws QueryException {
+        if (id == null) {
+            return null;
+        }
+
+        final PhaseTimings timings = new PhaseTimings();
+        try {
+            // Perform a real-time get for the id
+            long phaseStart = System.nanoTime();
+            final SolrDocument solrDoc = solrClient.getById(id);
+            phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+            LOGGER.debug("Query executed in " + TimeUnit.NANOSECONDS.toMillis(timings.getNanos(Phase.SEARCH)));
+
+            E result = null;
+            if (solrDoc != null) {
+                result = documentTransformer.transform(solrDoc);
+                timings.addSince(Phase.DOCUMENT_TRANSFORM, phaseStart);
+            }
+
+            timings.stop();
+            timings.recordTo(queryMetrics);
+            return result;
+
+        } catch (SolrServerException e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new QueryException("An unexpected error occurred performing the search operation", e);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new QueryException("An unexpected error occurred communicating with the query service", e);
+        } catch (TransformException e) {
+            throw new QueryException("A transform error occurred", e);
+        }
+    }
+
+    @Override
+    public Map<String,E> findAll(final Collection<String> ids) throws QueryException {
+        final Map<String,E> results = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return results;
+        }
+
+        final PhaseTimings timings = new PhaseTimings();
+        try {
+            // Perform a single real-time get for all of the ids
+            long phaseStart = System.nanoTime();
+            final SolrDocumentList solrDocs = solrClient.getById(ids);
+            phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+            LOGGER.debug("Query executed in " + TimeUnit.NANOSECONDS.toMillis(timings.getNanos(Phase.SEARCH)));
+
+            // Transform each Solr doc to an Entity
+            final Map<String,E> found = new HashMap<>();
+            for (SolrDocument solrDoc : solrDocs) {
+                final E result = documentTransformer.transform(solrDoc);
+                phaseStart = timings.addSince(Phase.DOCUMENT_TRANSFORM, phaseStart);
+                if (result != null) {
+                    found.put(result.getId(), result);
+                }
+            }
+
+            // Return the results in the order the ids were requested
+            for (String id : ids) {
+                final E result = found.get(id);
+                if (result != null) {
+                    results.put(id, result);
+                }
+            }
+
+            timings.stop();
+            timings.recordTo(queryMetrics);
+            return results;
+
+        } catch (SolrServerException e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new QueryException("An unexpected error occurred performing the search operation", e);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+            throw new QueryException("An unexpected error occurred communicating with the query service", e);
+        } catch (TransformException e) {
+            throw new QueryException("A transform error occurred", e);
+        }
+    }
+
     protected List<E> performSearch(final RetrievalQuery query) throws QueryException {
+        final PhaseTimings timings = new PhaseTimings();
         try {
             // Convert from Query API to SolrQuery
+            long phaseStart = System.nanoTime();
             final SolrQuery solrQuery = queryTransformer.transform(query);
+            phaseStart = timings.addSince(Phase.TRANSFORM, phaseStart);
 
             // Perform the actual Solr query
-            long startTime = System.currentTimeMillis();
             final QueryResponse response = solrClient.query(solrQuery);
-            LOGGER.debug("Query executed in " + (System.currentTimeMillis() - startTime));
+            phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+            LOGGER.debug("Query executed in " + TimeUnit.NANOSECONDS.toMillis(timings.getNanos(Phase.SEARCH)));
 
             // Transform each Solr doc to an Entity
             final List<E> results = new ArrayList<>();
             for (SolrDocument solrDoc : response.getResults()) {
                 final E result = documentTransformer.transform(solrDoc);
+                phaseStart = timings.addSince(Phase.DOCUMENT_TRANSFORM, phaseStart);
                 if (result != null) {
                     results.add(result);
                 }
             }
+
+            timings.stop();
+            timings.recordTo(queryMetrics);
             return  results;
 
         } catch (SolrServerException e) {
@@ -17,12 +17,19 @@
 package com.bbende.tripod.solr.query.service;
 
 import com.bbende.tripod.api.TransformException;
+import com.bbende.tripod.api.metrics.Phase;
+import com.bbende.tripod.api.metrics.PhaseTimings;
+import com.bbende.tripod.api.metrics.QueryMetrics;
 import com.bbende.tripod.api.query.Query;
+import com.bbende.tripod.api.query.RangeFacet;
+import com.bbende.tripod.api.query.ResultMode;
 import com.bbende.tripod.api.query.result.FacetCount;
 import com.bbende.tripod.api.query.result.FacetResult;
 import com.bbende.tripod.api.query.result.Highlight;
+import com.bbende.tripod.api.query.result.QueryProfile;
 import com.bbende.tripod.api.query.result.QueryResult;
 import com.bbende.tripod.api.query.result.QueryResults;
+import com.bbende.tripod.api.query.service.QueryCancellation;
 import com.bbende.tripod.api.query.service.QueryException;
 import com.bbende.tripod.solr.query.SolrQueryTransformer;
 import org.apache.commons.lang.Validate;
@@ -34,28 +41,40 @@ import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.NamedList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base class for all Solr services.
  *
+ * The time allowed for a query is passed to Solr as timeAllowed, which bounds the time spent searching on the
+ * server. The time spent waiting on the network is bounded by the socket and connection timeouts of the SolrClient,
+ * which should be configured when the client is created.
+ *
  * @author bbende
  */
 public abstract class SolrService<QR extends QueryResult> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SolrQueryService.class);
 
+    static final String PARTIAL_RESULTS = "partialResults";
+
     protected final SolrClient solrClient;
     protected final SolrQueryTransformer queryTransformer;
     protected final SolrDocumentTransformer<QR> documentTransformer;
     protected SolrRequest.METHOD defaultMethod = SolrRequest.METHOD.GET;
 
+    private volatile QueryMetrics queryMetrics = QueryMetrics.NOOP;
+
     public SolrService(final SolrClient solrClient,
                        final SolrQueryTransformer queryTransformer,
                        final SolrDocumentTransformer<QR> documentTransformer) {
@@ -72,6 +91,21 @@ public abstract class SolrService<QR extends QueryResult> {
         this.defaultMethod = method;
     }
 
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    /**
+     * Solr loads stored fields as part of the search, so the SEARCH phase includes fetching documents and the
+     * round-trip to Solr, and no ACQUIRE or FETCH phase is recorded.
+     *
+     * @param queryMetrics the metrics to record the time spent in each phase of every search to
+     */
+    public void setQueryMetrics(QueryMetrics queryMetrics) {
+        Validate.notNull(queryMetrics);
+        this.queryMetrics = queryMetrics;
+    }
+
     /**
      * Common logic for sub-classes to perform searches.
      *
@@ -80,20 +114,33 @@ public abstract class SolrService<QR extends QueryResult> {
      * @throws QueryException if an error ocurred performing the search
      */
     protected QueryResults<QR> performSearch(final Query query) throws QueryException {
+        final PhaseTimings timings = new PhaseTimings();
         try {
             // Convert from Query API to SolrQuery
+            long phaseStart = System.nanoTime();
             final SolrQuery solrQuery = queryTransformer.transform(query);
             final SolrRequest.METHOD method = getMethod(query);
+            if (query.isProfile()) {
+                solrQuery.add(CommonParams.DEBUG, CommonParams.TIMING);
+                solrQuery.add(CommonParams.DEBUG, CommonParams.QUERY);
+            }
+            timings.addSince(Phase.TRANSFORM, phaseStart);
 
             // Start the results builder with the offset and rows from the query
             final QueryResults.Builder<QR> resultsBuilder = new QueryResults.Builder<QR>()
                     .offset(query.getOffset())
                     .pageSize(query.getRows());
 
+            // SolrJ can't abort a request once it is sent, so a cancelled query can only be stopped before then
+            if (QueryCancellation.isCurrentCancelled() || Thread.currentThread().isInterrupted()) {
+                throw new QueryException("Query was cancelled");
+            }
+
             // Perform the actual Solr query
-            long startTime = System.currentTimeMillis();
+            phaseStart = System.nanoTime();
             final QueryResponse response = solrClient.query(solrQuery, method);
-            LOGGER.debug("Query executed in " + (System.currentTimeMillis() - startTime));
+            phaseStart = timings.addSince(Phase.SEARCH, phaseStart);
+            LOGGER.debug("Query executed in " + TimeUnit.NANOSECONDS.toMillis(timings.getNanos(Phase.SEARCH)));
 
             final SolrDocumentList solrDocs = response.getResults();
             final Map<String, Map<String, List<String>>> highlighting = response.getHighlighting();
@@ -101,18 +148,50 @@ public abstract class SolrService<QR extends QueryResult> {
             // Transform each Solr doc to a QueryResult and add highlights if they exist
             for (SolrDocument solrDoc : solrDocs) {
                 final QR queryResult = documentTransformer.transform(solrDoc);
+                phaseStart = timings.addSince(Phase.DOCUMENT_TRANSFORM, phaseStart);
+
                 if (queryResult != null) {
-                    processHighlighting(queryResult, highlighting);
+                    if (highlighting != null) {
+                        processHighlighting(queryResult, highlighting);
+                        phaseStart = timings.addSince(Phase.HIGHLIGHT, phaseStart);
+                    }
                     resultsBuilder.addResult(queryResult);
                 }
             }
 
             // Process faceting results
             final List<FacetField> facetFields = response.getFacetFields();
-            processFacetResults(resultsBuilder, facetFields);
+            if (facetFields != null) {
+                phaseStart = System.nanoTime();
+                processFacetResults(resultsBuilder, facetFields);
+                timings.addSince(Phase.FACET, phaseStart);
+            }
+
+            final Map<String,Integer> facetQueries = response.getFacetQuery();
+            if (facetQueries != null && query.getRangeFacets() != null) {
+                phaseStart = System.nanoTime();
+                processRangeFacetResults(resultsBuilder, query.getRangeFacets(), facetQueries);
+                timings.addSince(Phase.FACET, phaseStart);
+            }
 
             resultsBuilder.totalResults(solrDocs.getNumFound());
-            resultsBuilder.cursorMark(response.getNextCursorMark());
+
+            // count-only and facet-only queries aren't sent with the cursorMark, and the cursor stays where it was
+            if (query.getResultMode() == ResultMode.DOCUMENTS) {
+                resultsBuilder.cursorMark(response.getNextCursorMark());
+            } else {
+                resultsBuilder.cursorMark(query.getCursorMark());
+            }
+
+            resultsBuilder.partialResults(isPartialResults(response));
+
+            timings.stop();
+            timings.recordTo(queryMetrics);
+
+            if (query.isProfile()) {
+                resultsBuilder.profile(getProfile(response, timings, facetFields));
+            }
+
             return resultsBuilder.build();
 
         } catch (SolrServerException e) {
@@ -126,6 +205,94 @@ public abstract class SolrService<QR extends QueryResult> {
         }
     }
 
+    /**
+     * @param response the response to a query
+     * @return true if Solr reported that timeAllowed was exceeded and the response has partial results
+     */
+    protected boolean isPartialResults(final QueryResponse response) {
+        final NamedList<Object> header = response.getResponseHeader();
+        return header != null && Boolean.TRUE.equals(header.get(PARTIAL_RESULTS));
+    }
+
+    /**
+     * Creates the profile of a query from the client timings, the QTime, and the debug timing returned by Solr.
+     *
+     * @param response the response to a query performed with debug=timing and debug=query
+     * @param timings the client timings of the query
+     * @param facetFields the facet fields in the response
+     * @return the profile of the query
+     */
+    protected QueryProfile getProfile(final QueryResponse response, final PhaseTimings timings,
+                                      final List<FacetField> facetFields) {
+        final QueryProfile.Builder profileBuilder = new QueryProfile.Builder()
+                .phaseNanos(timings.toMap())
+                .serverTimeMillis(response.getQTime())
+                .hitsCollected(response.getResults().getNumFound())
+                .facetDimensions(facetFields == null ? 0 : facetFields.size());
+
+        final Map<String,Object> debugMap = response.getDebugMap();
+        if (debugMap == null) {
+            return profileBuilder.build();
+        }
+
+        final Object parsedQuery = debugMap.get("parsedquery_toString");
+        if (parsedQuery != null) {
+            profileBuilder.rewrittenQuery(parsedQuery.toString());
+        }
+
+        // timing is broken down by phase (prepare and process) and then by search component
+        final Object timing = debugMap.get(CommonParams.TIMING);
+        if (timing instanceof NamedList) {
+            final NamedList<?> timingList = (NamedList<?>) timing;
+            final Map<Phase,Long> serverPhaseNanos = new EnumMap<>(Phase.class);
+            addServerTime(serverPhaseNanos, Phase.TOTAL, timingList.get("time"));
+
+            for (String stage : new String[] {"prepare", "process"}) {
+                final Object stageTiming = timingList.get(stage);
+                if (!(stageTiming instanceof NamedList)) {
+                    continue;
+                }
+
+                final NamedList<?> components = (NamedList<?>) stageTiming;
+                for (int i = 0; i < components.size(); i++) {
+                    final Phase phase = getComponentPhase(components.getName(i));
+                    if (phase != null && components.getVal(i) instanceof NamedList) {
+                        addServerTime(serverPhaseNanos, phase, ((NamedList<?>) components.getVal(i)).get("time"));
+                    }
+                }
+            }
+            profileBuilder.serverPhaseNanos(serverPhaseNanos);
+        }
+
+        return profileBuilder.build();
+    }
+
+    private static Phase getComponentPhase(final String component) {
+        if (component == null) {
+            return null;
+        }
+
+        switch (component) {
+            case "query":
+                return Phase.SEARCH;
+            case "facet":
+            case "facet_module":
+                return Phase.FACET;
+            case "highlight":
+                return Phase.HIGHLIGHT;
+            default:
+                return null;
+        }
+    }
+
+    private static void addServerTime(final Map<Phase,Long> serverPhaseNanos, final Phase phase,
+                                      final Object timeMillis) {
+        if (timeMillis instanceof Number) {
+            final long nanos = (long) (((Number) timeMillis).doubleValue() * 1000000);
+            serverPhaseNanos.merge(phase, nanos, Long::sum);
+        }
+    }
+
     /**
      * Determine the request method.
      *
@@ -169,6 +336,33 @@ public abstract class SolrService<QR extends QueryResult> {
         }
     }
 
+    /**
+     * Add the counts of the ranges of each range facet to the result builder.
+     *
+     * @param resultsBuilder query result builder
+     * @param rangeFacets the range facets of the query
+     * @param facetQueries the facet.query counts, keyed by SolrQueryTransformer.getRangeFacetKey
+     */
+    protected void processRangeFacetResults(QueryResults.Builder<QR> resultsBuilder, List<RangeFacet> rangeFacets,
+                                            Map<String,Integer> facetQueries) {
+        for (int i = 0; i < rangeFacets.size(); i++) {
+            final RangeFacet rangeFacet = rangeFacets.get(i);
+            final List<RangeFacet.Range> ranges = rangeFacet.getRanges();
+
+            final List<FacetCount> facetCounts = new ArrayList<>(ranges.size());
+            for (int j = 0; j < ranges.size(); j++) {
+                final Integer count = facetQueries.get(SolrQueryTransformer.getRangeFacetKey(i, j));
+                if (count != null) {
+                    facetCounts.add(new FacetCount(ranges.get(j).getLabel(), count.longValue()));
+                }
+            }
+
+            if (!facetCounts.isEmpty()) {
+                resultsBuilder.addFacetResult(new FacetResult(rangeFacet.getName(), facetCounts));
+            }
+        }
+    }
+
     /**
      * Adds any highlighting results to the given query result if applicable.
      *
@@ -27,6 +27,9 @@ import org.junit.Test;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 
 /**
  * Test for ExampleRetrievalService.
@@ -62,4 +65,23 @@ public class TestExampleRetrievalService extends TestExampleBase {
         Assert.assertNull(result);
     }
 
+    @Test
+    public void testFindAll() throws QueryException {
+        Map<String,Example> results = retrievalService.findAll(Arrays.asList("3", "ABCD", "1", "5"));
+
+        Assert.assertNotNull(results);
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(Arrays.asList("3", "1", "5"), new ArrayList<>(results.keySet()));
+        Assert.assertEquals("Title 3", results.get("3").getTitle());
+        Assert.assertEquals("Title 1", results.get("1").getTitle());
+        Assert.assertEquals("Title 5", results.get("5").getTitle());
+    }
+
+    @Test
+    public void testFindAllWhenNoneExist() throws QueryException {
+        Map<String,Example> results = retrievalService.findAll(Arrays.asList("ABCD", "EFGH"));
+        Assert.assertNotNull(results);
+        Assert.assertTrue(results.isEmpty());
+    }
+
 }